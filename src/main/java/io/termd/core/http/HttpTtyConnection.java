@@ -17,18 +17,31 @@
 package io.termd.core.http;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import io.termd.core.io.BinaryDecoder;
 import io.termd.core.io.BinaryEncoder;
+import io.termd.core.io.CodePointConsumer;
+import io.termd.core.io.MalformedInputAction;
+import io.termd.core.tty.FlushPolicy;
+import io.termd.core.tty.OverflowPolicy;
+import io.termd.core.tty.ReadBuffer;
 import io.termd.core.tty.TtyConnection;
 import io.termd.core.tty.TtyEvent;
 import io.termd.core.tty.TtyEventDecoder;
+import io.termd.core.tty.TtyMetrics;
+import io.termd.core.tty.TtyOutputBuffer;
 import io.termd.core.tty.TtyOutputMode;
+import io.termd.core.tty.TtyOutputQueue;
+import io.termd.core.util.CoarseClock;
+import io.termd.core.util.SerialExecutor;
 import io.termd.core.util.Vector;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -36,7 +49,17 @@ import java.util.function.Consumer;
  * A connection to an http client, independant of the protocol, it could be straight Websockets or
  * SockJS, etc...
  *
- * The incoming protocol is based on json messages:
+ * The raw input bytes are decoded with {@link #writeToDecoder(ByteBuffer)}, for instance the content of binary
+ * Websocket frames.<p/>
+ *
+ * The incoming text messages use either a compact format whose first character is the action:
+ *
+ * <ul>
+ *   <li>{@code d} followed by what the user typed</li>
+ *   <li>{@code r} followed by the columns and the rows separated by a comma, e.g {@code r80,24}</li>
+ * </ul>
+ *
+ * or json messages:
  *
  * {
  *   "action": "read",
@@ -58,26 +81,59 @@ public abstract class HttpTtyConnection implements TtyConnection {
 
   public static final Vector DEFAULT_SIZE = new Vector(80, 24);
 
+  private static final ObjectReader JSON_READER = new ObjectMapper().readerFor(Map.class);
+
   private Charset charset;
   private Vector size;
   private Consumer<Vector> sizeHandler;
   private final TtyEventDecoder eventDecoder;
   private final BinaryDecoder decoder;
+  private final ReadBuffer stdinBuffer;
+  private final TtyOutputQueue outputQueue;
+  private final TtyOutputBuffer outputBuffer;
   private final Consumer<int[]> stdout;
   private Consumer<Void> closeHandler;
   private Consumer<String> termHandler;
-  private long lastAccessedTime = System.currentTimeMillis();
+  private volatile long lastAccessedTime = CoarseClock.currentTimeMillis();
+  private volatile long lastAccessedMonotonicTime = CoarseClock.monotonicTimeMillis();
+  private TtyMetrics metrics = TtyMetrics.NOOP;
+  private Executor handlerExecutor;
+  private long decodeErrors;
 
   public HttpTtyConnection() {
     this(StandardCharsets.UTF_8, DEFAULT_SIZE);
   }
 
   public HttpTtyConnection(Charset charset, Vector size) {
+    this(charset, size, FlushPolicy.IMMEDIATE);
+  }
+
+  public HttpTtyConnection(Charset charset, Vector size, FlushPolicy flushPolicy) {
+    this(charset, size, flushPolicy, OverflowPolicy.DEFAULT);
+  }
+
+  public HttpTtyConnection(Charset charset, Vector size, FlushPolicy flushPolicy, OverflowPolicy overflowPolicy) {
     this.charset = charset;
     this.size = size;
-    this.eventDecoder = new TtyEventDecoder(3, 26, 4);
-    this.decoder = new BinaryDecoder(512, charset, eventDecoder);
-    this.stdout = new TtyOutputMode(new BinaryEncoder(charset, this::write));
+    this.stdinBuffer = new ReadBuffer(this::execute);
+    this.eventDecoder = new TtyEventDecoder(3, 26, 4).setReadHandler(stdinBuffer);
+    this.decoder = new BinaryDecoder(512, charset, (CodePointConsumer) eventDecoder);
+    this.stdinBuffer.setFlowControlHandler(read -> {
+      if (read) {
+        resumeTransport();
+      } else {
+        pauseTransport();
+      }
+    });
+    this.outputQueue = new TtyOutputQueue(this, overflowPolicy);
+    this.outputBuffer = new TtyOutputBuffer(this, flushPolicy, data -> {
+      if (outputQueue.offer(data.remaining())) {
+        write(data);
+      } else {
+        data.position(data.limit());
+      }
+    });
+    this.stdout = new TtyOutputMode(new BinaryEncoder(512, charset, outputBuffer)).setCharset(charset);
   }
 
   @Override
@@ -90,11 +146,82 @@ public abstract class HttpTtyConnection implements TtyConnection {
     return charset;
   }
 
+  /**
+   * Set the metrics of this connection, the implementations should use {@link TtyMetrics#instrument(Runnable)}
+   * for the tasks they execute.
+   *
+   * @param metrics the metrics
+   */
+  public void setMetrics(TtyMetrics metrics) {
+    this.metrics = metrics;
+    this.eventDecoder.setMetrics(metrics);
+  }
+
+  /**
+   * @return the action taken when a malformed input sequence is decoded
+   */
+  public MalformedInputAction getMalformedInputAction() {
+    return decoder.getMalformedInputAction();
+  }
+
+  /**
+   * Set the action to take when a malformed input sequence is decoded, it is replaced by default.
+   *
+   * @param action the action
+   */
+  public void setMalformedInputAction(MalformedInputAction action) {
+    decoder.setMalformedInputAction(action);
+  }
+
+  /**
+   * @return the serial executor running the handlers or {@code null} when they run on the transport thread
+   */
+  public Executor getHandlerExecutor() {
+    return handlerExecutor;
+  }
+
+  /**
+   * Run the handlers of this connection on a {@link SerialExecutor} backed by {@code executor} instead of the
+   * transport thread, so they can block without stalling the other connections. The handlers keep being called one
+   * at a time and in order, the implementations of {@link #execute(Runnable)} must use {@link #getHandlerExecutor()}
+   * when it is not {@code null}. It must be called before the connection is handed to the application.
+   *
+   * @param executor the executor, for instance {@link SerialExecutor#newThreadPerTaskExecutor()}
+   */
+  public void setHandlerExecutor(Executor executor) {
+    this.handlerExecutor = executor != null ? new SerialExecutor(executor) : null;
+    this.eventDecoder.setEventExecutor(handlerExecutor != null ? stdinBuffer::execute : null);
+    this.stdinBuffer.setDirect(handlerExecutor == null);
+  }
+
+  /**
+   * Call a handler on the handler executor or directly when there is none.
+   *
+   * @param task the task calling the handler
+   */
+  public void dispatch(Runnable task) {
+    if (handlerExecutor != null) {
+      handlerExecutor.execute(task);
+    } else {
+      task.run();
+    }
+  }
+
+  @Override
+  public TtyMetrics metrics() {
+    return metrics;
+  }
+
   @Override
   public long lastAccessedTime() {
     return lastAccessedTime;
   }
 
+  @Override
+  public long lastAccessedMonotonicTime() {
+    return lastAccessedMonotonicTime;
+  }
+
   @Override
   public String terminalType() {
     return "vt100";
@@ -102,22 +229,145 @@ public abstract class HttpTtyConnection implements TtyConnection {
 
   protected abstract void write(byte[] buffer);
 
+  /**
+   * Write the remaining bytes of the buffer to the client, the buffer is only valid during the call. The default
+   * implementation copies the bytes and calls {@link #write(byte[])}.
+   *
+   * @param buffer the bytes to write
+   */
+  protected void write(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    write(bytes);
+  }
+
+  @Override
+  public boolean isWritable() {
+    return outputQueue.isWritable();
+  }
+
+  @Override
+  public Consumer<Void> getDrainHandler() {
+    return outputQueue.getDrainHandler();
+  }
+
+  @Override
+  public void setDrainHandler(Consumer<Void> handler) {
+    outputQueue.setDrainHandler(handler);
+  }
+
+  /**
+   * Signal a change of the writability of the transport, for instance when the amount of data it buffers crosses
+   * the limit of the overflow policy.
+   *
+   * @param writable the transport writability
+   */
+  public void setTransportWritable(boolean writable) {
+    outputQueue.setTransportWritable(writable);
+  }
+
+  /**
+   * Stop reading data from the client. The default implementation does nothing.
+   */
+  protected void pauseTransport() {
+  }
+
+  /**
+   * Resume reading data from the client. The default implementation does nothing.
+   */
+  protected void resumeTransport() {
+  }
+
+  @Override
+  public void pause() {
+    stdinBuffer.pause();
+  }
+
+  @Override
+  public void resume() {
+    stdinBuffer.resume();
+  }
+
+  @Override
+  public void setInputWaterMarks(int lowWaterMark, int highWaterMark) {
+    stdinBuffer.setWaterMarks(lowWaterMark, highWaterMark);
+  }
+
+  /**
+   * Flush the output buffered according to the flush policy.
+   */
+  public void flush() {
+    outputBuffer.flush();
+  }
+
   /**
    * Special case to handle tty events.
    *
    * @param bytes
    */
   public void writeToDecoder(byte[] bytes) {
-    lastAccessedTime = System.currentTimeMillis();
+    lastAccessedTime = CoarseClock.currentTimeMillis();
+    lastAccessedMonotonicTime = CoarseClock.monotonicTimeMillis();
+    metrics.bytesRead(bytes.length);
+    decoder.write(bytes);
+    checkDecodeErrors();
+  }
+
+  /**
+   * Decode raw input bytes, the buffer position is advanced to its limit.
+   *
+   * @param bytes the bytes
+   */
+  public void writeToDecoder(ByteBuffer bytes) {
+    lastAccessedTime = CoarseClock.currentTimeMillis();
+    lastAccessedMonotonicTime = CoarseClock.monotonicTimeMillis();
+    metrics.bytesRead(bytes.remaining());
     decoder.write(bytes);
+    checkDecodeErrors();
   }
 
+  private void checkDecodeErrors() {
+    long count = decoder.malformedInputCount();
+    if (count != decodeErrors) {
+      metrics.decodeErrors((int) (count - decodeErrors));
+      decodeErrors = count;
+    }
+  }
+
+  /**
+   * Handle a text message, either in the compact format or in the json format.
+   *
+   * @param msg the message
+   */
   public void writeToDecoder(String msg) {
-    ObjectMapper mapper = new ObjectMapper();
+    if (msg.isEmpty()) {
+      return;
+    }
+    switch (msg.charAt(0)) {
+      case '{':
+        writeJsonToDecoder(msg);
+        break;
+      case 'd':
+        read(msg, 1);
+        break;
+      case 'r':
+        int sep = msg.indexOf(',', 1);
+        if (sep != -1) {
+          try {
+            resize(Integer.parseInt(msg.substring(1, sep)), Integer.parseInt(msg.substring(sep + 1)));
+          } catch (NumberFormatException e) {
+            // Invalid size
+          }
+        }
+        break;
+    }
+  }
+
+  private void writeJsonToDecoder(String msg) {
     Map<String, Object> obj;
     String action;
     try {
-      obj = mapper.readValue(msg, Map.class);
+      obj = JSON_READER.readValue(msg);
       action = (String) obj.get("action");
     } catch (IOException e) {
       // Log this
@@ -126,23 +376,16 @@ public abstract class HttpTtyConnection implements TtyConnection {
     if (action != null) {
       switch (action) {
         case "read":
-          lastAccessedTime = System.currentTimeMillis();
           String data = (String) obj.get("data");
-          decoder.write(data.getBytes()); //write back echo
+          if (data != null) {
+            read(data, 0);
+          }
           break;
         case "resize":
           try {
             int cols = (int) obj.getOrDefault("cols", size.x());
             int rows = (int) obj.getOrDefault("rows", size.y());
-            if (cols > 0 && rows > 0) {
-              Vector newSize = new Vector(cols, rows);
-              if (!newSize.equals(size())) {
-                size = newSize;
-                if (sizeHandler != null) {
-                  sizeHandler.accept(size);
-                }
-              }
-            }
+            resize(cols, rows);
           } catch (Exception e) {
             // Invalid size
             // Log this
@@ -152,6 +395,37 @@ public abstract class HttpTtyConnection implements TtyConnection {
     }
   }
 
+  /**
+   * The text is already decoded, its code points are handed directly to the event decoder.
+   */
+  private void read(String data, int from) {
+    lastAccessedTime = CoarseClock.currentTimeMillis();
+    lastAccessedMonotonicTime = CoarseClock.monotonicTimeMillis();
+    int len = data.length();
+    if (from < len) {
+      int[] codePoints = new int[data.codePointCount(from, len)];
+      for (int i = 0, offset = from;offset < len;i++) {
+        int codePoint = data.codePointAt(offset);
+        codePoints[i] = codePoint;
+        offset += Character.charCount(codePoint);
+      }
+      eventDecoder.accept(codePoints);
+    }
+  }
+
+  private void resize(int cols, int rows) {
+    if (cols > 0 && rows > 0) {
+      Vector newSize = new Vector(cols, rows);
+      if (!newSize.equals(size())) {
+        size = newSize;
+        Consumer<Vector> handler = sizeHandler;
+        if (handler != null) {
+          dispatch(() -> handler.accept(newSize));
+        }
+      }
+    }
+  }
+
   public Consumer<String> getTerminalTypeHandler() {
     return termHandler;
   }
@@ -184,11 +458,11 @@ public abstract class HttpTtyConnection implements TtyConnection {
   }
 
   public Consumer<int[]> getStdinHandler() {
-    return eventDecoder.getReadHandler();
+    return stdinBuffer.getReadHandler();
   }
 
   public void setStdinHandler(Consumer<int[]> handler) {
-    eventDecoder.setReadHandler(handler);
+    stdinBuffer.setReadHandler(handler);
   }
 
   public Consumer<int[]> stdoutHandler() {
@@ -29,10 +29,16 @@ import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.termd.core.io.MalformedInputAction;
+import io.termd.core.tty.FlushPolicy;
+import io.termd.core.tty.OverflowPolicy;
+import io.termd.core.tty.TtyMetrics;
 import io.termd.core.tty.TtyConnection;
 import io.termd.core.util.Helper;
+import io.termd.core.util.SerialExecutor;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 /**
@@ -47,10 +53,20 @@ public class NettyWebsocketTtyBootstrap {
   private int port;
   private EventLoopGroup group;
   private Channel channel;
+  private FlushPolicy flushPolicy;
+  private OverflowPolicy overflowPolicy;
+  private TtyMetrics metrics;
+  private Executor handlerExecutor;
+  private MalformedInputAction malformedInputAction;
+  private boolean binary;
 
   public NettyWebsocketTtyBootstrap() {
     this.host = "localhost";
     this.port = 8080;
+    this.flushPolicy = FlushPolicy.IMMEDIATE;
+    this.overflowPolicy = OverflowPolicy.DEFAULT;
+    this.metrics = TtyMetrics.NOOP;
+    this.malformedInputAction = MalformedInputAction.REPLACE;
   }
 
   public String getHost() {
@@ -71,6 +87,99 @@ public class NettyWebsocketTtyBootstrap {
     return this;
   }
 
+  public FlushPolicy getFlushPolicy() {
+    return flushPolicy;
+  }
+
+  /**
+   * Set the policy for flushing the output of the connections.
+   *
+   * @param flushPolicy the flush policy
+   * @return this object
+   */
+  public NettyWebsocketTtyBootstrap setFlushPolicy(FlushPolicy flushPolicy) {
+    this.flushPolicy = flushPolicy;
+    return this;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * Set the policy bounding the output of the connections that has not been written to the clients.
+   *
+   * @param overflowPolicy the overflow policy
+   * @return this object
+   */
+  public NettyWebsocketTtyBootstrap setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+    return this;
+  }
+
+  public boolean isBinary() {
+    return binary;
+  }
+
+  /**
+   * Send the output in binary Websocket frames instead of text frames, the input is accepted in both kinds of
+   * frames regardless of this setting.
+   *
+   * @param binary true for binary output frames
+   * @return this object
+   */
+  public NettyWebsocketTtyBootstrap setBinary(boolean binary) {
+    this.binary = binary;
+    return this;
+  }
+
+  public TtyMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Set the metrics of the connections, {@link TtyMetrics#forConnection(TtyConnection)} is called for each connection.
+   *
+   * @param metrics the metrics
+   * @return this object
+   */
+  public NettyWebsocketTtyBootstrap setMetrics(TtyMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  public Executor getHandlerExecutor() {
+    return handlerExecutor;
+  }
+
+  /**
+   * Run the handlers of each connection on its own serial executor backed by {@code executor} instead of the
+   * event loop, for applications doing blocking work in their handlers. A {@code null} executor keeps the handlers
+   * on the event loop.
+   *
+   * @param executor the executor, for instance {@link SerialExecutor#newThreadPerTaskExecutor()}
+   * @return this object
+   */
+  public NettyWebsocketTtyBootstrap setHandlerExecutor(Executor executor) {
+    this.handlerExecutor = executor;
+    return this;
+  }
+
+  public MalformedInputAction getMalformedInputAction() {
+    return malformedInputAction;
+  }
+
+  /**
+   * Set the action to take when a malformed input sequence is decoded, it is replaced by default.
+   *
+   * @param action the action
+   * @return this object
+   */
+  public NettyWebsocketTtyBootstrap setMalformedInputAction(MalformedInputAction action) {
+    this.malformedInputAction = action;
+    return this;
+  }
+
   public void start(Consumer<TtyConnection> handler, Consumer<Throwable> doneHandler) {
     group = new NioEventLoopGroup();
 
@@ -78,7 +187,7 @@ public class NettyWebsocketTtyBootstrap {
     b.group(group)
         .channel(NioServerSocketChannel.class)
         .handler(new LoggingHandler(LogLevel.INFO))
-        .childHandler(new TtyServerInitializer(channelGroup, handler));
+        .childHandler(new TtyServerInitializer(channelGroup, handler, flushPolicy, overflowPolicy, binary).setMetrics(metrics).setHandlerExecutor(handlerExecutor).setMalformedInputAction(malformedInputAction));
 
     ChannelFuture f = b.bind(host, port);
     f.addListener(abc -> {
@@ -22,10 +22,16 @@ import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.termd.core.io.MalformedInputAction;
+import io.termd.core.tty.FlushPolicy;
+import io.termd.core.tty.OverflowPolicy;
+import io.termd.core.tty.TtyMetrics;
 import io.termd.core.tty.TtyConnection;
 
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 /**
@@ -35,10 +41,64 @@ public class TtyServerInitializer extends ChannelInitializer<SocketChannel> {
 
   private final ChannelGroup group;
   private final Consumer<TtyConnection> handler;
+  private final FlushPolicy flushPolicy;
+  private final OverflowPolicy overflowPolicy;
+  private final boolean binary;
+  private TtyMetrics metrics = TtyMetrics.NOOP;
+  private Executor handlerExecutor;
+  private MalformedInputAction malformedInputAction = MalformedInputAction.REPLACE;
 
   public TtyServerInitializer(ChannelGroup group, Consumer<TtyConnection> handler) {
+    this(group, handler, FlushPolicy.IMMEDIATE);
+  }
+
+  public TtyServerInitializer(ChannelGroup group, Consumer<TtyConnection> handler, FlushPolicy flushPolicy) {
+    this(group, handler, flushPolicy, false);
+  }
+
+  public TtyServerInitializer(ChannelGroup group, Consumer<TtyConnection> handler, FlushPolicy flushPolicy, boolean binary) {
+    this(group, handler, flushPolicy, OverflowPolicy.DEFAULT, binary);
+  }
+
+  public TtyServerInitializer(ChannelGroup group, Consumer<TtyConnection> handler, FlushPolicy flushPolicy, OverflowPolicy overflowPolicy, boolean binary) {
     this.group = group;
     this.handler = handler;
+    this.flushPolicy = flushPolicy;
+    this.overflowPolicy = overflowPolicy;
+    this.binary = binary;
+  }
+
+  /**
+   * Set the metrics of the connections.
+   *
+   * @param metrics the metrics
+   * @return this object
+   */
+  public TtyServerInitializer setMetrics(TtyMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * Set the executor running the handlers of the connections instead of the event loop.
+   *
+   * @param executor the executor
+   * @return this object
+   */
+  public TtyServerInitializer setHandlerExecutor(Executor executor) {
+    this.handlerExecutor = executor;
+    return this;
+  }
+
+  /**
+   * Set the action to take when a malformed input sequence is decoded.
+   *
+   * @param action the action
+   * @return this object
+   */
+  public TtyServerInitializer setMalformedInputAction(MalformedInputAction action) {
+    this.malformedInputAction = action;
+    return this;
   }
 
   @Override
@@ -49,6 +109,8 @@ public class TtyServerInitializer extends ChannelInitializer<SocketChannel> {
     pipeline.addLast(new HttpObjectAggregator(64 * 1024));
     pipeline.addLast(new HttpRequestHandler("/ws"));
     pipeline.addLast(new WebSocketServerProtocolHandler("/ws"));
-    pipeline.addLast(new TtyWebSocketFrameHandler(group, handler));
+    // Reassemble the fragmented messages, the frame handler expects whole messages
+    pipeline.addLast(new WebSocketFrameAggregator(64 * 1024));
+    pipeline.addLast(new TtyWebSocketFrameHandler(group, handler, flushPolicy, overflowPolicy, binary).setMetrics(metrics).setHandlerExecutor(handlerExecutor).setMalformedInputAction(malformedInputAction));
   }
 }
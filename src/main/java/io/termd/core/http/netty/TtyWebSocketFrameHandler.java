@@ -17,31 +17,104 @@
 package io.termd.core.http.netty;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.group.ChannelGroup;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.termd.core.http.HttpTtyConnection;
+import io.termd.core.io.MalformedInputAction;
+import io.termd.core.tty.FlushPolicy;
+import io.termd.core.tty.OverflowPolicy;
+import io.termd.core.tty.TtyMetrics;
 import io.termd.core.tty.TtyConnection;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
+ * Handles the Websocket frames of a tty connection, binary frames carry raw input bytes and text frames carry the
+ * messages handled by {@link HttpTtyConnection#writeToDecoder(String)}. The output is sent in text frames or in
+ * binary frames when the handler is created in binary mode.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
-public class TtyWebSocketFrameHandler extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+public class TtyWebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
 
   private final ChannelGroup group;
   private final Consumer<TtyConnection> handler;
+  private final FlushPolicy flushPolicy;
+  private final OverflowPolicy overflowPolicy;
+  private final boolean binary;
+  private TtyMetrics metrics = TtyMetrics.NOOP;
+  private Executor handlerExecutor;
+  private MalformedInputAction malformedInputAction = MalformedInputAction.REPLACE;
   private ChannelHandlerContext context;
   private HttpTtyConnection conn;
 
   public TtyWebSocketFrameHandler(ChannelGroup group, Consumer<TtyConnection> handler) {
+    this(group, handler, FlushPolicy.IMMEDIATE);
+  }
+
+  public TtyWebSocketFrameHandler(ChannelGroup group, Consumer<TtyConnection> handler, FlushPolicy flushPolicy) {
+    this(group, handler, flushPolicy, false);
+  }
+
+  public TtyWebSocketFrameHandler(ChannelGroup group, Consumer<TtyConnection> handler, FlushPolicy flushPolicy, boolean binary) {
+    this(group, handler, flushPolicy, OverflowPolicy.DEFAULT, binary);
+  }
+
+  public TtyWebSocketFrameHandler(ChannelGroup group, Consumer<TtyConnection> handler, FlushPolicy flushPolicy, OverflowPolicy overflowPolicy, boolean binary) {
     this.group = group;
     this.handler = handler;
+    this.flushPolicy = flushPolicy;
+    this.overflowPolicy = overflowPolicy;
+    this.binary = binary;
+  }
+
+  /**
+   * Set the metrics of the connection.
+   *
+   * @param metrics the metrics
+   * @return this object
+   */
+  public TtyWebSocketFrameHandler setMetrics(TtyMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * Set the executor running the handlers of the connection instead of the event loop.
+   *
+   * @param executor the executor
+   * @return this object
+   * @see HttpTtyConnection#setHandlerExecutor(Executor)
+   */
+  public TtyWebSocketFrameHandler setHandlerExecutor(Executor executor) {
+    this.handlerExecutor = executor;
+    return this;
+  }
+
+  /**
+   * Set the action to take when a malformed input sequence is decoded.
+   *
+   * @param action the action
+   * @return this object
+   * @see HttpTtyConnection#setMalformedInputAction(MalformedInputAction)
+   */
+  public TtyWebSocketFrameHandler setMalformedInputAction(MalformedInputAction action) {
+    this.malformedInputAction = action;
+    return this;
+  }
+
+  private WebSocketFrame frame(ByteBuf byteBuf) {
+    return binary ? new BinaryWebSocketFrame(byteBuf) : new TextWebSocketFrame(byteBuf);
   }
 
   @Override
@@ -55,49 +128,99 @@ public class TtyWebSocketFrameHandler extends SimpleChannelInboundHandler<TextWe
     if (evt == WebSocketServerProtocolHandler.ServerHandshakeStateEvent.HANDSHAKE_COMPLETE) {
       ctx.pipeline().remove(HttpRequestHandler.class);
       group.add(ctx.channel());
-      conn = new HttpTtyConnection() {
+      ctx.channel().config().setWriteBufferWaterMark(new WriteBufferWaterMark(overflowPolicy.lowWaterMark(), overflowPolicy.limit()));
+      conn = new HttpTtyConnection(StandardCharsets.UTF_8, HttpTtyConnection.DEFAULT_SIZE, flushPolicy, overflowPolicy) {
         @Override
         protected void write(byte[] buffer) {
-          ByteBuf byteBuf = Unpooled.buffer();
+          ByteBuf byteBuf = context.alloc().ioBuffer(buffer.length);
+          byteBuf.writeBytes(buffer);
+          context.writeAndFlush(frame(byteBuf));
+        }
+
+        @Override
+        protected void write(ByteBuffer buffer) {
+          ByteBuf byteBuf = context.alloc().ioBuffer(buffer.remaining());
           byteBuf.writeBytes(buffer);
-          context.writeAndFlush(new TextWebSocketFrame(byteBuf));
+          context.writeAndFlush(frame(byteBuf));
+        }
+
+        @Override
+        protected void pauseTransport() {
+          context.channel().config().setAutoRead(false);
+        }
+
+        @Override
+        protected void resumeTransport() {
+          context.channel().config().setAutoRead(true);
         }
 
         @Override
         public void schedule(Runnable task, long delay, TimeUnit unit) {
-          context.executor().schedule(task, delay, unit);
+          context.executor().schedule(getHandlerExecutor() != null ? () -> execute(task) : task, delay, unit);
         }
 
         @Override
         public void execute(Runnable task) {
-          context.executor().execute(task);
+          Executor executor = getHandlerExecutor();
+          if (executor != null) {
+            executor.execute(metrics().instrument(task));
+          } else {
+            context.executor().execute(metrics().instrument(task));
+          }
         }
 
         @Override
         public void close() {
+          flush();
           context.close();
         }
       };
-      handler.accept(conn);
+      conn.setMetrics(metrics.forConnection(conn));
+      conn.setHandlerExecutor(handlerExecutor);
+      conn.setMalformedInputAction(malformedInputAction);
+      HttpTtyConnection c = conn;
+      conn.dispatch(() -> handler.accept(c));
     } else {
       super.userEventTriggered(ctx, evt);
     }
   }
 
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    if (conn != null) {
+      conn.setTransportWritable(ctx.channel().isWritable());
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+
   @Override
   public void channelInactive(ChannelHandlerContext ctx) throws Exception {
     HttpTtyConnection tmp = conn;
     context = null;
     conn = null;
     if (tmp != null) {
+      // Release the producers waiting for the output to drain
+      tmp.setTransportWritable(true);
       Consumer<Void> closeHandler = tmp.getCloseHandler();
       if (closeHandler != null) {
-        closeHandler.accept(null);
+        tmp.dispatch(() -> closeHandler.accept(null));
       }
     }
   }
 
-  public void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame msg) throws Exception {
-    conn.writeToDecoder(msg.text());
+  public void channelRead0(ChannelHandlerContext ctx, WebSocketFrame msg) throws Exception {
+    if (msg instanceof BinaryWebSocketFrame) {
+      ByteBuf buf = msg.content();
+      if (buf.nioBufferCount() == 1) {
+        conn.writeToDecoder(buf.nioBuffer());
+      } else {
+        for (ByteBuffer nioBuf : buf.nioBuffers()) {
+          conn.writeToDecoder(nioBuf);
+        }
+      }
+    } else if (msg instanceof TextWebSocketFrame) {
+      conn.metrics().bytesRead(msg.content().readableBytes());
+      conn.writeToDecoder(((TextWebSocketFrame) msg).text());
+    }
   }
 }
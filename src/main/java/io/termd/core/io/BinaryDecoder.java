@@ -20,36 +20,80 @@ import io.termd.core.util.Helper;
 
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.nio.IntBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.function.Consumer;
 
 /**
+ * Decodes bytes to code points.<p/>
+ *
+ * The {@code UTF-8}, {@code US-ASCII} and {@code ISO-8859-1} charsets are decoded directly to code points, any other
+ * charset is decoded with its {@link CharsetDecoder}. The decoder reuses its buffers, when it is created with a
+ * {@link CodePointConsumer} decoding does not allocate at all.<p/>
+ *
+ * Malformed input is handled according to the {@link MalformedInputAction}, by default it is replaced with the
+ * {@code U+FFFD} character.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public class BinaryDecoder {
 
   private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
 
+  private static final int REPLACEMENT = 0xFFFD;
+  private static final byte[] NO_BYTES = new byte[0];
+
+  private static final int MODE_CHARSET = 0, MODE_UTF8 = 1, MODE_ASCII = 2, MODE_LATIN1 = 3;
+
   private CharsetDecoder decoder;
+  private int mode;
   private ByteBuffer bBuf;
   private final CharBuffer cBuf;
+  private final int[] cpBuf;
+  private int cpLen;
+  private byte[] scratch;
+  private final byte[] seqBuf = new byte[4];
+  private int seqLen;
+  private int seqExpected;
   private final Consumer<int[]> onChar;
+  private final CodePointConsumer onCodePoints;
+  private MalformedInputAction malformedInputAction = MalformedInputAction.REPLACE;
+  private Consumer<byte[]> malformedInputHandler;
+  private long malformedInputCount;
 
   public BinaryDecoder(Charset charset, Consumer<int[]> onChar) {
     this(2, charset, onChar);
   }
 
   public BinaryDecoder(int initialSize, Charset charset, Consumer<int[]> onChar) {
+    this(initialSize, charset, onChar, null);
+  }
+
+  /**
+   * Create a decoder that delivers the code points in a reused buffer of {@code initialSize} code points, the
+   * {@code onCodePoints} consumer must copy the code points it needs to retain.
+   *
+   * @param initialSize the size of the code point buffer
+   * @param charset the charset
+   * @param onCodePoints the code points consumer
+   */
+  public BinaryDecoder(int initialSize, Charset charset, CodePointConsumer onCodePoints) {
+    this(initialSize, charset, null, onCodePoints);
+  }
+
+  private BinaryDecoder(int initialSize, Charset charset, Consumer<int[]> onChar, CodePointConsumer onCodePoints) {
     if (initialSize < 2) {
       throw new IllegalArgumentException("Initial size must be at least 2");
     }
-    decoder = charset.newDecoder();
     bBuf = EMPTY;
     cBuf = CharBuffer.allocate(initialSize); // We need at least 2
+    cpBuf = new int[initialSize];
     this.onChar = onChar;
+    this.onCodePoints = onCodePoints;
+    setCharset(charset);
   }
 
   /**
@@ -58,31 +102,222 @@ public class BinaryDecoder {
    * @param charset the new charset
    */
   public void setCharset(Charset charset) {
-    decoder = charset.newDecoder();
+    int next;
+    if (charset.equals(StandardCharsets.UTF_8)) {
+      next = MODE_UTF8;
+    } else if (charset.equals(StandardCharsets.US_ASCII)) {
+      next = MODE_ASCII;
+    } else if (charset.equals(StandardCharsets.ISO_8859_1)) {
+      next = MODE_LATIN1;
+    } else {
+      next = MODE_CHARSET;
+    }
+    if (seqLen > 0 && next != MODE_UTF8) {
+      // Keep the incomplete sequence for the next charset
+      ensureCapacity(seqLen);
+      bBuf.put(seqBuf, 0, seqLen);
+      seqLen = 0;
+    }
+    mode = next;
+    decoder = next == MODE_CHARSET ? charset.newDecoder() : null;
+  }
+
+  public MalformedInputAction getMalformedInputAction() {
+    return malformedInputAction;
+  }
+
+  /**
+   * Set the action to take when a malformed input sequence is decoded.
+   *
+   * @param action the action
+   * @return this object
+   */
+  public BinaryDecoder setMalformedInputAction(MalformedInputAction action) {
+    if (action == null) {
+      throw new NullPointerException("No null action accepted");
+    }
+    this.malformedInputAction = action;
+    return this;
+  }
+
+  public Consumer<byte[]> getMalformedInputHandler() {
+    return malformedInputHandler;
+  }
+
+  /**
+   * Set the handler receiving the malformed input sequences when the action is {@link MalformedInputAction#REPORT}.
+   * The bytes are empty when the charset decoder produced an invalid surrogate.
+   *
+   * @param handler the handler
+   * @return this object
+   */
+  public BinaryDecoder setMalformedInputHandler(Consumer<byte[]> handler) {
+    this.malformedInputHandler = handler;
+    return this;
+  }
+
+  /**
+   * @return the number of malformed input sequences decoded so far
+   */
+  public long malformedInputCount() {
+    return malformedInputCount;
   }
 
   public void write(byte[] data) {
     write(data, 0, data.length);
   }
 
+  /**
+   * Decode the remaining bytes of the buffer, the buffer position is advanced to its limit. A heap buffer is
+   * decoded in place, a direct buffer is transferred in chunks through a reused array.
+   *
+   * @param data the buffer to decode
+   */
+  public void write(ByteBuffer data) {
+    if (data.hasArray()) {
+      int len = data.remaining();
+      write(data.array(), data.arrayOffset() + data.position(), len);
+      data.position(data.limit());
+    } else {
+      if (scratch == null) {
+        scratch = new byte[Math.max(512, cpBuf.length)];
+      }
+      while (data.hasRemaining()) {
+        int len = Math.min(data.remaining(), scratch.length);
+        data.get(scratch, 0, len);
+        write(scratch, 0, len);
+      }
+    }
+  }
+
   public void write(byte[] data, int start, int len) {
+    if (mode == MODE_CHARSET) {
+      decodeCharset(data, start, len);
+    } else {
+      if (bBuf.position() > 0) {
+        // Bytes left over by the previous charset
+        int pending = bBuf.position();
+        bBuf.clear();
+        decodeDirect(bBuf.array(), 0, pending);
+      }
+      decodeDirect(data, start, start + len);
+      flushCodePoints();
+    }
+  }
 
-    // Fill the byte buffer
-    int remaining = bBuf.remaining();
-    if (len > remaining) {
-      // Allocate a new buffer
-      ByteBuffer tmp = bBuf;
-      int length = tmp.position() + len;
-      bBuf = ByteBuffer.allocate(length);
-      tmp.flip();
-      bBuf.put(tmp);
+  private void decodeDirect(byte[] data, int start, int end) {
+    if (mode == MODE_UTF8) {
+      decodeUtf8(data, start, end);
+    } else {
+      boolean ascii = mode == MODE_ASCII;
+      for (int i = start;i < end;i++) {
+        int b = data[i];
+        if (b < 0) {
+          if (ascii) {
+            malformed(data, i, 1);
+            continue;
+          }
+          b &= 0xFF;
+        }
+        put(b);
+      }
+    }
+  }
+
+  private void decodeUtf8(byte[] data, int start, int end) {
+    int i = start;
+    while (i < end) {
+      if (seqLen == 0) {
+        // Copy the ascii run
+        int[] buf = cpBuf;
+        int len = cpLen;
+        int max = Math.min(end, i + buf.length - len);
+        while (i < max && data[i] >= 0) {
+          buf[len++] = data[i++];
+        }
+        cpLen = len;
+        if (len == buf.length) {
+          flushCodePoints();
+          continue;
+        }
+        if (i == end) {
+          break;
+        }
+        int b = data[i++] & 0xFF;
+        if (b >= 0xC2 && b <= 0xDF) {
+          seqExpected = 2;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+          seqExpected = 3;
+        } else if (b >= 0xF0 && b <= 0xF4) {
+          seqExpected = 4;
+        } else {
+          malformed(data, i - 1, 1);
+          continue;
+        }
+        seqBuf[0] = (byte) b;
+        seqLen = 1;
+      } else {
+        int b = data[i] & 0xFF;
+        if (!isContinuation(b)) {
+          // Truncated sequence, the current byte is processed again
+          int len = seqLen;
+          seqLen = 0;
+          malformed(seqBuf, 0, len);
+          continue;
+        }
+        seqBuf[seqLen++] = (byte) b;
+        i++;
+        if (seqLen == seqExpected) {
+          seqLen = 0;
+          put(toCodePoint());
+        }
+      }
+    }
+  }
+
+  /**
+   * Check the next byte of the pending sequence, this rejects overlong forms, surrogates and code points
+   * above {@code U+10FFFF}, so a complete sequence is always a valid code point.
+   */
+  private boolean isContinuation(int b) {
+    if ((b & 0xC0) != 0x80) {
+      return false;
     }
+    if (seqLen == 1) {
+      switch (seqBuf[0] & 0xFF) {
+        case 0xE0:
+          return b >= 0xA0;
+        case 0xED:
+          return b <= 0x9F;
+        case 0xF0:
+          return b >= 0x90;
+        case 0xF4:
+          return b <= 0x8F;
+      }
+    }
+    return true;
+  }
+
+  private int toCodePoint() {
+    switch (seqExpected) {
+      case 2:
+        return ((seqBuf[0] & 0x1F) << 6) | (seqBuf[1] & 0x3F);
+      case 3:
+        return ((seqBuf[0] & 0x0F) << 12) | ((seqBuf[1] & 0x3F) << 6) | (seqBuf[2] & 0x3F);
+      default:
+        return ((seqBuf[0] & 0x07) << 18) | ((seqBuf[1] & 0x3F) << 12) | ((seqBuf[2] & 0x3F) << 6) | (seqBuf[3] & 0x3F);
+    }
+  }
+
+  private void decodeCharset(byte[] data, int start, int len) {
+
+    // Fill the byte buffer
+    ensureCapacity(len);
     bBuf.put(data, start, len);
     bBuf.flip();
 
     // Drain the byte buffer
     while (true) {
-      IntBuffer iBuf = IntBuffer.allocate(bBuf.remaining());
       CoderResult result = decoder.decode(bBuf, cBuf, false);
       cBuf.flip();
       while (cBuf.hasRemaining()) {
@@ -94,28 +329,27 @@ public class BinaryDecoder {
               if (Character.isLowSurrogate(low)) {
                 int codePoint = Character.toCodePoint(c, low);
                 if (Character.isValidCodePoint(codePoint)) {
-                  iBuf.put(codePoint);
+                  put(codePoint);
                 } else {
-                  throw new UnsupportedOperationException("Handle me gracefully");
+                  malformed(NO_BYTES, 0, 0);
                 }
               } else {
-                throw new UnsupportedOperationException("Handle me gracefully");
+                malformed(NO_BYTES, 0, 0);
+                // Process the char again
+                cBuf.position(cBuf.position() - 1);
               }
             } else {
-              throw new UnsupportedOperationException("Handle me gracefully");
+              malformed(NO_BYTES, 0, 0);
             }
           } else {
-            throw new UnsupportedOperationException("Handle me gracefully");
+            malformed(NO_BYTES, 0, 0);
           }
         } else {
-          iBuf.put((int) c);
+          put(c);
         }
       }
-      iBuf.flip();
-      int[] codePoints = new int[iBuf.limit()];
-      iBuf.get(codePoints);
-      onChar.accept(codePoints);
       cBuf.compact();
+      flushCodePoints();
       if (result.isOverflow()) {
         // We still have work to do
       } else if (result.isUnderflow()) {
@@ -128,9 +362,72 @@ public class BinaryDecoder {
         }
         break;
       } else {
-        throw new UnsupportedOperationException("Handle me gracefully");
+        // Malformed or unmappable input
+        int length = result.length();
+        malformed(bBuf.array(), bBuf.arrayOffset() + bBuf.position(), length);
+        bBuf.position(bBuf.position() + length);
+        flushCodePoints();
       }
     }
     bBuf.compact();
   }
+
+  private void malformed(byte[] bytes, int offset, int length) {
+    malformedInputCount++;
+    switch (malformedInputAction) {
+      case REPLACE:
+        put(REPLACEMENT);
+        break;
+      case LATIN1:
+        if (length == 0) {
+          put(REPLACEMENT);
+        } else {
+          for (int i = offset;i < offset + length;i++) {
+            put(bytes[i] & 0xFF);
+          }
+        }
+        break;
+      case REPORT:
+        Consumer<byte[]> handler = malformedInputHandler;
+        if (handler != null) {
+          handler.accept(Arrays.copyOfRange(bytes, offset, offset + length));
+        }
+        break;
+      default:
+        // Ignore
+        break;
+    }
+  }
+
+  /**
+   * Make room for {@code len} more bytes in the byte buffer, the buffer grows geometrically and is kept
+   * for the next writes.
+   */
+  private void ensureCapacity(int len) {
+    if (len > bBuf.remaining()) {
+      ByteBuffer tmp = bBuf;
+      bBuf = ByteBuffer.allocate(Math.max(tmp.position() + len, tmp.capacity() * 2));
+      tmp.flip();
+      bBuf.put(tmp);
+    }
+  }
+
+  private void put(int codePoint) {
+    cpBuf[cpLen++] = codePoint;
+    if (cpLen == cpBuf.length) {
+      flushCodePoints();
+    }
+  }
+
+  private void flushCodePoints() {
+    int len = cpLen;
+    if (len > 0) {
+      cpLen = 0;
+      if (onCodePoints != null) {
+        onCodePoints.accept(cpBuf, 0, len);
+      } else {
+        onChar.accept(Arrays.copyOf(cpBuf, len));
+      }
+    }
+  }
 }
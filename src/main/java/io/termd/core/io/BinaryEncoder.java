@@ -16,23 +16,67 @@
 
 package io.termd.core.io;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.function.Consumer;
 
 /**
+ * Encodes code points to bytes.<p/>
+ *
+ * The {@code UTF-8}, {@code US-ASCII} and {@code ISO-8859-1} charsets are encoded directly from the code points, any
+ * other charset is encoded with a cached {@link CharsetEncoder}. Unmappable code points are replaced with {@code ?}.
+ * The encoder reuses its output buffer, when it is created with a {@code Consumer<ByteBuffer>} encoding does not
+ * allocate at all. The code points can also be encoded in a caller provided {@link ByteBuffer} with
+ * {@link #encode(int[], int, int, ByteBuffer)}.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
-public class BinaryEncoder implements Consumer<int[]> {
+public class BinaryEncoder implements Consumer<int[]>, CodePointConsumer {
+
+  private static final int MODE_CHARSET = 0, MODE_UTF8 = 1, MODE_ASCII = 2, MODE_LATIN1 = 3;
+
+  private static final byte REPLACEMENT = '?';
 
   private volatile Charset charset;
+  private Charset current;
+  private int mode;
+  private CharsetEncoder encoder;
+  private CharBuffer cBuf;
+  private ByteBuffer bBuf;
   final Consumer<byte[]> onByte;
+  private final Consumer<ByteBuffer> onBuffer;
 
   public BinaryEncoder(Charset charset, Consumer<byte[]> onByte) {
+    this(256, charset, onByte, null);
+  }
+
+  /**
+   * Create an encoder that delivers the bytes in a reused buffer of {@code initialSize} bytes that grows when needed,
+   * the {@code onBuffer} consumer must consume or copy the bytes it needs to retain before returning.
+   *
+   * @param initialSize the initial size of the byte buffer
+   * @param charset the charset
+   * @param onBuffer the buffer consumer
+   */
+  public BinaryEncoder(int initialSize, Charset charset, Consumer<ByteBuffer> onBuffer) {
+    this(initialSize, charset, null, onBuffer);
+  }
+
+  private BinaryEncoder(int initialSize, Charset charset, Consumer<byte[]> onByte, Consumer<ByteBuffer> onBuffer) {
+    if (initialSize < 4) {
+      throw new IllegalArgumentException("Initial size must be at least 4");
+    }
     this.charset = charset;
     this.onByte = onByte;
+    this.onBuffer = onBuffer;
+    this.bBuf = ByteBuffer.allocate(initialSize);
   }
 
   /**
@@ -46,22 +90,201 @@ public class BinaryEncoder implements Consumer<int[]> {
 
   @Override
   public void accept(int[] codePoints) {
-    final char[] tmp = new char[2];
-    int capacity = 0;
-    for (int codePoint : codePoints) {
-      capacity += Character.charCount(codePoint);
+    accept(codePoints, 0, codePoints.length);
+  }
+
+  @Override
+  public void accept(int[] codePoints, int offset, int length) {
+    checkCharset();
+    int max = maxBytes(length);
+    if (max > bBuf.capacity()) {
+      bBuf = ByteBuffer.allocate(Math.max(max, bBuf.capacity() * 2));
+    }
+    bBuf.clear();
+    doEncode(codePoints, offset, length, bBuf);
+    bBuf.flip();
+    if (onBuffer != null) {
+      onBuffer.accept(bBuf);
+    } else {
+      onByte.accept(Arrays.copyOf(bBuf.array(), bBuf.limit()));
+    }
+  }
+
+  /**
+   * Encode the code points in the provided buffer, the buffer position is advanced by the number of bytes written.
+   *
+   * @param codePoints the code points array
+   * @param offset the offset of the first code point
+   * @param length the number of code points
+   * @param dst the destination buffer that should have at least {@link #maxBytes(int)} bytes remaining
+   * @throws BufferOverflowException when the buffer does not have enough space
+   */
+  public void encode(int[] codePoints, int offset, int length, ByteBuffer dst) throws BufferOverflowException {
+    checkCharset();
+    doEncode(codePoints, offset, length, dst);
+  }
+
+  /**
+   * @param length the number of code points
+   * @return the maximum number of bytes the encoding of {@code length} code points can produce with the current charset
+   */
+  public int maxBytes(int length) {
+    checkCharset();
+    switch (mode) {
+      case MODE_UTF8:
+        return length * 4;
+      case MODE_ASCII:
+      case MODE_LATIN1:
+        return length;
+      default:
+        // A code point is at most two chars
+        return (int) Math.ceil(length * 2 * encoder.maxBytesPerChar());
+    }
+  }
+
+  private void checkCharset() {
+    Charset next = charset;
+    if (next != current) {
+      current = next;
+      encoder = null;
+      if (next.equals(StandardCharsets.UTF_8)) {
+        mode = MODE_UTF8;
+      } else if (next.equals(StandardCharsets.US_ASCII)) {
+        mode = MODE_ASCII;
+      } else if (next.equals(StandardCharsets.ISO_8859_1)) {
+        mode = MODE_LATIN1;
+      } else {
+        mode = MODE_CHARSET;
+        encoder = next.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        if (cBuf == null) {
+          cBuf = CharBuffer.allocate(256);
+        }
+      }
+    }
+  }
+
+  private void doEncode(int[] codePoints, int offset, int length, ByteBuffer dst) {
+    int end = offset + length;
+    switch (mode) {
+      case MODE_UTF8:
+        if (dst.hasArray()) {
+          int pos = encodeUtf8(codePoints, offset, end, dst.array(), dst.arrayOffset() + dst.position(), dst.arrayOffset() + dst.limit());
+          dst.position(pos - dst.arrayOffset());
+        } else {
+          for (int i = offset;i < end;i++) {
+            putUtf8(codePoints[i], dst);
+          }
+        }
+        break;
+      case MODE_ASCII:
+      case MODE_LATIN1:
+        int max = mode == MODE_ASCII ? 0x7F : 0xFF;
+        if (dst.remaining() < length) {
+          throw new BufferOverflowException();
+        }
+        for (int i = offset;i < end;i++) {
+          int codePoint = codePoints[i];
+          dst.put(codePoint <= max && codePoint >= 0 ? (byte) codePoint : REPLACEMENT);
+        }
+        break;
+      default:
+        encodeCharset(codePoints, offset, end, dst);
+        break;
+    }
+  }
+
+  /**
+   * The UTF-8 encode loop on an array, returns the next array position.
+   */
+  private static int encodeUtf8(int[] codePoints, int from, int to, byte[] dst, int pos, int limit) {
+    for (int i = from;i < to;i++) {
+      int codePoint = codePoints[i];
+      if (codePoint >= 0 && codePoint < 0x80) {
+        if (pos >= limit) {
+          throw new BufferOverflowException();
+        }
+        dst[pos++] = (byte) codePoint;
+      } else if (codePoint >= 0 && codePoint < 0x800) {
+        if (pos + 2 > limit) {
+          throw new BufferOverflowException();
+        }
+        dst[pos++] = (byte) (0xC0 | (codePoint >> 6));
+        dst[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (codePoint >= 0 && codePoint < 0x10000 && !Character.isSurrogate((char) codePoint)) {
+        if (pos + 3 > limit) {
+          throw new BufferOverflowException();
+        }
+        dst[pos++] = (byte) (0xE0 | (codePoint >> 12));
+        dst[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        dst[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (codePoint >= 0x10000 && codePoint <= Character.MAX_CODE_POINT) {
+        if (pos + 4 > limit) {
+          throw new BufferOverflowException();
+        }
+        dst[pos++] = (byte) (0xF0 | (codePoint >> 18));
+        dst[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        dst[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        dst[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else {
+        // Surrogate or invalid code point
+        if (pos >= limit) {
+          throw new BufferOverflowException();
+        }
+        dst[pos++] = REPLACEMENT;
+      }
     }
-    CharBuffer charBuf = CharBuffer.allocate(capacity);
-    for (int codePoint : codePoints) {
-      int size = Character.toChars(codePoint, tmp, 0);
-      charBuf.put(tmp, 0, size);
+    return pos;
+  }
+
+  private static void putUtf8(int codePoint, ByteBuffer dst) {
+    if (codePoint >= 0 && codePoint < 0x80) {
+      dst.put((byte) codePoint);
+    } else if (codePoint >= 0 && codePoint < 0x800) {
+      dst.put((byte) (0xC0 | (codePoint >> 6)));
+      dst.put((byte) (0x80 | (codePoint & 0x3F)));
+    } else if (codePoint >= 0 && codePoint < 0x10000 && !Character.isSurrogate((char) codePoint)) {
+      dst.put((byte) (0xE0 | (codePoint >> 12)));
+      dst.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+      dst.put((byte) (0x80 | (codePoint & 0x3F)));
+    } else if (codePoint >= 0x10000 && codePoint <= Character.MAX_CODE_POINT) {
+      dst.put((byte) (0xF0 | (codePoint >> 18)));
+      dst.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+      dst.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+      dst.put((byte) (0x80 | (codePoint & 0x3F)));
+    } else {
+      dst.put(REPLACEMENT);
     }
-    charBuf.flip();
-    ByteBuffer bytesBuf = charset.encode(charBuf);
-    byte[] bytes = bytesBuf.array();
-    if (bytesBuf.limit() < bytesBuf.array().length) {
-      bytes = Arrays.copyOf(bytes, bytesBuf.limit());
+  }
+
+  private void encodeCharset(int[] codePoints, int from, int to, ByteBuffer dst) {
+    encoder.reset();
+    cBuf.clear();
+    for (int i = from;i < to;i++) {
+      int codePoint = codePoints[i];
+      if (cBuf.remaining() < 2) {
+        cBuf.flip();
+        check(encoder.encode(cBuf, dst, false));
+        cBuf.compact();
+      }
+      if (Character.isBmpCodePoint(codePoint)) {
+        cBuf.put((char) codePoint);
+      } else if (Character.isValidCodePoint(codePoint)) {
+        cBuf.put(Character.highSurrogate(codePoint));
+        cBuf.put(Character.lowSurrogate(codePoint));
+      } else {
+        cBuf.put((char) REPLACEMENT);
+      }
+    }
+    cBuf.flip();
+    check(encoder.encode(cBuf, dst, true));
+    check(encoder.flush(dst));
+  }
+
+  private static void check(CoderResult result) {
+    if (result.isOverflow()) {
+      throw new BufferOverflowException();
     }
-    onByte.accept(bytes);
   }
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.termd.core.io;
+
+import io.termd.core.util.Helper;
+
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A growable slice of code points: an array, an offset and a length. A stage of the tty pipeline keeps a buffer
+ * and reuses it for each chunk instead of allocating exactly sized arrays, the buffer is handed to the next
+ * stage with {@link #writeTo(Consumer)} which passes the slice to a {@link CodePointConsumer} and a copy to
+ * any other consumer.<p/>
+ *
+ * A read-only view shares the code points of its buffer and cannot be modified, its backing array is not
+ * accessible.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class CodePointBuffer {
+
+  private static final int[] EMPTY = new int[0];
+
+  int[] array;
+  int offset;
+  int length;
+  private final boolean readOnly;
+
+  public CodePointBuffer() {
+    this(EMPTY, 0, 0, false);
+  }
+
+  public CodePointBuffer(int capacity) {
+    this(new int[capacity], 0, 0, false);
+  }
+
+  private CodePointBuffer(int[] array, int offset, int length, boolean readOnly) {
+    this.array = array;
+    this.offset = offset;
+    this.length = length;
+    this.readOnly = readOnly;
+  }
+
+  /**
+   * Wrap an array, the buffer modifies the array until it needs to grow.
+   *
+   * @param codePoints the code points
+   * @return the buffer
+   */
+  public static CodePointBuffer wrap(int[] codePoints) {
+    return wrap(codePoints, 0, codePoints.length);
+  }
+
+  /**
+   * Wrap a slice of an array, the buffer modifies the array until it needs to grow.
+   *
+   * @param codePoints the code points
+   * @param offset the offset of the first code point
+   * @param length the number of code points
+   * @return the buffer
+   */
+  public static CodePointBuffer wrap(int[] codePoints, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > codePoints.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    return new CodePointBuffer(codePoints, offset, length, false);
+  }
+
+  /**
+   * @return the backing array
+   * @throws ReadOnlyBufferException when the buffer is read-only
+   */
+  public int[] array() {
+    checkWritable();
+    return array;
+  }
+
+  /**
+   * @return the offset of the first code point in the backing array
+   */
+  public int offset() {
+    return offset;
+  }
+
+  /**
+   * @return the number of code points
+   */
+  public int length() {
+    return length;
+  }
+
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * @param index the index of the code point, relative to the offset
+   * @return the code point
+   */
+  public int get(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("Invalid index " + index);
+    }
+    return array[offset + index];
+  }
+
+  /**
+   * Set the number of code points, after the backing array was filled directly.
+   *
+   * @param length the length
+   * @return this object
+   */
+  public CodePointBuffer setLength(int length) {
+    checkWritable();
+    if (length < 0 || offset + length > array.length) {
+      throw new IndexOutOfBoundsException("Invalid length " + length);
+    }
+    this.length = length;
+    return this;
+  }
+
+  /**
+   * Ensure the backing array can hold {@code capacity} code points after the offset, the array is replaced when
+   * it is too small.
+   *
+   * @param capacity the capacity
+   * @return this object
+   */
+  public CodePointBuffer ensureCapacity(int capacity) {
+    checkWritable();
+    if (offset + capacity > array.length) {
+      int[] next = new int[Math.max(capacity, Math.max(16, (array.length - offset) * 2))];
+      System.arraycopy(array, offset, next, 0, length);
+      array = next;
+      offset = 0;
+    }
+    return this;
+  }
+
+  /**
+   * Append a code point.
+   *
+   * @param codePoint the code point
+   * @return this object
+   */
+  public CodePointBuffer append(int codePoint) {
+    ensureCapacity(length + 1);
+    array[offset + length++] = codePoint;
+    return this;
+  }
+
+  /**
+   * Append a slice of code points.
+   *
+   * @param codePoints the code points
+   * @param offset the offset of the first code point
+   * @param length the number of code points
+   * @return this object
+   */
+  public CodePointBuffer append(int[] codePoints, int offset, int length) {
+    ensureCapacity(this.length + length);
+    System.arraycopy(codePoints, offset, array, this.offset + this.length, length);
+    this.length += length;
+    return this;
+  }
+
+  /**
+   * Remove the code points, the backing array is kept.
+   *
+   * @return this object
+   */
+  public CodePointBuffer clear() {
+    checkWritable();
+    offset = 0;
+    length = 0;
+    return this;
+  }
+
+  /**
+   * @return a read-only view sharing the code points of this buffer, the view does not see the later appends
+   */
+  public CodePointBuffer asReadOnly() {
+    return new CodePointBuffer(array, offset, length, true);
+  }
+
+  /**
+   * @return a copy of the code points
+   */
+  public int[] toArray() {
+    return Arrays.copyOfRange(array, offset, offset + length);
+  }
+
+  /**
+   * Pass the code points to a consumer: a {@link CodePointConsumer} receives the slice, any other consumer
+   * receives a copy.
+   *
+   * @param consumer the consumer
+   */
+  public void writeTo(Consumer<int[]> consumer) {
+    CodePointConsumer.forward(consumer, array, offset, length);
+  }
+
+  private void checkWritable() {
+    if (readOnly) {
+      throw new ReadOnlyBufferException();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Helper.fromCodePoints(toArray());
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.io;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Receives a slice of code points. The array is owned by the caller and is reused after the
+ * callback returns, so an implementation that needs to retain the code points must copy them.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+@FunctionalInterface
+public interface CodePointConsumer {
+
+  /**
+   * Consume the code points.
+   *
+   * @param codePoints the code points array, only valid during the call
+   * @param offset the offset of the first code point
+   * @param length the number of code points
+   */
+  void accept(int[] codePoints, int offset, int length);
+
+  /**
+   * Consume the code points of a buffer.
+   *
+   * @param buffer the buffer, only valid during the call
+   */
+  default void accept(CodePointBuffer buffer) {
+    accept(buffer.array, buffer.offset, buffer.length);
+  }
+
+  /**
+   * Adapt a {@code Consumer<int[]>}, a consumer that is already a {@link CodePointConsumer} is returned as is,
+   * otherwise the adapter passes a copy of each slice.
+   *
+   * @param consumer the consumer to adapt
+   * @return the code point consumer
+   */
+  static CodePointConsumer adapt(Consumer<int[]> consumer) {
+    if (consumer instanceof CodePointConsumer) {
+      return (CodePointConsumer) consumer;
+    }
+    return (codePoints, offset, length) -> consumer.accept(Arrays.copyOfRange(codePoints, offset, offset + length));
+  }
+
+  /**
+   * Pass a slice of code points to a consumer: a {@link CodePointConsumer} receives the slice, any other consumer
+   * receives a copy.
+   *
+   * @param consumer the consumer
+   * @param codePoints the code points
+   * @param offset the offset of the first code point
+   * @param length the number of code points
+   */
+  static void forward(Consumer<int[]> consumer, int[] codePoints, int offset, int length) {
+    if (consumer instanceof CodePointConsumer) {
+      ((CodePointConsumer) consumer).accept(codePoints, offset, length);
+    } else {
+      consumer.accept(Arrays.copyOfRange(codePoints, offset, offset + length));
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.io;
+
+/**
+ * What the {@link BinaryDecoder} does with a malformed input sequence.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public enum MalformedInputAction {
+
+  /**
+   * Replace the sequence with the {@code U+FFFD} replacement character.
+   */
+  REPLACE,
+
+  /**
+   * Skip the sequence.
+   */
+  IGNORE,
+
+  /**
+   * Pass each byte of the sequence as an {@code ISO-8859-1} code point.
+   */
+  LATIN1,
+
+  /**
+   * Skip the sequence and report its bytes to the malformed input handler.
+   */
+  REPORT
+
+}
@@ -24,7 +24,6 @@ import io.termd.core.util.Helper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.InputStream;
 import java.util.function.Consumer;
 
 /**
@@ -70,9 +69,7 @@ public class TtyBridge {
   }
 
   public TtyBridge readline() {
-    InputStream inputrc = Keymap.class.getResourceAsStream("inputrc");
-    Keymap keymap = new Keymap(inputrc);
-    Readline readline = new Readline(keymap);
+    Readline readline = new Readline(Keymap.getDefault());
     for (io.termd.core.readline.Function function : Helper.loadServices(Thread.currentThread().getContextClassLoader(), io.termd.core.readline.Function.class)) {
       log.trace("Server is adding function to readline: {}", function);
 
@@ -87,6 +84,20 @@ public class TtyBridge {
     return this;
   }
 
+  /**
+   * Block the current thread until the connection is writable, the connection drain handler wakes it up.
+   */
+  private synchronized void awaitWritable(TtyConnection conn) {
+    while (!conn.isWritable()) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
   void read(final TtyConnection conn, final Readline readline) {
     readline.readline(conn, "% ", line -> {
       if (processStdinListener != null) {
@@ -104,11 +115,19 @@ public class TtyBridge {
             if (processStdoutListener != null) {
               processStdoutListener.accept(buffer);
             }
+            // Stop reading the process output until the client accepts more output
+            awaitWritable(conn);
           },
           v -> {
         conn.setEventHandler(null);
+        conn.setDrainHandler(null);
         conn.execute(() -> read(conn, readline));
       });
+      conn.setDrainHandler(v -> {
+        synchronized (TtyBridge.this) {
+          TtyBridge.this.notifyAll();
+        }
+      });
       conn.setEventHandler((event,cp) -> {
         if (event == TtyEvent.INTR) {
           task.interruptProcess();
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.termd.core.readline;
+
+import io.termd.core.term.Capability;
+import io.termd.core.term.Device;
+import io.termd.core.term.Sequence;
+import io.termd.core.term.TermInfo;
+import io.termd.core.util.Helper;
+import io.termd.core.util.Logging;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+/**
+ * Move the cursor with the cheapest sequence given the capabilities of a terminal device, in the spirit of the
+ * curses {@code mvcur} function. The candidates are the relative moves ({@code cuf1}/{@code cub1} repeated,
+ * {@code cuf}/{@code cub} with a count or the displayed chars issued again), a carriage return followed by a
+ * relative move and the {@code hpa} column address.<p/>
+ *
+ * The positions are relative to the beginning of the edited line whose absolute row is unknown, so the
+ * {@code cup} address cannot be used. The xterm sequences are used when the terminfo database is not available.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class CursorMotion {
+
+  private static final int INFINITE = Integer.MAX_VALUE / 2;
+  private static final int CACHE_SIZE = 256;
+  private static final Pattern PADDING = Pattern.compile("\\$<[0-9]*(\\.[0-9]+)?[*/]*>");
+  private static final ConcurrentMap<String, CursorMotion> motions = new ConcurrentHashMap<>();
+
+  /**
+   * The xterm motion.
+   */
+  public static final CursorMotion DEFAULT = new CursorMotion(device("xterm"));
+
+  private static Device device(String name) {
+    TermInfo info = TermInfo.defaultInfo();
+    return info != null ? info.getDevice(name) : null;
+  }
+
+  /**
+   * Returns the motion for a terminal type.
+   *
+   * @param terminalType the terminal type
+   * @return the motion or {@link #DEFAULT} when the terminal type is null or unknown
+   */
+  public static CursorMotion forTerminal(String terminalType) {
+    if (terminalType == null) {
+      return DEFAULT;
+    }
+    CursorMotion motion = motions.computeIfAbsent(terminalType.toLowerCase(Locale.ROOT), name -> {
+      Device device = device(name);
+      return device != null ? new CursorMotion(device) : null;
+    });
+    return motion != null ? motion : DEFAULT;
+  }
+
+  private final int[] cr;
+  private final int[] cub1;
+  private final int[] cuf1;
+  private final int[] cuu1;
+  private final int[] cud1;
+  private final int[] el;
+  private final Parameterized cub;
+  private final Parameterized cuf;
+  private final Parameterized cuu;
+  private final Parameterized cud;
+  private final Parameterized hpa;
+  private final Parameterized ich;
+  private final Parameterized dch;
+
+  /**
+   * Create the motion of a device.
+   *
+   * @param device the device, null uses the xterm sequences
+   */
+  public CursorMotion(Device device) {
+    cr = sequence(device, Capability.carriage_return, "\r");
+    cub1 = sequence(device, Capability.cursor_left, "\b");
+    cuf1 = sequence(device, Capability.cursor_right, "\033[C");
+    cuu1 = sequence(device, Capability.cursor_up, "\033[A");
+    el = sequence(device, Capability.clr_eol, "\033[K");
+    int[] down = sequence(device, Capability.cursor_down, "\n");
+    // A line feed cannot be used, it scrolls at the bottom and the output translates it to \r\n
+    cud1 = contains(down, '\n') ? null : down;
+    cub = parameterized(device, Capability.parm_left_cursor, n -> csi(n, 'D'));
+    cuf = parameterized(device, Capability.parm_right_cursor, n -> csi(n, 'C'));
+    cuu = parameterized(device, Capability.parm_up_cursor, n -> csi(n, 'A'));
+    cud = parameterized(device, Capability.parm_down_cursor, n -> csi(n, 'B'));
+    hpa = parameterized(device, Capability.column_address, n -> csi(n + 1, 'G'));
+    ich = parameterized(device, Capability.parm_ich, n -> csi(n, '@'));
+    dch = parameterized(device, Capability.parm_dch, n -> csi(n, 'P'));
+  }
+
+  /**
+   * Move the cursor between two positions, when the chars displayed on the destination row are known, moving
+   * right can issue them again.
+   *
+   * @param fromCol the current column
+   * @param fromRow the current row
+   * @param toCol the destination column
+   * @param toRow the destination row
+   * @param text the chars of the destination row by column or null
+   * @param length the number of columns of the destination row known by {@code text}
+   * @param out the output
+   */
+  public void move(int fromCol, int fromRow, int toCol, int toRow, IntUnaryOperator text, int length, Consumer<int[]> out) {
+    if (toRow < fromRow) {
+      vertical(cuu1, cuu, 'A', fromRow - toRow, out);
+    } else if (toRow > fromRow) {
+      vertical(cud1, cud, 'B', toRow - fromRow, out);
+    }
+    if (toCol != fromCol) {
+      if (text == null) {
+        length = 0;
+      }
+      int relative = toCol > fromCol ? rightCost(fromCol, toCol, length) : leftCost(fromCol - toCol);
+      int home = cr.length + rightCost(0, toCol, length);
+      int absolute = hpa != null ? hpa.get(toCol).length : INFINITE;
+      if (home <= relative && home <= absolute) {
+        out.accept(cr);
+        right(0, toCol, text, length, out);
+      } else if (relative <= absolute) {
+        if (toCol > fromCol) {
+          right(fromCol, toCol, text, length, out);
+        } else {
+          left(fromCol - toCol, out);
+        }
+      } else {
+        out.accept(hpa.get(toCol));
+      }
+    }
+  }
+
+  /**
+   * Move the cursor between two positions.
+   *
+   * @param fromCol the current column
+   * @param fromRow the current row
+   * @param toCol the destination column
+   * @param toRow the destination row
+   * @param out the output
+   */
+  public void move(int fromCol, int fromRow, int toCol, int toRow, Consumer<int[]> out) {
+    move(fromCol, fromRow, toCol, toRow, null, 0, out);
+  }
+
+  /**
+   * Clear from the cursor to the end of the line.
+   *
+   * @param out the output
+   */
+  public void clearToEndOfLine(Consumer<int[]> out) {
+    out.accept(el);
+  }
+
+  /**
+   * @return true when the terminal can insert and delete chars
+   */
+  public boolean canEditChars() {
+    return ich != null && dch != null;
+  }
+
+  /**
+   * Insert blank chars at the cursor, the chars on the right are shifted.
+   *
+   * @param n the number of chars
+   * @param out the output
+   */
+  public void insertChars(int n, Consumer<int[]> out) {
+    out.accept(ich.get(n));
+  }
+
+  /**
+   * Delete chars at the cursor, the chars on the right are shifted.
+   *
+   * @param n the number of chars
+   * @param out the output
+   */
+  public void deleteChars(int n, Consumer<int[]> out) {
+    out.accept(dch.get(n));
+  }
+
+  private void vertical(int[] single, Parameterized parameterized, char c, int n, Consumer<int[]> out) {
+    int repeated = single != null ? single.length * n : INFINITE;
+    int[] sequence = parameterized != null ? parameterized.get(n) : null;
+    if (sequence != null && sequence.length < repeated) {
+      out.accept(sequence);
+    } else if (single != null) {
+      out.accept(repeat(single, n));
+    } else {
+      out.accept(csi(n, c));
+    }
+  }
+
+  private int rightCost(int from, int to, int length) {
+    int n = to - from;
+    if (n == 0) {
+      return 0;
+    }
+    int cost = Math.min(cuf1.length * n, cuf != null ? cuf.get(n).length : INFINITE);
+    return to <= length ? Math.min(cost, n) : cost;
+  }
+
+  private void right(int from, int to, IntUnaryOperator text, int length, Consumer<int[]> out) {
+    int n = to - from;
+    if (n == 0) {
+      return;
+    }
+    if (to <= length && n <= Math.min(cuf1.length * n, cuf != null ? cuf.get(n).length : INFINITE)) {
+      int[] chars = new int[n];
+      for (int i = 0;i < n;i++) {
+        chars[i] = text.applyAsInt(from + i);
+      }
+      out.accept(chars);
+    } else if (cuf != null && cuf.get(n).length < cuf1.length * n) {
+      out.accept(cuf.get(n));
+    } else {
+      out.accept(repeat(cuf1, n));
+    }
+  }
+
+  private int leftCost(int n) {
+    return Math.min(cub1.length * n, cub != null ? cub.get(n).length : INFINITE);
+  }
+
+  private void left(int n, Consumer<int[]> out) {
+    if (cub != null && cub.get(n).length < cub1.length * n) {
+      out.accept(cub.get(n));
+    } else {
+      out.accept(repeat(cub1, n));
+    }
+  }
+
+  private static int[] repeat(int[] sequence, int n) {
+    int[] repeated = new int[sequence.length * n];
+    for (int i = 0;i < n;i++) {
+      System.arraycopy(sequence, 0, repeated, i * sequence.length, sequence.length);
+    }
+    return repeated;
+  }
+
+  private static boolean contains(int[] codePoints, int codePoint) {
+    for (int cp : codePoints) {
+      if (cp == codePoint) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int[] csi(int n, char c) {
+    return Helper.toCodePoints("\033[" + n + c);
+  }
+
+  /**
+   * Evaluate a sequence without its padding, the padding is a delay for the terminal and not output.
+   */
+  private static int[] eval(Sequence sequence, String... parameters) {
+    return Helper.toCodePoints(PADDING.matcher(sequence.eval(parameters)).replaceAll(""));
+  }
+
+  private static int[] sequence(Device device, Capability<Sequence> capability, String def) {
+    Sequence sequence = device != null ? device.getFeature(capability) : null;
+    if (sequence != null) {
+      try {
+        return eval(sequence);
+      } catch (RuntimeException e) {
+        Logging.READLINE.log(Level.WARNING, "Could not evaluate " + capability.name + " of " + device, e);
+      }
+    }
+    return Helper.toCodePoints(def);
+  }
+
+  private static Parameterized parameterized(Device device, Capability<Sequence> capability, IntFunction<int[]> def) {
+    if (device == null) {
+      return new Parameterized(def);
+    }
+    Sequence sequence = device.getFeature(capability);
+    if (sequence == null) {
+      return null;
+    }
+    try {
+      sequence.eval("0");
+    } catch (RuntimeException e) {
+      Logging.READLINE.log(Level.WARNING, "Could not evaluate " + capability.name + " of " + device, e);
+      return new Parameterized(def);
+    }
+    return new Parameterized(n -> {
+      try {
+        return eval(sequence, Integer.toString(n));
+      } catch (RuntimeException e) {
+        return def.apply(n);
+      }
+    });
+  }
+
+  /**
+   * A parameterized sequence, the small counts are evaluated once.
+   */
+  private static class Parameterized {
+
+    private final IntFunction<int[]> eval;
+    private final AtomicReferenceArray<int[]> cache = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    Parameterized(IntFunction<int[]> eval) {
+      this.eval = eval;
+    }
+
+    int[] get(int n) {
+      if (n >= CACHE_SIZE) {
+        return eval.apply(n);
+      }
+      int[] sequence = cache.get(n);
+      if (sequence == null) {
+        sequence = eval.apply(n);
+        cache.set(n, sequence);
+      }
+      return sequence;
+    }
+  }
+}
@@ -14,29 +14,66 @@
  * limitations under the License.
  */
 
+
 package io.termd.core.readline;
 
 import java.nio.IntBuffer;
-import java.util.Arrays;
+import java.util.ArrayDeque;
 import java.util.Iterator;
-import java.util.LinkedList;
 
 /**
+ * Decodes the key events from the code points typed by the user.<p/>
+ *
+ * The pending code points are kept in a ring buffer and matched against the {@link KeyTrie} of the keymap: the
+ * trie is walked incrementally as code points are appended, so a keystroke costs at most the length of the longest
+ * key sequence and does not allocate. The longest key sequence bound to a prefix of the pending code points is
+ * decoded, when the pending code points are only the prefix of a key sequence the queue waits for more code points.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public class EventQueue implements Iterator<KeyEvent> {
 
-  private KeyEvent[] bindings;
-  private final LinkedList<KeyEvent> events = new LinkedList<>();
-  private int[] pending = new int[0];
+  private static final KeyEvent[] ASCII = new KeyEvent[128];
+
+  static {
+    for (int i = 0;i < ASCII.length;i++) {
+      ASCII[i] = new Key(i);
+    }
+  }
+
+  private final KeyTrie trie;
+  private final ArrayDeque<KeyEvent> events = new ArrayDeque<>();
+  private int[] ring = new int[16];
+  private int head;
+  private int size;
+
+  // The state of the walk of the pending code points in the trie
+  private KeyTrie.Node node;
+  private int depth;
+  private KeyEvent candidate;
+  private boolean done;
 
   public EventQueue(Keymap keymap) {
-    this.bindings = keymap.bindings.toArray(new KeyEvent[keymap.bindings.size()]);
+    this.trie = keymap.trie();
+    this.node = trie.root;
   }
 
   public EventQueue append(int... codePoints) {
-    pending = Arrays.copyOf(pending, pending.length + codePoints.length);
-    System.arraycopy(codePoints, 0 , pending, pending.length - codePoints.length, codePoints.length);
+    int len = codePoints.length;
+    if (size + len > ring.length) {
+      int capacity = ring.length;
+      while (capacity < size + len) {
+        capacity *= 2;
+      }
+      ring = copy(new int[capacity]);
+      head = 0;
+    }
+    int mask = ring.length - 1;
+    int tail = (head + size) & mask;
+    int first = Math.min(len, ring.length - tail);
+    System.arraycopy(codePoints, 0, ring, tail, first);
+    System.arraycopy(codePoints, first, ring, 0, len - first);
+    size += len;
     return this;
   }
 
@@ -47,7 +84,7 @@ public class EventQueue implements Iterator<KeyEvent> {
 
   public KeyEvent peek() {
     if (events.isEmpty()) {
-      return match(pending);
+      return match();
     } else {
       return events.peekFirst();
     }
@@ -59,10 +96,10 @@ public class EventQueue implements Iterator<KeyEvent> {
 
   public KeyEvent next() {
     if (events.isEmpty()) {
-      KeyEvent next = match(pending);
+      KeyEvent next = match();
       if (next != null) {
-        events.add(next);
-        pending = Arrays.copyOfRange(pending, next.length(), pending.length);
+        consume(next.length());
+        return next;
       }
     }
     return events.removeFirst();
@@ -70,8 +107,10 @@ public class EventQueue implements Iterator<KeyEvent> {
 
   public int[] clear() {
     events.clear();
-    int[] buffer = pending;
-    pending = new int[0];
+    int[] buffer = copy(new int[size]);
+    head = 0;
+    size = 0;
+    reset();
     return buffer;
   }
 
@@ -79,61 +118,83 @@ public class EventQueue implements Iterator<KeyEvent> {
    * @return the buffer chars as a read-only int buffer
    */
   public IntBuffer getBuffer() {
-    return IntBuffer.wrap(pending).asReadOnlyBuffer();
+    return IntBuffer.wrap(copy(new int[size])).asReadOnlyBuffer();
+  }
+
+  private int[] copy(int[] dst) {
+    int first = Math.min(size, ring.length - head);
+    System.arraycopy(ring, head, dst, 0, first);
+    System.arraycopy(ring, 0, dst, first, size - first);
+    return dst;
+  }
+
+  private void consume(int length) {
+    head = (head + length) & (ring.length - 1);
+    size -= length;
+    reset();
+  }
+
+  private void reset() {
+    node = trie.root;
+    depth = 0;
+    candidate = null;
+    done = false;
   }
 
-  private KeyEvent match(int[] buffer) {
-    if (buffer.length > 0) {
-      KeyEvent candidate = null;
-      int prefixes = 0;
-      next:
-      for (KeyEvent action : bindings) {
-        if (action.length() > 0) {
-          if (action.length() <= buffer.length) {
-            for (int i = 0;i < action.length();i++) {
-              if (action.getCodePointAt(i) != buffer[i]) {
-                continue next;
-              }
-            }
-            if (candidate != null && candidate.length() > action.length()) {
-              continue next;
-            }
-            candidate = action;
-          } else {
-            for (int i = 0;i < buffer.length;i++) {
-              if (action.getCodePointAt(i) != buffer[i]) {
-                continue next;
-              }
-            }
-            prefixes++;
-          }
+  private KeyEvent match() {
+    if (size == 0) {
+      return null;
+    }
+    // Resume the walk with the code points appended since the last match
+    int mask = ring.length - 1;
+    while (!done && depth < size) {
+      KeyTrie.Node child = node.child(ring[(head + depth) & mask]);
+      if (child == null) {
+        done = true;
+      } else {
+        node = child;
+        depth++;
+        if (child.binding() != null) {
+          candidate = child.binding();
         }
+        done = child.isLeaf();
       }
-      if (candidate == null) {
-        if (prefixes == 0) {
-          final int c = buffer[0];
-          return new KeyEvent() {
-            @Override
-            public int getCodePointAt(int index) throws IndexOutOfBoundsException {
-              if (index != 0) {
-                throw new IndexOutOfBoundsException("Wrong index " + index);
-              }
-              return c;
-            }
-            @Override
-            public int length() {
-              return 1;
-            }
-            @Override
-            public String toString() {
-              return "key:" + c;
-            }
-          };
-        }
-      } else {
-        return candidate;
+    }
+    if (candidate != null) {
+      return candidate;
+    }
+    // Either no key sequence starts with the pending code points or we wait for the rest of a key sequence
+    return done ? key(ring[head]) : null;
+  }
+
+  private static KeyEvent key(int c) {
+    return c >= 0 && c < ASCII.length ? ASCII[c] : new Key(c);
+  }
+
+  private static class Key implements KeyEvent {
+
+    private final int c;
+
+    Key(int c) {
+      this.c = c;
+    }
+
+    @Override
+    public int getCodePointAt(int index) throws IndexOutOfBoundsException {
+      if (index != 0) {
+        throw new IndexOutOfBoundsException("Wrong index " + index);
       }
+      return c;
+    }
+
+    @Override
+    public int length() {
+      return 1;
+    }
+
+    @Override
+    public String toString() {
+      return "key:" + c;
     }
-    return null;
   }
 }
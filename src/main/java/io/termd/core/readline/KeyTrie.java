@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.termd.core.readline;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The key sequences of a keymap compiled in a prefix trie, a trie is immutable once compiled and can be shared by
+ * the event queues of all the sessions using the keymap. When several bindings have the same key sequence, the last
+ * one wins.<p/>
+ *
+ * Bindings are layered over a trie with {@link #with(List)}, the new trie copies the nodes on the path of the new
+ * key sequences and shares all the other nodes with the original trie.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+final class KeyTrie {
+
+  private static final int[] NO_KEYS = new int[0];
+  private static final Node[] NO_CHILDREN = new Node[0];
+
+  static final KeyTrie EMPTY = new KeyTrie(new Node());
+
+  static KeyTrie compile(List<KeyEvent> bindings) {
+    return EMPTY.with(bindings);
+  }
+
+  final Node root;
+
+  private KeyTrie(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Create a trie with the bindings of this trie and the {@code bindings}, this trie is not modified.
+   *
+   * @param bindings the bindings to add
+   * @return the new trie
+   */
+  KeyTrie with(List<KeyEvent> bindings) {
+    if (bindings.isEmpty()) {
+      return this;
+    }
+    // The nodes copied or created for the new trie, they can be modified
+    Set<Node> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+    Node root = this.root.copy();
+    owned.add(root);
+    for (KeyEvent binding : bindings) {
+      int length = binding.length();
+      if (length > 0) {
+        Node node = root;
+        for (int i = 0;i < length;i++) {
+          node = node.getOrCreate(binding.getCodePointAt(i), owned);
+        }
+        node.binding = binding;
+      }
+    }
+    return new KeyTrie(root);
+  }
+
+  static final class Node {
+
+    private int[] keys = NO_KEYS;
+    private Node[] children = NO_CHILDREN;
+    private KeyEvent binding;
+
+    /**
+     * @return the binding of the key sequence ending at this node or {@code null}
+     */
+    KeyEvent binding() {
+      return binding;
+    }
+
+    /**
+     * @return true when no key sequence extends the sequence ending at this node
+     */
+    boolean isLeaf() {
+      return keys.length == 0;
+    }
+
+    /**
+     * @param codePoint the next code point
+     * @return the child node or {@code null} when no key sequence continues with the code point
+     */
+    Node child(int codePoint) {
+      int index = Arrays.binarySearch(keys, codePoint);
+      return index >= 0 ? children[index] : null;
+    }
+
+    private Node copy() {
+      Node copy = new Node();
+      copy.keys = keys;
+      copy.children = children.clone();
+      copy.binding = binding;
+      return copy;
+    }
+
+    /**
+     * Return the child of an owned node for a code point, the child is copied when it is shared with another trie.
+     */
+    private Node getOrCreate(int codePoint, Set<Node> owned) {
+      int index = Arrays.binarySearch(keys, codePoint);
+      if (index >= 0) {
+        Node child = children[index];
+        if (!owned.contains(child)) {
+          child = child.copy();
+          owned.add(child);
+          children[index] = child;
+        }
+        return child;
+      }
+      index = -index - 1;
+      int len = keys.length;
+      int[] nextKeys = new int[len + 1];
+      Node[] nextChildren = new Node[len + 1];
+      System.arraycopy(keys, 0, nextKeys, 0, index);
+      System.arraycopy(children, 0, nextChildren, 0, index);
+      System.arraycopy(keys, index, nextKeys, index + 1, len - index);
+      System.arraycopy(children, index, nextChildren, index + 1, len - index);
+      Node child = new Node();
+      owned.add(child);
+      nextKeys[index] = codePoint;
+      nextChildren[index] = child;
+      keys = nextKeys;
+      children = nextChildren;
+      return child;
+    }
+  }
+}
@@ -14,33 +14,67 @@
  * limitations under the License.
  */
 
+
 package io.termd.core.readline;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * A keymap, binds key events to key sequence.
+ * A keymap, binds key events to key sequence.<p/>
+ *
+ * The bindings are compiled in a {@link KeyTrie} shared by the {@link EventQueue} using the keymap. An immutable
+ * keymap is thread safe and can be shared by all the sessions, a session customizes it with {@link #derive()}: the
+ * derived keymap layers its own bindings over the compiled bindings of the immutable keymap without copying them.
+ * The default keymap is parsed once, {@link #getDefault()} derives it.
  *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public class Keymap {
 
+  private static class DefaultHolder {
+
+    static final Keymap DEFAULT = load();
+
+    private static Keymap load() {
+      try (InputStream inputrc = Keymap.class.getResourceAsStream("inputrc")) {
+        return new Keymap(inputrc).toImmutable();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * @return the immutable default keymap configured from the bundled <i>inputrc</i>
+   */
+  public static Keymap getDefaultImmutable() {
+    return DefaultHolder.DEFAULT;
+  }
+
+  /**
+   * @return a keymap derived from the default keymap, configured from the bundled <i>inputrc</i>
+   */
   public static Keymap getDefault() {
-    InputStream inputrc = Keymap.class.getResourceAsStream("inputrc");
-    return new Keymap(inputrc);
+    return DefaultHolder.DEFAULT.derive();
   }
 
+  private final KeyTrie base;
   final List<KeyEvent> bindings;
+  private final boolean immutable;
+  private volatile KeyTrie trie;
 
   public Keymap() {
     this(Arrays.asList(Keys.values()));
   }
 
   public Keymap(List<KeyEvent> keys) {
-    this.bindings = new ArrayList<>(keys);
+    this(null, new ArrayList<>(keys), false);
   }
 
   /**
@@ -57,7 +91,43 @@ public class Keymap {
       }
     };
     InputrcParser.parse(inputrc, handler);
+    this.base = null;
     this.bindings = actions;
+    this.immutable = false;
+  }
+
+  private Keymap(KeyTrie base, List<KeyEvent> bindings, boolean immutable) {
+    this.base = base;
+    this.bindings = bindings;
+    this.immutable = immutable;
+    this.trie = immutable ? base : null;
+  }
+
+  /**
+   * @return true when the keymap cannot be modified
+   */
+  public boolean isImmutable() {
+    return immutable;
+  }
+
+  /**
+   * @return an immutable keymap with the current bindings of this keymap, this keymap when it is already immutable
+   */
+  public Keymap toImmutable() {
+    if (immutable) {
+      return this;
+    }
+    return new Keymap(trie(), Collections.emptyList(), true);
+  }
+
+  /**
+   * Create a keymap with the current bindings of this keymap, the bindings of the derived keymap are layered over
+   * the bindings of this keymap, which are shared and not copied.
+   *
+   * @return the derived keymap
+   */
+  public Keymap derive() {
+    return new Keymap(toImmutable().base, new ArrayList<>(), false);
   }
 
   /**
@@ -77,9 +147,33 @@ public class Keymap {
    * @param keyseq the key sequence
    * @param function the function to bind
    * @return this keymap
+   * @throws UnsupportedOperationException when the keymap is immutable
    */
   public Keymap bindFunction(int[] keyseq, String function) {
-    bindings.add(new FunctionEvent(function, keyseq));
+    if (immutable) {
+      throw new UnsupportedOperationException("Immutable keymap, use derive() to customize it");
+    }
+    synchronized (this) {
+      bindings.add(new FunctionEvent(function, keyseq));
+      trie = null;
+    }
     return this;
   }
+
+  /**
+   * @return the bindings compiled in a trie, the trie is compiled once and shared until the keymap is modified
+   */
+  KeyTrie trie() {
+    KeyTrie current = trie;
+    if (current == null) {
+      synchronized (this) {
+        current = trie;
+        if (current == null) {
+          current = base != null ? base.with(bindings) : KeyTrie.compile(bindings);
+          trie = current;
+        }
+      }
+    }
+    return current;
+  }
 }
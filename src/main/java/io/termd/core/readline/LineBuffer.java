@@ -24,33 +24,105 @@ import java.util.Arrays;
 import java.util.function.Consumer;
 
 /**
+ * A line of code points and a cursor, stored in a gap buffer: the free space of the array is a gap kept at the
+ * last edit position, so inserting or deleting at the cursor costs amortized {@code O(1)} and the array grows
+ * as needed.<p/>
+ *
+ * A {@link #copy()} shares the array with this buffer until one of them is modified, so taking a snapshot of
+ * the line before editing it does not copy the code points.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public class LineBuffer {
 
+  private static final int INITIAL_CAPACITY = 16;
+
   private int[] data;
+  private int gapStart;
+  private int gapEnd;
   private int cursor;
-  private int size;
+  private int newlines; // The number of \n in the buffer
+  private boolean shared;
 
   public LineBuffer() {
-    data = new int[1000];
+    data = new int[INITIAL_CAPACITY];
+    gapEnd = data.length;
   }
 
   private LineBuffer(LineBuffer that) {
-    data = that.data.clone();
+    set(that);
+  }
+
+  /**
+   * Set the content of this buffer to the content of {@code that} buffer, the array is shared until one of the
+   * buffers is modified.
+   */
+  void set(LineBuffer that) {
+    that.shared = true;
+    data = that.data;
+    gapStart = that.gapStart;
+    gapEnd = that.gapEnd;
     cursor = that.cursor;
-    size = that.size;
+    newlines = that.newlines;
+    shared = true;
   }
 
   public int[] toArray() {
-    return Arrays.copyOf(data, size);
+    int[] array = new int[getSize()];
+    System.arraycopy(data, 0, array, 0, gapStart);
+    System.arraycopy(data, gapEnd, array, gapStart, data.length - gapEnd);
+    return array;
   }
 
   public int getAt(int index) {
-    if (index < 0 | index >= size) {
+    if (index < 0 | index >= getSize()) {
       throw new IndexOutOfBoundsException();
     }
-    return data[index];
+    return at(index);
+  }
+
+  private int at(int index) {
+    return data[index < gapStart ? index : index + gapEnd - gapStart];
+  }
+
+  /**
+   * Move the gap to the {@code index} position with room for at least {@code room} code points, the array is
+   * copied first when it is shared with another buffer.
+   */
+  private void prepare(int index, int room) {
+    int gap = gapEnd - gapStart;
+    if (shared || gap < room) {
+      int size = data.length - gap;
+      int capacity = data.length;
+      while (capacity - size < room) {
+        capacity *= 2;
+      }
+      int[] next = new int[capacity];
+      int tail = size - index;
+      if (index <= gapStart) {
+        System.arraycopy(data, 0, next, 0, index);
+        System.arraycopy(data, index, next, capacity - tail, gapStart - index);
+        System.arraycopy(data, gapEnd, next, capacity - (data.length - gapEnd), data.length - gapEnd);
+      } else {
+        System.arraycopy(data, 0, next, 0, gapStart);
+        System.arraycopy(data, gapEnd, next, gapStart, index - gapStart);
+        System.arraycopy(data, gapEnd + index - gapStart, next, capacity - tail, tail);
+      }
+      data = next;
+      gapStart = index;
+      gapEnd = capacity - tail;
+      shared = false;
+    } else if (index < gapStart) {
+      int len = gapStart - index;
+      System.arraycopy(data, index, data, gapEnd - len, len);
+      gapStart = index;
+      gapEnd -= len;
+    } else if (index > gapStart) {
+      int len = index - gapStart;
+      System.arraycopy(data, gapEnd, data, gapStart, len);
+      gapStart = index;
+      gapEnd += len;
+    }
   }
 
   /**
@@ -85,14 +157,13 @@ public class LineBuffer {
       if (cp != '\n') {
         throw new IllegalArgumentException("LineBuffer can only contain \n control char");
       }
+      newlines++;
     } else if (w != 1) {
       throw new IllegalArgumentException("LineBuffer cannot contain chars of width!=1 for the moment");
     }
-    if (cursor < size) {
-      System.arraycopy(data, cursor, data, cursor + 1, size - cursor);
-    }
-    data[cursor++] = cp;
-    size++;
+    prepare(cursor, 1);
+    data[gapStart++] = cp;
+    cursor++;
     return this;
   }
 
@@ -175,27 +246,60 @@ public class LineBuffer {
    */
   public int delete(int delta) {
     if (delta > 0) {
-      delta = Math.min(delta, size - cursor);
-      System.arraycopy(data, cursor + delta, data, cursor, size - cursor + delta);
-      size -= delta;
+      delta = Math.min(delta, getSize() - cursor);
+      if (delta > 0) {
+        prepare(cursor, 0);
+        removed(gapEnd, gapEnd + delta);
+        gapEnd += delta;
+      }
       return delta;
     } else if (delta < 0) {
-      delta = - Math.min(- delta, cursor);
-      System.arraycopy(data, cursor, data, cursor + delta, size - cursor);
-      size += delta;
-      cursor += delta;
-      return - delta;
+      delta = Math.min(-delta, cursor);
+      if (delta > 0) {
+        prepare(cursor, 0);
+        removed(gapStart - delta, gapStart);
+        gapStart -= delta;
+        cursor -= delta;
+      }
+      return delta;
     } else {
       return 0;
     }
   }
 
+  private void removed(int from, int to) {
+    if (newlines > 0) {
+      for (int i = from;i < to;i++) {
+        if (data[i] == '\n') {
+          newlines--;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return true when the buffer contains at least one {@literal \n} char
+   */
+  boolean isMultiline() {
+    return newlines > 0;
+  }
+
   public int getSize() {
-    return size;
+    return data.length - (gapEnd - gapStart);
   }
 
+  /**
+   * Truncate the buffer, the size cannot be increased.
+   *
+   * @param size the new size
+   */
   public void setSize(int size) {
-    this.size = size >= 0 ? size : 0;
+    size = Math.max(0, Math.min(size, getSize()));
+    if (size < getSize()) {
+      prepare(size, 0);
+      removed(gapEnd, data.length);
+      gapEnd = data.length;
+    }
     if (cursor > size) {
       cursor = size;
     }
@@ -206,6 +310,7 @@ public class LineBuffer {
   }
 
   public LineBuffer setCursor(int next) {
+    int size = getSize();
     this.cursor = next < 0 ? 0 : (next > size ? size : next);
     return this;
   }
@@ -215,8 +320,14 @@ public class LineBuffer {
   }
 
   public void clear() {
-    size = 0;
+    if (shared) {
+      data = new int[INITIAL_CAPACITY];
+      shared = false;
+    }
+    gapStart = 0;
+    gapEnd = data.length;
     cursor = 0;
+    newlines = 0;
   }
 
   public int moveCursor(int delta) {
@@ -227,8 +338,9 @@ public class LineBuffer {
 
   public String toString() {
     StringBuilder sb = new StringBuilder();
+    int size = getSize();
     for (int i = 0; i < size; i++) {
-      sb.appendCodePoint(data[i]);
+      sb.appendCodePoint(at(i));
     }
     return sb.toString();
   }
@@ -252,15 +364,20 @@ public class LineBuffer {
    * @return the height
    */
   public Vector getPosition(int offset, int width) {
-    if (offset > size) {
+    if (offset > getSize()) {
       throw new IndexOutOfBoundsException("Offset cannot bebe greater than the buffer size");
     }
-    return Helper.computePosition(data, new Vector(0, 0), offset, width);
+    if (offset <= gapStart) {
+      return Helper.computePosition(data, new Vector(0, 0), offset, width);
+    }
+    Vector pos = Helper.computePosition(data, new Vector(0, 0), gapStart, width);
+    return Helper.computePosition(data, pos, gapEnd, gapEnd + offset - gapStart, width);
   }
 
   private int findEndOfLine(int offset) {
+    int size = getSize();
     while (offset < size) {
-      int c = data[offset];
+      int c = at(offset);
       int w = Wcwidth.of(c);
       if (w == -1) {
         if (c == '\n') {
@@ -275,52 +392,66 @@ public class LineBuffer {
   }
 
   public void update(LineBuffer dst, Consumer<int[]> out, int width) {
-    new Update(out, width).perform(dst);
+    update(dst, out, width, CursorMotion.DEFAULT);
+  }
+
+  /**
+   * Update the screen displaying this buffer to display the {@code dst} buffer.
+   *
+   * @param dst the buffer to display
+   * @param out the screen output
+   * @param width the screen width
+   * @param motion the motion of the terminal
+   */
+  public void update(LineBuffer dst, Consumer<int[]> out, int width, CursorMotion motion) {
+    new Update(out, width, motion).perform(dst);
   }
 
   // The update algorithm encapsulated in an inner class
-  // todo : use term capabilities instead of hardcoded ansi programming
   // todo : support other control chars
   // todo : support codepoint of with != 1 (like combining chars, etc...)
-  // todo : issue existing chars for moving right instead of cursor left movement
   private class Update {
 
     private final Consumer<int[]> out;
     private final int width;
+    private final CursorMotion motion;
+    private final int size; // The source size
     private int scrCol, scrRow; // The current screen cursor position
     private int srcIdx, srcCol, srcRow; // The source state
     private int dstIdx, dstCol, dstRow; // The destination state
 
-    public Update(Consumer<int[]> out, int width) {
+    public Update(Consumer<int[]> out, int width, CursorMotion motion) {
       this.out = out;
       this.width = width;
+      this.motion = motion;
+      this.size = getSize();
       this.scrCol = getCursorPosition(width).x();
       this.scrRow = getCursorPosition(width).y();
     }
 
     public void perform(LineBuffer dst) {
 
-      while (dstIdx < dst.size) {
+      while (dstIdx < dst.getSize()) {
 
         int eol = dst.findEndOfLine(dstIdx);
         boolean needGlitchCorrection = dstIdx < eol;
 
         // Handle one dest line at a time
         while (dstIdx < eol) {
-          int c = dst.data[dstIdx];
+          int c = dst.at(dstIdx);
           int w = Wcwidth.of(c);
           if (w != 1) {
             throw new UnsupportedOperationException();
           }
           if (srcIdx < size && new Vector(srcCol, srcRow).equals(new Vector(dstCol, dstRow))) {
-            if (data[srcIdx] == dst.data[dstIdx]) {
+            if (at(srcIdx) == dst.at(dstIdx)) {
               dstCol += w;
               if (dstCol == width) {
                 dstCol = 0;
                 dstRow++;
               }
             } else {
-              moveCursor(dstCol, dstRow);
+              moveCursor(dst, dstIdx, dstCol, dstRow);
               out.accept(new int[]{c});
               dstCol += w;
               if (dstCol == width) {
@@ -332,7 +463,7 @@ public class LineBuffer {
             }
             dstIdx++;
           } else {
-            moveCursor(dstCol, dstRow);
+            moveCursor(dst, dstIdx, dstCol, dstRow);
             dstIdx++;
             out.accept(new int[]{c});
             dstCol += w;
@@ -352,14 +483,14 @@ public class LineBuffer {
         }
 
         // Remove extra chars if needed
-        if (dstIdx < dst.size) {
+        if (dstIdx < dst.getSize()) {
           dstIdx++;
           dstCol = 0;
           ++dstRow;
           int _col = srcCol, _row = srcRow;
           if (ensure(dstCol, dstRow)) {
             moveCursor(_col, _row);
-            out.accept(new int[]{'\033','[', 'K'});
+            motion.clearToEndOfLine(out);
           }
         }
 
@@ -377,11 +508,11 @@ public class LineBuffer {
         int _row = srcRow;
         int count = 0;
         while (srcIdx < size) {
-          int c = data[srcIdx++];
+          int c = at(srcIdx++);
           if (c == '\n') {
             if (count > 0) {
               moveCursor(_col, _row);
-              out.accept(new int[]{'\033', '[', 'K'});
+              motion.clearToEndOfLine(out);
               count = 0;
             }
             _col = srcCol = 0;
@@ -396,7 +527,7 @@ public class LineBuffer {
             if (srcCol == width) {
               if (count > 0) {
                 moveCursor(_col, _row);
-                out.accept(new int[]{'\033', '[', 'K'});
+                motion.clearToEndOfLine(out);
                 count = 0;
                 _col = srcCol = 0;
                 _row = ++srcRow;
@@ -409,17 +540,16 @@ public class LineBuffer {
         }
         if (count > 0) {
           moveCursor(_col, _row);
-          out.accept(new int[]{'\033', '[', 'K'});
+          motion.clearToEndOfLine(out);
         }
       }
 
       // Move cursor to initial position
-      moveCursor(dst.getCursorPosition(width).x(), dst.getCursorPosition(width).y());
+      Vector pos = dst.getCursorPosition(width);
+      moveCursor(dst, dst.cursor, pos.x(), pos.y());
 
       // Update internal state
-      data = dst.data.clone();
-      cursor = dst.cursor;
-      size = dst.size;
+      set(dst);
     }
 
     /**
@@ -435,7 +565,7 @@ public class LineBuffer {
         if (srcRow > row || (srcRow == row && srcCol >= col)) {
           break;
         }
-        int c = data[srcIdx];
+        int c = at(srcIdx);
         int w = Wcwidth.of(c);
         if (w == 1) {
           ret = true;
@@ -462,31 +592,25 @@ public class LineBuffer {
      * @param row the row
      */
     private void moveCursor(int col, int row) {
-      if (scrCol != col) {
-        if (col == 0) {
-          out.accept(new int[]{'\r'});
-          scrCol = 0;
-        } else {
-          while (scrCol != col) {
-            if (scrCol < col) {
-              scrCol++;
-              out.accept(new int[]{'\033','[','1','C'});
-            } else {
-              scrCol--;
-              out.accept(new int[]{'\b'});
-            }
-          }
-        }
-      }
-      while (scrRow != row) {
-        if (row < scrRow) {
-          scrRow--;
-          out.accept(new int[]{27,'[','1','A'});
-        } else {
-          scrRow++;
-          out.accept(new int[]{27,'[','1','B'});
-        }
-      }
+      motion.move(scrCol, scrRow, col, row, out);
+      scrCol = col;
+      scrRow = row;
+    }
+
+    /**
+     * Move the cursor to the specified coordinates of the {@code dst} char at {@code index}, the chars of
+     * {@code dst} displayed before on the same row can be issued again to move the cursor.
+     *
+     * @param dst the destination buffer
+     * @param index the index of the char
+     * @param col the column
+     * @param row the row
+     */
+    private void moveCursor(LineBuffer dst, int index, int col, int row) {
+      int start = index - col;
+      motion.move(scrCol, scrRow, col, row, c -> dst.at(start + c), col, out);
+      scrCol = col;
+      scrRow = row;
     }
   }
 }
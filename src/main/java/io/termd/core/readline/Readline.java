@@ -16,6 +16,7 @@
 
 package io.termd.core.readline;
 
+import io.termd.core.io.CodePointBuffer;
 import io.termd.core.term.Device;
 import io.termd.core.term.TermInfo;
 import io.termd.core.tty.TtyConnection;
@@ -23,6 +24,7 @@ import io.termd.core.tty.TtyEvent;
 import io.termd.core.util.Logging;
 import io.termd.core.util.Vector;
 import io.termd.core.util.Helper;
+import io.termd.core.util.Wcwidth;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -32,7 +34,6 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 import java.util.logging.Level;
-import java.util.stream.IntStream;
 
 /**
  * Make this class thread safe as SSH will access this class with different threds [sic].
@@ -193,12 +194,23 @@ public class Readline {
     private String currentPrompt;
     private boolean paused;
 
+    // The rendering state: the screen displays the current prompt followed by the buffer and the cursor is
+    // at the buffer cursor
+    private final CursorMotion motion;
+    private final CodePointBuffer out = new CodePointBuffer();
+    private final Consumer<int[]> collector = codePoints -> out.append(codePoints, 0, codePoints.length);
+    private String renderedPrompt;
+    private int[] promptCodePoints;
+    private int promptWidth = -1;
+    private int promptColumn;
+
     private Interaction(
         TtyConnection conn,
         String prompt,
         Consumer<String> requestHandler,
         Consumer<Completion> completionHandler) {
       this.conn = conn;
+      this.motion = CursorMotion.forTerminal(conn.terminalType());
       this.prompt = prompt;
       this.data = new HashMap<>();
       this.currentPrompt = prompt;
@@ -256,7 +268,7 @@ public class Readline {
         } else {
           Logging.READLINE.log(Level.WARNING, "Unimplemented function " + fname.name());
         }
-      } else {
+      } else if (!insertInline(event, size.x())) {
         LineBuffer buf = buffer.copy();
         for (int i = 0;i < event.length();i++) {
           int codePoint = event.getCodePointAt(i);
@@ -358,7 +370,7 @@ public class Readline {
       toto.insert(buffer.toArray());
       toto.setCursor(currentPrompt.length() + buffer.getCursor());
       LineBuffer abc = new LineBuffer();
-      abc.update(toto, conn.stdoutHandler(), size.x());
+      abc.update(toto, conn.stdoutHandler(), size.x(), motion);
     }
 
     /**
@@ -372,24 +384,150 @@ public class Readline {
     }
 
     private void refresh(LineBuffer update, int width) {
-      LineBuffer copy3 = new LineBuffer();
-      IntStream.Builder consumer = IntStream.builder();
-      copy3.insert(Helper.toCodePoints(currentPrompt));
-      copy3.insert(buffer().toArray());
-      copy3.setCursor(currentPrompt.length() + buffer().getCursor());
-      LineBuffer copy2 = new LineBuffer();
-      copy2.insert(Helper.toCodePoints(currentPrompt));
-      copy2.insert(update.toArray());
-      copy2.setCursor(currentPrompt.length() + update.getCursor());
-      copy3.update(copy2, data -> {
-        for (int cp : data) {
-          consumer.accept(cp);
+      if (!refreshInline(update, width)) {
+        LineBuffer src = new LineBuffer();
+        src.insert(promptCodePoints);
+        src.insert(buffer.toArray());
+        src.setCursor(promptCodePoints.length + buffer.getCursor());
+        LineBuffer dst = new LineBuffer();
+        dst.insert(promptCodePoints);
+        dst.insert(update.toArray());
+        dst.setCursor(promptCodePoints.length + update.getCursor());
+        src.update(dst, collector, width, motion);
+      }
+      flush();
+      buffer.set(update);
+    }
+
+    /**
+     * Insert the code points of a key event at the cursor when the line remains on the prompt row, the screen
+     * is updated with the code points preceded by an insert chars sequence when the cursor is not at the end of
+     * the line. This is the typing path, its cost does not depend on the line length.
+     *
+     * @param event the event
+     * @param width the screen width
+     * @return true when the event has been inserted
+     */
+    private boolean insertInline(KeyEvent event, int width) {
+      int length = event.length();
+      if (promptColumn(width) + buffer.getSize() + length >= width || buffer.isMultiline()) {
+        return false;
+      }
+      for (int i = 0;i < length;i++) {
+        if (Wcwidth.of(event.getCodePointAt(i)) != 1) {
+          return false;
+        }
+      }
+      if (buffer.getCursor() < buffer.getSize()) {
+        if (!motion.canEditChars()) {
+          return false;
         }
-      }, width);
-      conn.stdoutHandler().accept(consumer.build().toArray());
-      buffer.clear();
-      buffer.insert(update.toArray());
-      buffer.setCursor(update.getCursor());
+        motion.insertChars(length, collector);
+      }
+      for (int i = 0;i < length;i++) {
+        int codePoint = event.getCodePointAt(i);
+        buffer.insert(codePoint);
+        out.append(codePoint);
+      }
+      flush();
+      return true;
+    }
+
+    /**
+     * Update the screen when both buffers are displayed on the prompt row: only the damaged range between the
+     * common prefix and the common suffix of the buffers is redrawn, using insert or delete chars sequences to
+     * shift the suffix.
+     *
+     * @param update the new buffer
+     * @param width the screen width
+     * @return true when the screen has been updated
+     */
+    private boolean refreshInline(LineBuffer update, int width) {
+      if (!isInline(buffer, width) || !isInline(update, width)) {
+        return false;
+      }
+      int oldSize = buffer.getSize();
+      int newSize = update.getSize();
+      int min = Math.min(oldSize, newSize);
+      int prefix = 0;
+      while (prefix < min && buffer.getAt(prefix) == update.getAt(prefix)) {
+        prefix++;
+      }
+      int suffix = 0;
+      while (suffix < min - prefix && buffer.getAt(oldSize - suffix - 1) == update.getAt(newSize - suffix - 1)) {
+        suffix++;
+      }
+      int removed = oldSize - prefix - suffix;
+      int inserted = newSize - prefix - suffix;
+      if (suffix > 0 && removed != inserted && !motion.canEditChars()) {
+        return false;
+      }
+      int cursor = buffer.getCursor();
+      if (removed > 0 || inserted > 0) {
+        moveCursor(buffer, cursor, prefix);
+        if (suffix == 0) {
+          write(update, prefix, newSize);
+          if (removed > inserted) {
+            motion.clearToEndOfLine(collector);
+          }
+        } else {
+          int common = Math.min(removed, inserted);
+          write(update, prefix, prefix + common);
+          if (inserted > removed) {
+            motion.insertChars(inserted - removed, collector);
+            write(update, prefix + common, prefix + inserted);
+          } else if (removed > inserted) {
+            motion.deleteChars(removed - inserted, collector);
+          }
+        }
+        cursor = prefix + inserted;
+      }
+      moveCursor(update, cursor, update.getCursor());
+      return true;
+    }
+
+    /**
+     * @return true when the {@code buffer} fits on the prompt row
+     */
+    private boolean isInline(LineBuffer buffer, int width) {
+      return promptColumn(width) + buffer.getSize() < width && !buffer.isMultiline();
+    }
+
+    /**
+     * @return the column of the end of the current prompt, it is cached until the prompt or the width changes
+     */
+    private int promptColumn(int width) {
+      if (renderedPrompt != currentPrompt || promptWidth != width) {
+        renderedPrompt = currentPrompt;
+        promptWidth = width;
+        promptCodePoints = Helper.toCodePoints(currentPrompt);
+        promptColumn = Helper.computePosition(promptCodePoints, new Vector(0, 0), promptCodePoints.length, width).x();
+      }
+      return promptColumn;
+    }
+
+    /**
+     * Move the cursor on the prompt row, the prompt and the {@code screen} chars can be issued again.
+     */
+    private void moveCursor(LineBuffer screen, int from, int to) {
+      int length = promptCodePoints.length;
+      motion.move(promptColumn + from, 0, promptColumn + to, 0, col -> {
+        int index = col - promptColumn;
+        return index < 0 ? promptCodePoints[length + index] : screen.getAt(index);
+      }, promptColumn + screen.getSize(), collector);
+    }
+
+    private void write(LineBuffer src, int from, int to) {
+      for (int i = from;i < to;i++) {
+        out.append(src.getAt(i));
+      }
+    }
+
+    private void flush() {
+      if (out.length() > 0) {
+        out.writeTo(conn.stdoutHandler());
+        out.clear();
+      }
     }
 
     public void resume() {
@@ -18,10 +18,20 @@ package io.termd.core.ssh;
 
 import io.termd.core.io.BinaryDecoder;
 import io.termd.core.io.BinaryEncoder;
+import io.termd.core.io.CodePointConsumer;
+import io.termd.core.io.MalformedInputAction;
+import io.termd.core.tty.FlushPolicy;
+import io.termd.core.tty.OverflowPolicy;
+import io.termd.core.tty.ReadBuffer;
 import io.termd.core.tty.TtyConnection;
 import io.termd.core.tty.TtyEvent;
 import io.termd.core.tty.TtyEventDecoder;
+import io.termd.core.tty.TtyMetrics;
+import io.termd.core.tty.TtyOutputBuffer;
 import io.termd.core.tty.TtyOutputMode;
+import io.termd.core.tty.TtyOutputQueue;
+import io.termd.core.util.CoarseClock;
+import io.termd.core.util.SerialExecutor;
 import io.termd.core.util.Vector;
 import org.apache.sshd.common.channel.PtyMode;
 import org.apache.sshd.common.io.IoInputStream;
@@ -37,8 +47,11 @@ import org.apache.sshd.server.channel.ChannelSession;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
@@ -55,12 +68,19 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
 
   private final Consumer<TtyConnection> handler;
   private final Charset defaultCharset;
+  private final FlushPolicy flushPolicy;
+  private final OverflowPolicy overflowPolicy;
   private Charset charset;
   private String term;
   private TtyEventDecoder eventDecoder;
+  private ReadBuffer stdinBuffer;
+  private boolean inputPaused;
+  private int unconsumedInput;
   private BinaryDecoder decoder;
   private Consumer<int[]> stdout;
-  private Consumer<byte[]> out;
+  private TtyOutputQueue outputQueue;
+  private TtyOutputBuffer outputBuffer;
+  private Consumer<ByteBuffer> out;
   private Vector size = null;
   private Consumer<Vector> sizeHandler;
   private Consumer<String> termHandler;
@@ -70,24 +90,104 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
   private ExitCallback exitCallback;
   private Connection conn;
   private IoOutputStream ioOut;
-  private long lastAccessedTime = System.currentTimeMillis();
+  private volatile long lastAccessedTime = CoarseClock.currentTimeMillis();
+  private volatile long lastAccessedMonotonicTime = CoarseClock.monotonicTimeMillis();
+  private TtyMetrics metrics = TtyMetrics.NOOP;
+  private Executor handlerExecutor;
+  private MalformedInputAction malformedInputAction = MalformedInputAction.REPLACE;
+  private long decodeErrors;
 
   public TtyCommand(Charset defaultCharset, Consumer<TtyConnection> handler) {
+    this(defaultCharset, FlushPolicy.IMMEDIATE, handler);
+  }
+
+  public TtyCommand(Charset defaultCharset, FlushPolicy flushPolicy, Consumer<TtyConnection> handler) {
+    this(defaultCharset, flushPolicy, OverflowPolicy.DEFAULT, handler);
+  }
+
+  public TtyCommand(Charset defaultCharset, FlushPolicy flushPolicy, OverflowPolicy overflowPolicy, Consumer<TtyConnection> handler) {
     this.handler = handler;
     this.defaultCharset = defaultCharset;
+    this.flushPolicy = flushPolicy;
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  /**
+   * Set the metrics of the command, the connection uses the metrics returned by
+   * {@link TtyMetrics#forConnection(TtyConnection)} when the command starts.
+   *
+   * @param metrics the metrics
+   */
+  public void setMetrics(TtyMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Run the handlers of the connection on a {@link SerialExecutor} backed by {@code executor} instead of the
+   * shared executor of the server, so they can block without stalling the other sessions. The handlers keep being
+   * called one at a time and in order. It must be called before the command starts.
+   *
+   * @param executor the executor, for instance {@link SerialExecutor#newThreadPerTaskExecutor()}
+   */
+  public void setHandlerExecutor(Executor executor) {
+    this.handlerExecutor = executor != null ? new SerialExecutor(executor) : null;
+  }
+
+  /**
+   * Set the action to take when a malformed input sequence is decoded, it is replaced by default. It must be called
+   * before the command starts.
+   *
+   * @param action the action
+   */
+  public void setMalformedInputAction(MalformedInputAction action) {
+    if (action == null) {
+      throw new NullPointerException("No null action accepted");
+    }
+    this.malformedInputAction = action;
   }
 
   @Override
   public int data(ChannelSession channel, byte[] buf, int start, int len) throws IOException {
     if (decoder != null) {
-      lastAccessedTime = System.currentTimeMillis();
+      lastAccessedTime = CoarseClock.currentTimeMillis();
+      lastAccessedMonotonicTime = CoarseClock.monotonicTimeMillis();
+      metrics.bytesRead(len);
       decoder.write(buf, start, len);
+      long errors = decoder.malformedInputCount();
+      if (errors != decodeErrors) {
+        metrics.decodeErrors((int) (errors - decodeErrors));
+        decodeErrors = errors;
+      }
+      synchronized (this) {
+        if (inputPaused) {
+          // Do not consume the window, the client stops sending when it is exhausted
+          unconsumedInput += len;
+          return 0;
+        }
+      }
     } else {
       // Data send too early ?
     }
     return len;
   }
 
+  private void setInputPaused(boolean paused) {
+    int consumed;
+    synchronized (this) {
+      inputPaused = paused;
+      consumed = paused ? 0 : unconsumedInput;
+      unconsumedInput = 0;
+    }
+    if (consumed > 0) {
+      try {
+        // Adjust the window for the data received while the input was paused
+        session.getLocalWindow().consumeAndCheck(consumed);
+      } catch (IOException e) {
+        conn.close();
+      }
+    }
+  }
+
   @Override
   public void setChannelSession(ChannelSession session) {
     this.session = session;
@@ -113,7 +213,19 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
   @Override
   public void setIoOutputStream(IoOutputStream out) {
     this.ioOut = out;
-    this.out = bytes -> out.write(new ByteArrayBuffer(bytes));
+    this.out = buffer -> {
+      int len = buffer.remaining();
+      if (!outputQueue.offer(len)) {
+        buffer.position(buffer.limit());
+        return;
+      }
+      // The stream writes asynchronously, so it needs its own copy
+      byte[] bytes = new byte[len];
+      buffer.get(bytes);
+      // The write completes when the remote window has room for the bytes
+      outputQueue.queued(len);
+      out.write(new ByteArrayBuffer(bytes)).addListener(future -> outputQueue.written(len));
+    };
   }
 
   @Override
@@ -144,20 +256,48 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
     int veof = getControlChar(env, PtyMode.VEOF, 4);
 
     //
-    eventDecoder = new TtyEventDecoder(vintr, vsusp, veof);
-    decoder = new BinaryDecoder(512, charset, eventDecoder);
-    stdout = new TtyOutputMode(new BinaryEncoder(charset, out));
     term = env.getEnv().get("TERM");
     conn = new Connection();
+    metrics = metrics.forConnection(conn);
+    stdinBuffer = new ReadBuffer(conn::execute).setDirect(handlerExecutor == null);
+    stdinBuffer.setFlowControlHandler(read -> setInputPaused(!read));
+    eventDecoder = new TtyEventDecoder(vintr, vsusp, veof).setReadHandler(stdinBuffer).setMetrics(metrics).setEventExecutor(handlerExecutor != null ? stdinBuffer::execute : null);
+    eventDecoder.setControlChar(TtyEvent.QUIT, getControlChar(env, PtyMode.VQUIT, -1));
+    decoder = new BinaryDecoder(512, charset, (CodePointConsumer) eventDecoder).setMalformedInputAction(malformedInputAction);
+    outputQueue = new TtyOutputQueue(conn, overflowPolicy);
+    outputBuffer = new TtyOutputBuffer(conn, flushPolicy, out);
+    stdout = outputMode(env, new TtyOutputMode(new BinaryEncoder(512, charset, outputBuffer)).setCharset(charset));
 
     //
     session.setDataReceiver(this);
-    handler.accept(conn);
+    dispatch(() -> handler.accept(conn));
+  }
+
+  private TtyOutputMode outputMode(Environment env, TtyOutputMode mode) {
+    Map<PtyMode, Integer> modes = env.getPtyModes();
+    if (isFlagSet(modes, PtyMode.OPOST, true)) {
+      mode.setOnlcr(isFlagSet(modes, PtyMode.ONLCR, true));
+      mode.setOcrnl(isFlagSet(modes, PtyMode.OCRNL, false));
+      mode.setOnocr(isFlagSet(modes, PtyMode.ONOCR, false));
+      mode.setOnlret(isFlagSet(modes, PtyMode.ONLRET, false));
+    } else {
+      mode.setOnlcr(false);
+    }
+    return mode;
+  }
+
+  private static boolean isFlagSet(Map<PtyMode, Integer> modes, PtyMode key, boolean def) {
+    Integer value = modes.get(key);
+    return value != null ? value != 0 : def;
   }
 
   private int getControlChar(Environment env, PtyMode key, int def) {
     Integer controlChar = env.getPtyModes().get(key);
-    return controlChar != null ? controlChar : def;
+    if (controlChar == null) {
+      return def;
+    }
+    // 255 disables the char in the SSH terminal modes
+    return controlChar != 255 ? controlChar : -1;
   }
 
   public void updateSize(Environment env) {
@@ -175,8 +315,10 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
       }
       if (size != null) {
         this.size = size;
-        if (sizeHandler != null) {
-          sizeHandler.accept(size);
+        Consumer<Vector> handler = sizeHandler;
+        if (handler != null) {
+          Vector s = size;
+          dispatch(() -> handler.accept(s));
         }
       }
     }
@@ -184,11 +326,18 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
 
   @Override
   public void close() throws IOException {
+    if (outputBuffer != null) {
+      outputBuffer.flush();
+    }
     ioOut.close(false).addListener(future -> {
+      if (outputQueue != null) {
+        outputQueue.close();
+      }
       exitCallback.onExit(0);
       if (closed.compareAndSet(false, true)) {
-        if (closeHandler != null) {
-          closeHandler.accept(null);
+        Consumer<Void> handler = closeHandler;
+        if (handler != null) {
+          dispatch(() -> handler.accept(null));
         } else {
           // This happen : report it to the SSHD project
         }
@@ -202,11 +351,27 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
   }
 
   protected void execute(Runnable task) {
-    session.getSession().getFactoryManager().getScheduledExecutorService().execute(task);
+    if (handlerExecutor != null) {
+      handlerExecutor.execute(metrics.instrument(task));
+    } else {
+      session.getSession().getFactoryManager().getScheduledExecutorService().execute(metrics.instrument(task));
+    }
   }
 
   protected void schedule(Runnable task, long delay, TimeUnit unit) {
-    session.getSession().getFactoryManager().getScheduledExecutorService().schedule(task, delay, unit);
+    Runnable scheduled = handlerExecutor != null ? () -> execute(task) : task;
+    session.getSession().getFactoryManager().getScheduledExecutorService().schedule(scheduled, delay, unit);
+  }
+
+  /**
+   * Call a handler on the handler executor or directly when there is none.
+   */
+  private void dispatch(Runnable task) {
+    if (handlerExecutor != null) {
+      handlerExecutor.execute(task);
+    } else {
+      task.run();
+    }
   }
 
   private static Charset parseCharset(String value) {
@@ -238,6 +403,16 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
       return lastAccessedTime;
     }
 
+    @Override
+    public long lastAccessedMonotonicTime() {
+      return lastAccessedMonotonicTime;
+    }
+
+    @Override
+    public TtyMetrics metrics() {
+      return metrics;
+    }
+
     @Override
     public String terminalType() {
       return term;
@@ -245,12 +420,27 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
 
     @Override
     public Consumer<int[]> getStdinHandler() {
-      return eventDecoder.getReadHandler();
+      return stdinBuffer.getReadHandler();
     }
 
     @Override
     public void setStdinHandler(Consumer<int[]> handler) {
-      eventDecoder.setReadHandler(handler);
+      stdinBuffer.setReadHandler(handler);
+    }
+
+    @Override
+    public void pause() {
+      stdinBuffer.pause();
+    }
+
+    @Override
+    public void resume() {
+      stdinBuffer.resume();
+    }
+
+    @Override
+    public void setInputWaterMarks(int lowWaterMark, int highWaterMark) {
+      stdinBuffer.setWaterMarks(lowWaterMark, highWaterMark);
     }
 
     @Override
@@ -293,6 +483,21 @@ public class TtyCommand implements AsyncCommand, ChannelDataReceiver, ChannelSes
       return stdout;
     }
 
+    @Override
+    public boolean isWritable() {
+      return outputQueue.isWritable();
+    }
+
+    @Override
+    public Consumer<Void> getDrainHandler() {
+      return outputQueue.getDrainHandler();
+    }
+
+    @Override
+    public void setDrainHandler(Consumer<Void> handler) {
+      outputQueue.setDrainHandler(handler);
+    }
+
     @Override
     public void execute(Runnable task) {
       TtyCommand.this.execute(task);
@@ -80,9 +80,20 @@ public class NettyIoSession extends AbstractCloseable implements IoSession {
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
       ByteBuf buf = (ByteBuf) msg;
-      byte[] bytes = new byte[buf.readableBytes()];
-      buf.getBytes(0, bytes);
-      acceptor.factory.handlerBridge.messageReceived(handler, NettyIoSession.this, new ByteArrayBuffer(bytes));
+      try {
+        ByteArrayBuffer buffer;
+        if (buf.hasArray()) {
+          // The session consumes the buffer during the call, so we can wrap the heap array
+          buffer = new ByteArrayBuffer(buf.array(), buf.arrayOffset() + buf.readerIndex(), buf.readableBytes());
+        } else {
+          byte[] bytes = new byte[buf.readableBytes()];
+          buf.getBytes(buf.readerIndex(), bytes);
+          buffer = new ByteArrayBuffer(bytes);
+        }
+        acceptor.factory.handlerBridge.messageReceived(handler, NettyIoSession.this, buffer);
+      } finally {
+        buf.release();
+      }
     }
 
     @Override
@@ -18,9 +18,14 @@ package io.termd.core.ssh.netty;
 
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.termd.core.io.MalformedInputAction;
 import io.termd.core.ssh.TtyCommand;
+import io.termd.core.tty.FlushPolicy;
+import io.termd.core.tty.OverflowPolicy;
+import io.termd.core.tty.TtyMetrics;
 import io.termd.core.tty.TtyConnection;
 import io.termd.core.util.Helper;
+import io.termd.core.util.SerialExecutor;
 import org.apache.sshd.common.keyprovider.KeyPairProvider;
 import org.apache.sshd.server.SshServer;
 import org.apache.sshd.server.auth.password.PasswordAuthenticator;
@@ -31,6 +36,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 /**
@@ -41,6 +47,11 @@ public class NettySshTtyBootstrap {
   private String host;
   private int port;
   private Charset charset;
+  private FlushPolicy flushPolicy;
+  private OverflowPolicy overflowPolicy;
+  private TtyMetrics metrics;
+  private Executor handlerExecutor;
+  private MalformedInputAction malformedInputAction;
   private EventLoopGroup parentGroup;
   private EventLoopGroup childGroup;
   private SshServer server;
@@ -51,6 +62,10 @@ public class NettySshTtyBootstrap {
     this.host = "localhost";
     this.port = 5000;
     this.charset = StandardCharsets.UTF_8;
+    this.flushPolicy = FlushPolicy.IMMEDIATE;
+    this.overflowPolicy = OverflowPolicy.DEFAULT;
+    this.metrics = TtyMetrics.NOOP;
+    this.malformedInputAction = MalformedInputAction.REPLACE;
     this.parentGroup = new NioEventLoopGroup(1);
     this.childGroup = new NioEventLoopGroup();
     this.keyPairProvider = new SimpleGeneratorHostKeyProvider(new File("hostkey.ser").toPath());
@@ -98,6 +113,84 @@ public class NettySshTtyBootstrap {
     this.charset = charset;
   }
 
+  public FlushPolicy getFlushPolicy() {
+    return flushPolicy;
+  }
+
+  /**
+   * Set the policy for flushing the output of the connections.
+   *
+   * @param flushPolicy the flush policy
+   * @return this object
+   */
+  public NettySshTtyBootstrap setFlushPolicy(FlushPolicy flushPolicy) {
+    this.flushPolicy = flushPolicy;
+    return this;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * Set the policy bounding the output of the connections that has not been written to the clients, the output
+   * is pending until the SSH channel window has room for it.
+   *
+   * @param overflowPolicy the overflow policy
+   * @return this object
+   */
+  public NettySshTtyBootstrap setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+    return this;
+  }
+
+  public TtyMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Set the metrics of the connections, {@link TtyMetrics#forConnection(TtyConnection)} is called for each connection.
+   *
+   * @param metrics the metrics
+   * @return this object
+   */
+  public NettySshTtyBootstrap setMetrics(TtyMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  public Executor getHandlerExecutor() {
+    return handlerExecutor;
+  }
+
+  /**
+   * Run the handlers of each connection on its own serial executor backed by {@code executor} instead of the
+   * shared executor of the server, for applications doing blocking work in their handlers. A {@code null}
+   * executor keeps the handlers on the shared executor.
+   *
+   * @param executor the executor, for instance {@link SerialExecutor#newThreadPerTaskExecutor()}
+   * @return this object
+   */
+  public NettySshTtyBootstrap setHandlerExecutor(Executor executor) {
+    this.handlerExecutor = executor;
+    return this;
+  }
+
+  public MalformedInputAction getMalformedInputAction() {
+    return malformedInputAction;
+  }
+
+  /**
+   * Set the action to take when a malformed input sequence is decoded, it is replaced by default.
+   *
+   * @param action the action
+   * @return this object
+   */
+  public NettySshTtyBootstrap setMalformedInputAction(MalformedInputAction action) {
+    this.malformedInputAction = action;
+    return this;
+  }
+
   public void start(Consumer<TtyConnection> factory, Consumer<Throwable> doneHandler) {
     server = SshServer.setUpDefaultServer();
     server.setIoServiceFactoryFactory(new NettyIoServiceFactoryFactory(childGroup));
@@ -105,7 +198,13 @@ public class NettySshTtyBootstrap {
     server.setHost(host);
     server.setKeyPairProvider(keyPairProvider);
     server.setPasswordAuthenticator(passwordAuthenticator);
-    server.setShellFactory(() -> new TtyCommand(charset, factory));
+    server.setShellFactory(() -> {
+      TtyCommand command = new TtyCommand(charset, flushPolicy, overflowPolicy, factory);
+      command.setMetrics(metrics);
+      command.setHandlerExecutor(handlerExecutor);
+      command.setMalformedInputAction(malformedInputAction);
+      return command;
+    });
     try {
       server.start();
     } catch (Exception e) {
@@ -21,7 +21,7 @@ package io.termd.core.telnet;
  *
 * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
 */
-public enum Option {
+public enum Option implements OptionHandler {
 
   /**
    * Telnet Binary Transmission (<a href="https://tools.ietf.org/html/rfc856">RFC856</a>).
@@ -29,25 +29,25 @@ public enum Option {
   BINARY((byte) 0) {
 
     @Override
-    void handleDo(TelnetConnection session) {
+    public void handleDo(TelnetConnection session) {
       session.sendBinary = true;
       session.handler.onSendBinary(true);
     }
 
     @Override
-    void handleDont(TelnetConnection session) {
+    public void handleDont(TelnetConnection session) {
       session.sendBinary = false;
       session.handler.onSendBinary(false);
     }
 
     @Override
-    void handleWill(TelnetConnection session) {
+    public void handleWill(TelnetConnection session) {
       session.receiveBinary = true;
       session.handler.onReceiveBinary(true);
     }
 
     @Override
-    void handleWont(TelnetConnection session) {
+    public void handleWont(TelnetConnection session) {
       session.receiveBinary = false;
       session.handler.onReceiveBinary(false);
     }
@@ -58,16 +58,16 @@ public enum Option {
    */
   ECHO((byte) 1) {
     @Override
-    void handleDo(TelnetConnection session) { session.handler.onEcho(true); }
-    void handleDont(TelnetConnection session) { session.handler.onEcho(false); }
+    public void handleDo(TelnetConnection session) { session.handler.onEcho(true); }
+    public void handleDont(TelnetConnection session) { session.handler.onEcho(false); }
   },
 
   /**
    * Telnet Suppress Go Ahead Option (<a href="https://tools.ietf.org/html/rfc858">RFC858</a>).
    */
   SGA((byte) 3) {
-    void handleDo(TelnetConnection session) { session.handler.onSGA(true); }
-    void handleDont(TelnetConnection session) { session.handler.onSGA(false); }
+    public void handleDo(TelnetConnection session) { session.handler.onSGA(true); }
+    public void handleDont(TelnetConnection session) { session.handler.onSGA(false); }
   },
 
   /**
@@ -78,15 +78,15 @@ public enum Option {
     final byte BYTE_IS = 0, BYTE_SEND = 1;
 
     @Override
-    void handleWill(TelnetConnection session) {
-      session.send(new byte[]{TelnetConnection.BYTE_IAC, TelnetConnection.BYTE_SB, code, BYTE_SEND, TelnetConnection.BYTE_IAC, TelnetConnection.BYTE_SE});
+    public void handleWill(TelnetConnection session) {
+      session.writeOptionParameters(code, BYTE_SEND);
     }
     @Override
-    void handleWont(TelnetConnection session) {
+    public void handleWont(TelnetConnection session) {
     }
 
     @Override
-    void handleParameters(TelnetConnection session, byte[] parameters) {
+    public void handleParameters(TelnetConnection session, byte[] parameters) {
       if (parameters.length > 0 && parameters[0] == BYTE_IS) {
         String terminalType = new String(parameters, 1, parameters.length - 1);
         session.handler.onTerminalType(terminalType);
@@ -99,21 +99,41 @@ public enum Option {
    */
   NAWS((byte) 31) {
     @Override
-    void handleWill(TelnetConnection session) {
+    public void handleWill(TelnetConnection session) {
       session.handler.onNAWS(true);
     }
     @Override
-    void handleWont(TelnetConnection session) {
+    public void handleWont(TelnetConnection session) {
       session.handler.onNAWS(false);
     }
     @Override
-    void handleParameters(TelnetConnection session, byte[] parameters) {
+    public void handleParameters(TelnetConnection session, byte[] parameters) {
       if (parameters.length == 4) {
         int width = ((parameters[0] & 0xff) << 8) + (parameters[1] & 0xff);
         int height = ((parameters[2] & 0xff) << 8) + (parameters[3] & 0xff);
         session.handler.onSize(width, height);
       }
     }
+  },
+
+  /**
+   * Mud Client Compression Protocol version 2 (<a href="https://tintin.mudhalla.net/protocols/mccp/">MCCP2</a>),
+   * the data sent to the client is compressed with <i>zlib</i> when the connection has been configured with
+   * {@link TelnetConnection#setCompression(int, int)}.
+   */
+  COMPRESS2((byte) 86) {
+    @Override
+    public void handleDo(TelnetConnection session) {
+      if (session.compression) {
+        session.startCompression();
+      } else {
+        session.writeWontOption(code);
+      }
+    }
+    @Override
+    public void handleDont(TelnetConnection session) {
+      session.stopCompression();
+    }
   }
 
   ;
@@ -127,40 +147,9 @@ public enum Option {
     this.code = code;
   }
 
-  /**
-   * Handle a <code>DO</code> message.
-   *
-   * @param session the session
-   */
-  void handleDo(TelnetConnection session) { }
-
-  /**
-   * Handle a <code>DON'T</code> message.
-   *
-   * @param session the session
-   */
-  void handleDont(TelnetConnection session) { }
-
-  /**
-   * Handle a <code>WILL</code> message.
-   *
-   * @param session the session
-   */
-  void handleWill(TelnetConnection session) { }
-
-  /**
-   * Handle a <code>WON'T</code> message.
-   *
-   * @param session the session
-   */
-  void handleWont(TelnetConnection session) { }
-
-  /**
-   * Handle a parameters message.
-   *
-   * @param session the session
-   * @param parameters the parameters
-   */
-  void handleParameters(TelnetConnection session, byte[] parameters) { }
+  @Override
+  public byte code() {
+    return code;
+  }
 
 }
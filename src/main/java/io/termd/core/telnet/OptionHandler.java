@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.telnet;
+
+/**
+ * Handles the negotiation of a telnet option, the handler is registered on a connection with
+ * {@link TelnetConnection#registerOption(OptionHandler)}.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public interface OptionHandler {
+
+  /**
+   * @return the option code
+   */
+  byte code();
+
+  /**
+   * Handle a <code>DO</code> message.
+   *
+   * @param session the session
+   */
+  default void handleDo(TelnetConnection session) { }
+
+  /**
+   * Handle a <code>DON'T</code> message.
+   *
+   * @param session the session
+   */
+  default void handleDont(TelnetConnection session) { }
+
+  /**
+   * Handle a <code>WILL</code> message.
+   *
+   * @param session the session
+   */
+  default void handleWill(TelnetConnection session) { }
+
+  /**
+   * Handle a <code>WON'T</code> message.
+   *
+   * @param session the session
+   */
+  default void handleWont(TelnetConnection session) { }
+
+  /**
+   * Handle a parameters message.
+   *
+   * @param session the session
+   * @param parameters the parameters
+   */
+  default void handleParameters(TelnetConnection session, byte[] parameters) { }
+
+}
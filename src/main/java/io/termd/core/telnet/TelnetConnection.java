@@ -15,8 +15,10 @@
  */
 package io.termd.core.telnet;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 /**
 * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -31,32 +33,94 @@ public abstract class TelnetConnection {
   public static final byte BYTE_SB = (byte)   0xFA;
   public static final byte BYTE_SE = (byte)   0xF0;
 
-  private byte[] pendingBuffer = new byte[256];
-  private int pendingLength = 0;
-  Status status;
-  Byte paramsOptionCode;
-  byte[] paramsBuffer;
-  int paramsLength;
-  boolean paramsIac;
+  private static final byte[] EMPTY = new byte[0];
+
+  private static final OptionHandler[] DEFAULT_OPTIONS = new OptionHandler[256];
+
+  static {
+    for (Option option : Option.values()) {
+      DEFAULT_OPTIONS[option.code & 0xFF] = option;
+    }
+  }
+
+  // Parser states
+  private static final int STATE_DATA = 0, STATE_IAC = 1, STATE_OPTION = 2, STATE_SB_CODE = 3, STATE_SB = 4, STATE_SB_IAC = 5;
+
+  private int state;
+  private boolean escaped;
+  private byte optionVerb;
+  private byte paramsOptionCode;
+  private byte[] paramsBuffer;
+  private int paramsLength;
+  private OptionHandler[] options = DEFAULT_OPTIONS;
   boolean sendBinary;
   boolean receiveBinary;
+  boolean compression;
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+  private int compressionFlushMode = Deflater.SYNC_FLUSH;
+  private Deflater deflater;
+  private long deflaterFlushed;
+  private byte[] deflateInput;
+  private byte[] deflateOutput;
+  private ByteBuffer deflateOutputBuffer;
   final TelnetHandler handler;
 
   public TelnetConnection(TelnetHandler handler) {
-    this.status = Status.DATA;
-    this.paramsOptionCode = null;
-    this.paramsBuffer = null;
-    this.paramsIac = false;
+    this.state = STATE_DATA;
     this.sendBinary = false;
     this.receiveBinary = false;
     this.handler = handler;
   }
 
-  private void appendToParams(byte b) {
-    while (paramsLength >= paramsBuffer.length) {
-      paramsBuffer = Arrays.copyOf(paramsBuffer, paramsBuffer.length + 100);
+  /**
+   * Append the {@code [from, to)} range of the buffer to the option parameters, the parameters buffer is allocated
+   * on demand and reused for the next sub negotiations.
+   */
+  private void appendToParams(ByteBuffer data, int from, int to) {
+    int len = to - from;
+    if (paramsBuffer == null) {
+      paramsBuffer = new byte[Math.max(16, len)];
+    } else if (paramsLength + len > paramsBuffer.length) {
+      paramsBuffer = Arrays.copyOf(paramsBuffer, Math.max(paramsLength + len, paramsBuffer.length * 2));
+    }
+    for (int i = from;i < to;i++) {
+      paramsBuffer[paramsLength++] = data.get(i);
+    }
+  }
+
+  /**
+   * Register an option handler on this connection, it replaces the handler currently registered for the same
+   * option code, including the handlers of the {@link Option} values.
+   *
+   * @param option the option handler
+   */
+  public void registerOption(OptionHandler option) {
+    if (options == DEFAULT_OPTIONS) {
+      options = DEFAULT_OPTIONS.clone();
     }
-    paramsBuffer[paramsLength++] = b;
+    options[option.code() & 0xFF] = option;
+  }
+
+  /**
+   * Unregister the option handler for an option code.
+   *
+   * @param optionCode the option code
+   */
+  public void unregisterOption(byte optionCode) {
+    if (options[optionCode & 0xFF] != null) {
+      if (options == DEFAULT_OPTIONS) {
+        options = DEFAULT_OPTIONS.clone();
+      }
+      options[optionCode & 0xFF] = null;
+    }
+  }
+
+  /**
+   * @param optionCode the option code
+   * @return the handler registered for the option code or {@code null}
+   */
+  public OptionHandler getOption(byte optionCode) {
+    return options[optionCode & 0xFF];
   }
 
   public void onInit() {
@@ -71,7 +135,16 @@ public abstract class TelnetConnection {
    * @param option the option to send
    */
   public final void writeDoOption(Option option) {
-    send(new byte[]{BYTE_IAC, BYTE_DO, option.code});
+    writeDoOption(option.code);
+  }
+
+  /**
+   * Write a <i>do</i> option request to the client.
+   *
+   * @param optionCode the option code
+   */
+  public final void writeDoOption(byte optionCode) {
+    output(new byte[]{BYTE_IAC, BYTE_DO, optionCode});
   }
 
   /**
@@ -80,12 +153,70 @@ public abstract class TelnetConnection {
    * @param option the option to send
    */
   public final void writeWillOption(Option option) {
-    send(new byte[]{BYTE_IAC, BYTE_WILL, option.code});
+    writeWillOption(option.code);
+  }
+
+  /**
+   * Write a <i>will</i> option request to the client.
+   *
+   * @param optionCode the option code
+   */
+  public final void writeWillOption(byte optionCode) {
+    output(new byte[]{BYTE_IAC, BYTE_WILL, optionCode});
+  }
+
+  /**
+   * Write a <i>don't</i> option request to the client.
+   *
+   * @param optionCode the option code
+   */
+  public final void writeDontOption(byte optionCode) {
+    output(new byte[]{BYTE_IAC, BYTE_DONT, optionCode});
+  }
+
+  /**
+   * Write a <i>won't</i> option request to the client.
+   *
+   * @param optionCode the option code
+   */
+  public final void writeWontOption(byte optionCode) {
+    output(new byte[]{BYTE_IAC, BYTE_WONT, optionCode});
+  }
+
+  /**
+   * Write option parameters to the client, the {@code IAC} bytes of the parameters are escaped.
+   *
+   * @param optionCode the option code
+   * @param parameters the parameters
+   */
+  public final void writeOptionParameters(byte optionCode, byte... parameters) {
+    int len = parameters.length;
+    for (byte parameter : parameters) {
+      if (parameter == BYTE_IAC) {
+        len++;
+      }
+    }
+    byte[] data = new byte[len + 5];
+    data[0] = BYTE_IAC;
+    data[1] = BYTE_SB;
+    data[2] = optionCode;
+    int i = 3;
+    for (byte parameter : parameters) {
+      data[i++] = parameter;
+      if (parameter == BYTE_IAC) {
+        data[i++] = BYTE_IAC;
+      }
+    }
+    data[i++] = BYTE_IAC;
+    data[i] = BYTE_SE;
+    output(data);
   }
 
   private void rawWrite(byte[] data, int offset, int length) {
     if (length > 0) {
-      if (offset == 0 && length == data.length) {
+      if (deflater != null) {
+        deflate(data, offset, length, Deflater.NO_FLUSH, false);
+      } else if (offset == 0 && length == data.length) {
         send(data);
       } else {
         byte[] chunk = new byte[length];
@@ -95,19 +226,344 @@ public abstract class TelnetConnection {
     }
   }
 
+  private void rawWrite(ByteBuffer data, int from, int to) {
+    if (to > from) {
+      int limit = data.limit();
+      data.limit(to).position(from);
+      try {
+        output(data, Deflater.NO_FLUSH);
+      } finally {
+        data.limit(limit).position(to);
+      }
+    }
+  }
+
+  /**
+   * Configure the <i>MCCP2</i> compression of the data sent to the client, the compression starts when the client
+   * accepts the {@link Option#COMPRESS2} option. The {@link Deflater#SYNC_FLUSH} mode flushes the compressed
+   * stream after each write so the client can decompress each write immediately, the {@link Deflater#FULL_FLUSH}
+   * mode also resets the compression state so the client can recover from a corrupted stream at the price of
+   * a lower compression ratio.
+   *
+   * @param level the compression level from {@link Deflater#DEFAULT_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}
+   * @param flushMode the flush mode, {@link Deflater#SYNC_FLUSH} or {@link Deflater#FULL_FLUSH}
+   */
+  public void setCompression(int level, int flushMode) {
+    if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level " + level);
+    }
+    if (flushMode != Deflater.SYNC_FLUSH && flushMode != Deflater.FULL_FLUSH) {
+      throw new IllegalArgumentException("Invalid flush mode " + flushMode);
+    }
+    compression = true;
+    compressionLevel = level;
+    compressionFlushMode = flushMode;
+  }
+
+  /**
+   * @return true when the data sent to the client is compressed
+   */
+  public boolean isCompressing() {
+    return deflater != null;
+  }
+
+  /**
+   * Start the compression of the data sent to the client, this sends the {@code IAC SB COMPRESS2 IAC SE} sequence
+   * after which all the data is compressed.
+   */
+  public void startCompression() {
+    if (deflater == null) {
+      send(new byte[]{BYTE_IAC, BYTE_SB, Option.COMPRESS2.code, BYTE_IAC, BYTE_SE});
+      deflater = new Deflater(compressionLevel);
+      deflaterFlushed = 0;
+    }
+  }
+
+  /**
+   * Stop the compression of the data sent to the client, this terminates the compressed stream, the data sent
+   * after is not compressed.
+   */
+  public void stopCompression() {
+    if (deflater != null) {
+      deflater.finish();
+      deflate(null, 0, 0, Deflater.NO_FLUSH, true);
+      deflater.end();
+      deflater = null;
+    }
+  }
+
+  private void output(byte[] data) {
+    if (deflater != null) {
+      deflate(data, 0, data.length, compressionFlushMode, false);
+    } else {
+      send(data);
+    }
+  }
+
+  private void output(ByteBuffer data) {
+    output(data, compressionFlushMode);
+  }
+
+  private void output(ByteBuffer data, int flushMode) {
+    if (deflater != null) {
+      int len = data.remaining();
+      if (data.hasArray()) {
+        deflate(data.array(), data.arrayOffset() + data.position(), len, flushMode, false);
+      } else {
+        if (deflateInput == null || deflateInput.length < len) {
+          deflateInput = new byte[Math.max(len, 512)];
+        }
+        data.get(deflateInput, 0, len);
+        deflate(deflateInput, 0, len, flushMode, false);
+      }
+      data.position(data.limit());
+    } else {
+      send(data);
+    }
+  }
+
+  /**
+   * Flush the data buffered by the compressor.
+   */
+  private void flushOutput() {
+    if (deflater != null && deflater.getBytesRead() != deflaterFlushed) {
+      deflate(null, 0, 0, compressionFlushMode, false);
+    }
+  }
+
+  /**
+   * Compress the data and send the compressed bytes, the {@code finish} argument drains the compressor after
+   * {@link Deflater#finish()} has been called.
+   */
+  private void deflate(byte[] data, int offset, int length, int flushMode, boolean finish) {
+    if (data != null) {
+      deflater.setInput(data, offset, length);
+    }
+    if (deflateOutput == null) {
+      deflateOutput = new byte[512];
+      deflateOutputBuffer = ByteBuffer.wrap(deflateOutput);
+    }
+    int len = 0;
+    while (true) {
+      int space = deflateOutput.length - len;
+      int n = deflater.deflate(deflateOutput, len, space, flushMode);
+      len += n;
+      if (n < space && (finish ? deflater.finished() : deflater.needsInput())) {
+        break;
+      }
+      if (len == deflateOutput.length) {
+        deflateOutput = Arrays.copyOf(deflateOutput, deflateOutput.length * 2);
+        deflateOutputBuffer = ByteBuffer.wrap(deflateOutput);
+      }
+    }
+    if (data != null) {
+      // Do not retain the caller data
+      deflater.setInput(EMPTY);
+    }
+    if (flushMode != Deflater.NO_FLUSH) {
+      deflaterFlushed = deflater.getBytesRead();
+    }
+    if (len > 0) {
+      deflateOutputBuffer.clear();
+      deflateOutputBuffer.limit(len);
+      send(deflateOutputBuffer);
+    }
+  }
+
+  /**
+   * @return true when the data sent to the client does not exceed the write limit of the transport
+   */
+  public boolean isWritable() {
+    return true;
+  }
+
+  /**
+   * Set the write limit of the transport, the connection is not writable when more than {@code limit} bytes
+   * are pending and becomes writable again when the pending bytes drop to {@code limit / 2}. The default
+   * implementation does nothing.
+   *
+   * @param limit the write limit in bytes
+   */
+  public void setWriteLimit(int limit) {
+  }
+
+  /**
+   * Stop reading data from the client. The default implementation does nothing.
+   */
+  public void pause() {
+  }
+
+  /**
+   * Resume reading data from the client. The default implementation does nothing.
+   */
+  public void resume() {
+  }
+
+  /**
+   * Signal a change of the transport writability to the handler.
+   */
+  public void onWritabilityChanged() {
+    handler.onWritabilityChanged(isWritable());
+  }
+
   protected abstract void execute(Runnable task);
 
   protected abstract void schedule(Runnable task, long delay, TimeUnit unit);
 
   protected abstract void send(byte[] data);
 
+  /**
+   * Send the remaining bytes of the buffer to the client, the buffer is only valid during the call. The
+   * default implementation copies the bytes and calls {@link #send(byte[])}.
+   *
+   * @param data the data to send
+   */
+  protected void send(ByteBuffer data) {
+    byte[] bytes = new byte[data.remaining()];
+    data.get(bytes);
+    send(bytes);
+  }
+
   public void receive(byte[] data) {
-    for (byte b : data) {
-      status.handle(this, b);
+    receive(ByteBuffer.wrap(data));
+  }
+
+  /**
+   * Receive data from the client, the data runs between telnet commands are handed to
+   * {@link TelnetHandler#onData(ByteBuffer)} as slices of the buffer without being copied. The buffer
+   * position is advanced to its limit.
+   *
+   * @param data the data
+   */
+  public void receive(ByteBuffer data) {
+    int pos = data.position();
+    int limit = data.limit();
+    try {
+      while (pos < limit) {
+        switch (state) {
+          case STATE_DATA: {
+            // An escaped IAC starts the data run
+            int end = escaped ? pos + 1 : pos;
+            escaped = false;
+            end = indexOfIac(data, end, limit);
+            if (end > pos) {
+              onData(data, pos, end, limit);
+            }
+            if (end < limit) {
+              state = STATE_IAC;
+              end++;
+            }
+            pos = end;
+            break;
+          }
+          case STATE_IAC: {
+            byte b = data.get(pos);
+            if (b == BYTE_IAC && receiveBinary) {
+              escaped = true;
+              state = STATE_DATA;
+              break;
+            }
+            pos++;
+            switch (b) {
+              case BYTE_DO:
+              case BYTE_DONT:
+              case BYTE_WILL:
+              case BYTE_WONT:
+                optionVerb = b;
+                state = STATE_OPTION;
+                break;
+              case BYTE_SB:
+                state = STATE_SB_CODE;
+                break;
+              default:
+                state = STATE_DATA;
+                handler.onCommand(b);
+                break;
+            }
+            break;
+          }
+          case STATE_OPTION: {
+            byte optionCode = data.get(pos++);
+            state = STATE_DATA;
+            switch (optionVerb) {
+              case BYTE_DO:
+                onOptionDo(optionCode);
+                break;
+              case BYTE_DONT:
+                onOptionDont(optionCode);
+                break;
+              case BYTE_WILL:
+                onOptionWill(optionCode);
+                break;
+              default:
+                onOptionWont(optionCode);
+                break;
+            }
+            break;
+          }
+          case STATE_SB_CODE: {
+            paramsOptionCode = data.get(pos++);
+            paramsLength = 0;
+            state = STATE_SB;
+            break;
+          }
+          case STATE_SB: {
+            int end = indexOfIac(data, pos, limit);
+            if (end > pos) {
+              appendToParams(data, pos, end);
+            }
+            if (end < limit) {
+              state = STATE_SB_IAC;
+              end++;
+            }
+            pos = end;
+            break;
+          }
+          case STATE_SB_IAC: {
+            byte b = data.get(pos);
+            if (b == BYTE_SE) {
+              pos++;
+              state = STATE_DATA;
+              byte[] parameters = Arrays.copyOf(paramsBuffer != null ? paramsBuffer : EMPTY, paramsLength);
+              paramsLength = 0;
+              onOptionParameters(paramsOptionCode, parameters);
+            } else if (b == BYTE_IAC) {
+              appendToParams(data, pos, ++pos);
+              state = STATE_SB;
+            } else {
+              // Invalid sequence, the byte is dropped
+              pos++;
+              state = STATE_SB;
+            }
+            break;
+          }
+          default:
+            throw new AssertionError();
+        }
+      }
+    } finally {
+      data.position(limit);
     }
-    flushDataIfNecessary();
   }
 
+  private static int indexOfIac(ByteBuffer data, int from, int to) {
+    while (from < to && data.get(from) != BYTE_IAC) {
+      from++;
+    }
+    return from;
+  }
+
+  /**
+   * Hand the {@code [from, to)} range of the buffer to the handler.
+   */
+  private void onData(ByteBuffer data, int from, int to, int limit) {
+    data.limit(to).position(from);
+    try {
+      handler.onData(data);
+    } finally {
+      data.limit(limit);
+    }
+  }
 
   /**
    * Write data to the client, escaping data if necessary or truncating it. The original buffer can
@@ -121,26 +577,59 @@ public abstract class TelnetConnection {
       for (int i = 0;i < data.length;i++) {
         if (data[i] == -1) {
           rawWrite(data, prev, i - prev);
-          send(new byte[]{-1, -1});
+          rawWrite(new byte[]{-1, -1}, 0, 2);
           prev = i + 1;
         }
       }
       rawWrite(data, prev, data.length - prev);
+      flushOutput();
     } else {
       for (int i = 0;i < data.length;i++) {
         data[i] = (byte)(data[i] & 0x7F);
       }
-      send(data);
+      output(data);
+    }
+  }
+
+  /**
+   * Write the remaining bytes of the buffer to the client, escaping data if necessary or truncating it. The
+   * buffer content can be mutated if incorrect data is provided and its position is advanced to its limit.
+   *
+   * @param data the data to write
+   */
+  public final void write(ByteBuffer data) {
+    int limit = data.limit();
+    if (sendBinary) {
+      int prev = data.position();
+      for (int i = prev;i < limit;i++) {
+        if (data.get(i) == -1) {
+          // Send the IAC byte twice, once at the end of this run and once at the start of the next one
+          rawWrite(data, prev, i + 1);
+          prev = i;
+        }
+      }
+      rawWrite(data, prev, limit);
+      flushOutput();
+    } else {
+      for (int i = data.position();i < limit;i++) {
+        data.put(i, (byte)(data.get(i) & 0x7F));
+      }
+      output(data);
     }
+    data.position(limit);
   }
 
   protected void onClose() {
+    if (deflater != null) {
+      deflater.end();
+      deflater = null;
+    }
     handler.onClose();
   }
 
   /**
-   * Handle option <code>WILL</code> call back. The implementation will try to find a matching option
-   * via the {@code Option#values()} and invoke it's {@link Option#handleWill(TelnetConnection)} method
+   * Handle option <code>WILL</code> call back. The implementation will try to find the option handler
+   * registered for the option code and invoke its {@link OptionHandler#handleWill(TelnetConnection)} method
    * otherwise a <code>DON'T</code> will be sent to the client.<p>
    *
    * This method can be subclassed to handle an option.
@@ -148,35 +637,32 @@ public abstract class TelnetConnection {
    * @param optionCode the option code
    */
   protected void onOptionWill(byte optionCode) {
-    for (Option option : Option.values()) {
-      if (option.code == optionCode) {
-        option.handleWill(this);
-        return;
-      }
+    OptionHandler option = options[optionCode & 0xFF];
+    if (option != null) {
+      option.handleWill(this);
+    } else {
+      writeDontOption(optionCode);
     }
-    send(new byte[]{BYTE_IAC, BYTE_DONT, optionCode});
   }
 
   /**
-   * Handle option <code>WON'T</code> call back. The implementation will try to find a matching option
-   * via the {@code Option#values()} and invoke it's {@link Option#handleWont(TelnetConnection)} method.<p>
+   * Handle option <code>WON'T</code> call back. The implementation will try to find the option handler
+   * registered for the option code and invoke its {@link OptionHandler#handleWont(TelnetConnection)} method.<p>
    *
    * This method can be subclassed to handle an option.
    *
    * @param optionCode the option code
    */
   protected void onOptionWont(byte optionCode) {
-    for (Option option : Option.values()) {
-      if (option.code == optionCode) {
-        option.handleWont(this);
-        return;
-      }
+    OptionHandler option = options[optionCode & 0xFF];
+    if (option != null) {
+      option.handleWont(this);
     }
   }
 
   /**
-   * Handle option <code>DO</code> call back. The implementation will try to find a matching option
-   * via the {@code Option#values()} and invoke it's {@link Option#handleDo(TelnetConnection)} method
+   * Handle option <code>DO</code> call back. The implementation will try to find the option handler
+   * registered for the option code and invoke its {@link OptionHandler#handleDo(TelnetConnection)} method
    * otherwise a <code>WON'T</code> will be sent to the client.<p>
    *
    * This method can be subclassed to handle an option.
@@ -184,211 +670,41 @@ public abstract class TelnetConnection {
    * @param optionCode the option code
    */
   protected void onOptionDo(byte optionCode) {
-    for (Option option : Option.values()) {
-      if (option.code == optionCode) {
-        option.handleDo(this);
-        return;
-      }
+    OptionHandler option = options[optionCode & 0xFF];
+    if (option != null) {
+      option.handleDo(this);
+    } else {
+      writeWontOption(optionCode);
     }
-    send(new byte[]{BYTE_IAC, BYTE_WONT, optionCode});
   }
 
   /**
-   * Handle option <code>DON'T</code> call back. The implementation will try to find a matching option
-   * via the {@code Option#values()} and invoke it's {@link Option#handleDont(TelnetConnection)} method.<p>
+   * Handle option <code>DON'T</code> call back. The implementation will try to find the option handler
+   * registered for the option code and invoke its {@link OptionHandler#handleDont(TelnetConnection)} method.<p>
    *
    * This method can be subclassed to handle an option.
    *
    * @param optionCode the option code
    */
   protected void onOptionDont(byte optionCode) {
-    for (Option option : Option.values()) {
-      if (option.code == optionCode) {
-        option.handleDont(this);
-        return;
-      }
+    OptionHandler option = options[optionCode & 0xFF];
+    if (option != null) {
+      option.handleDont(this);
     }
   }
 
   /**
-   * Handle option parameters call back. The implementation will try to find a matching option
-   * via the {@code Option#values()} and invoke it's {@link Option#handleParameters(TelnetConnection, byte[])} method.
+   * Handle option parameters call back. The implementation will try to find the option handler registered
+   * for the option code and invoke its {@link OptionHandler#handleParameters(TelnetConnection, byte[])} method.
    *
    * This method can be subclassed to handle an option.
    *
    * @param optionCode the option code
    */
   protected void onOptionParameters(byte optionCode, byte[] parameters) {
-    for (Option option : Option.values()) {
-      if (option.code == optionCode) {
-        option.handleParameters(this, parameters);
-        return;
-      }
-    }
-  }
-
-  /**
-   * Append a byte in the {@link #pendingBuffer} buffer. When the {@link #pendingBuffer} buffer is full, data
-   * is flushed.
-   *
-   * @param b the byte
-   * @see #flushData()
-   */
-  private void appendData(byte b) {
-    if (pendingLength >= pendingBuffer.length) {
-      flushData();
+    OptionHandler option = options[optionCode & 0xFF];
+    if (option != null) {
+      option.handleParameters(this, parameters);
     }
-    pendingBuffer[pendingLength++] = b;
-  }
-
-  /**
-   * Flush the {@link #pendingBuffer} buffer when it is not empty.
-   *
-   * @see #flushData()
-   */
-  private void flushDataIfNecessary() {
-    if (pendingLength > 0) {
-      flushData();
-    }
-  }
-
-  /**
-   * Flush the {@link #pendingBuffer} buffer to {@link TelnetHandler#onData(byte[])}.
-   */
-  private void flushData() {
-    byte[] data = Arrays.copyOf(pendingBuffer, pendingLength);
-    pendingLength = 0;
-    handler.onData(data);
-  }
-
-  enum Status {
-
-    DATA() {
-      @Override
-      void handle(TelnetConnection session, byte b) {
-        if (b == BYTE_IAC) {
-          if (session.receiveBinary) {
-            session.status = ESC;
-          } else {
-            session.flushDataIfNecessary();
-            session.status = IAC;
-          }
-        } else {
-          session.appendData(b);
-        }
-      }
-    },
-
-    ESC() {
-      @Override
-      void handle(TelnetConnection session, byte b) {
-        if (b == BYTE_IAC) {
-          session.appendData((byte)-1);
-        } else {
-          session.flushDataIfNecessary();
-          IAC.handle(session, b);
-        }
-      }
-    },
-
-    IAC() {
-      @Override
-      void handle(TelnetConnection session, byte b) {
-        if (b == BYTE_DO) {
-          session.status = DO;
-        } else if (b == BYTE_DONT) {
-          session.status = DONT;
-        } else if (b == BYTE_WILL) {
-          session.status = WILL;
-        } else if (b == BYTE_WONT) {
-          session.status = WONT;
-        } else if (b == BYTE_SB) {
-          session.paramsBuffer = new byte[100];
-          session.paramsLength = 0;
-          session.status = SB;
-        } else {
-          session.handler.onCommand(b);
-          session.status = DATA;
-        }
-      }
-    },
-
-    SB() {
-      @Override
-      void handle(TelnetConnection session, byte b) {
-        if (session.paramsOptionCode == null) {
-          session.paramsOptionCode = b;
-        } else {
-          if (session.paramsIac) {
-            session.paramsIac = false;
-            if (b == BYTE_SE) {
-              try {
-                session.onOptionParameters(session.paramsOptionCode, Arrays.copyOf(session.paramsBuffer, session.paramsLength));
-              } finally {
-                session.paramsOptionCode = null;
-                session.paramsBuffer = null;
-                session.status = DATA;
-              }
-            } else if (b == BYTE_IAC) {
-              session.appendToParams((byte) -1);
-            }
-          } else {
-            if (b == BYTE_IAC) {
-              session.paramsIac = true;
-            } else {
-              session.appendToParams(b);
-            }
-          }
-        }
-      }
-    },
-
-    DO() {
-      @Override
-      void handle(TelnetConnection session, byte b) {
-        try {
-          session.onOptionDo(b);
-        } finally {
-          session.status = DATA;
-        }
-      }
-    },
-
-    DONT() {
-      @Override
-      void handle(TelnetConnection session, byte b) {
-        try {
-          session.onOptionDont(b);
-        } finally {
-          session.status = DATA;
-        }
-      }
-    },
-
-    WILL() {
-      @Override
-      void handle(TelnetConnection session, byte b) {
-        try {
-          session.onOptionWill(b);
-        } finally {
-          session.status = DATA;
-        }
-      }
-    },
-
-    WONT() {
-      @Override
-      void handle(TelnetConnection session, byte b) {
-        try {
-          session.onOptionWont(b);
-        } finally {
-          session.status = DATA;
-        }
-      }
-    },
-
-    ;
-
-    abstract void handle(TelnetConnection session, byte b);
   }
 }
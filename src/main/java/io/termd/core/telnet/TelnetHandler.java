@@ -16,6 +16,8 @@
 
 package io.termd.core.telnet;
 
+import java.nio.ByteBuffer;
+
 /**
  * The handler that defines the callbacks for a telnet connection.
  *
@@ -42,6 +44,25 @@ public class TelnetHandler {
    */
   protected void onData(byte[] data) {}
 
+  /**
+   * Process data sent by the client, the buffer is only valid during the call. The default implementation
+   * copies the data and calls {@link #onData(byte[])}.
+   *
+   * @param data the data
+   */
+  protected void onData(ByteBuffer data) {
+    byte[] copy = new byte[data.remaining()];
+    data.get(copy);
+    onData(copy);
+  }
+
+  /**
+   * The writability of the connection changed, see {@link TelnetConnection#isWritable()}.
+   *
+   * @param writable the new writability
+   */
+  protected void onWritabilityChanged(boolean writable) {}
+
   protected void onSize(int width, int height) {}
   protected void onTerminalType(String terminalType) {}
   protected void onCommand(byte command) {}
@@ -16,18 +16,29 @@
 
 package io.termd.core.telnet;
 
+import io.termd.core.tty.FlushPolicy;
+import io.termd.core.tty.OverflowPolicy;
 import io.termd.core.tty.ReadBuffer;
 import io.termd.core.tty.TtyEvent;
 import io.termd.core.tty.TtyEventDecoder;
+import io.termd.core.tty.TtyMetrics;
+import io.termd.core.tty.TtyOutputBuffer;
 import io.termd.core.tty.TtyOutputMode;
+import io.termd.core.tty.TtyOutputQueue;
+import io.termd.core.util.CoarseClock;
+import io.termd.core.util.SerialExecutor;
 import io.termd.core.util.Vector;
 import io.termd.core.io.BinaryDecoder;
 import io.termd.core.io.BinaryEncoder;
+import io.termd.core.io.CodePointConsumer;
+import io.termd.core.io.MalformedInputAction;
 import io.termd.core.io.TelnetCharset;
 import io.termd.core.tty.TtyConnection;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -52,18 +63,112 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
   protected TelnetConnection conn;
   private final Charset charset;
   private final TtyEventDecoder eventDecoder = new TtyEventDecoder(3, 26, 4);
-  private final ReadBuffer readBuffer = new ReadBuffer(this::execute);
-  private final BinaryDecoder decoder = new BinaryDecoder(512, TelnetCharset.INSTANCE, readBuffer);
-  private final BinaryEncoder encoder = new BinaryEncoder(StandardCharsets.US_ASCII, data -> conn.write(data));
-  private final Consumer<int[]> stdout = new TtyOutputMode(encoder);
+  private final ReadBuffer readBuffer = new ReadBuffer(this::ioExecute);
+  private final BinaryDecoder decoder = new BinaryDecoder(512, TelnetCharset.INSTANCE, (CodePointConsumer) readBuffer);
+  private final ReadBuffer stdinBuffer = new ReadBuffer(this::execute);
+  private final TtyOutputQueue outputQueue;
+  private final TtyOutputBuffer outputBuffer;
+  private final BinaryEncoder encoder;
+  private final TtyOutputMode stdout;
   private final Consumer<TtyConnection> handler;
-  private long lastAccessedTime = System.currentTimeMillis();
+  private volatile long lastAccessedTime = CoarseClock.currentTimeMillis();
+  private volatile long lastAccessedMonotonicTime = CoarseClock.monotonicTimeMillis();
+  private TtyMetrics metrics = TtyMetrics.NOOP;
+  private Executor handlerExecutor;
+  private long decodeErrors;
+  private boolean compression;
+  private int compressionLevel;
+  private int compressionFlushMode;
 
   public TelnetTtyConnection(boolean inBinary, boolean outBinary, Charset charset, Consumer<TtyConnection> handler) {
+    this(inBinary, outBinary, charset, FlushPolicy.IMMEDIATE, handler);
+  }
+
+  public TelnetTtyConnection(boolean inBinary, boolean outBinary, Charset charset, FlushPolicy flushPolicy, Consumer<TtyConnection> handler) {
+    this(inBinary, outBinary, charset, flushPolicy, OverflowPolicy.DEFAULT, handler);
+  }
+
+  public TelnetTtyConnection(boolean inBinary, boolean outBinary, Charset charset, FlushPolicy flushPolicy, OverflowPolicy overflowPolicy, Consumer<TtyConnection> handler) {
+    this.outputQueue = new TtyOutputQueue(this, overflowPolicy);
+    this.outputBuffer = new TtyOutputBuffer(this, flushPolicy, data -> {
+      if (outputQueue.offer(data.remaining())) {
+        conn.write(data);
+      } else {
+        data.position(data.limit());
+      }
+    });
+    this.encoder = new BinaryEncoder(512, StandardCharsets.US_ASCII, outputBuffer);
+    this.stdout = new TtyOutputMode(encoder).setCharset(StandardCharsets.US_ASCII);
     this.charset = charset;
     this.inBinary = inBinary;
     this.outBinary = outBinary;
     this.handler = handler;
+    this.eventDecoder.setReadHandler(stdinBuffer);
+    this.stdinBuffer.setFlowControlHandler(read -> {
+      if (read) {
+        conn.resume();
+      } else {
+        conn.pause();
+      }
+    });
+  }
+
+  /**
+   * Offer the <i>MCCP2</i> compression of the output to the client, it must be called before the connection
+   * is opened.
+   *
+   * @param level the compression level
+   * @param flushMode the flush mode
+   * @see TelnetConnection#setCompression(int, int)
+   */
+  public void setCompression(int level, int flushMode) {
+    this.compression = true;
+    this.compressionLevel = level;
+    this.compressionFlushMode = flushMode;
+  }
+
+  /**
+   * @return the action taken when a malformed input sequence is decoded
+   */
+  public MalformedInputAction getMalformedInputAction() {
+    return decoder.getMalformedInputAction();
+  }
+
+  /**
+   * Set the action to take when a malformed input sequence is decoded, it is replaced by default.
+   *
+   * @param action the action
+   */
+  public void setMalformedInputAction(MalformedInputAction action) {
+    decoder.setMalformedInputAction(action);
+  }
+
+  /**
+   * Set the metrics of this connection, it must be called before the connection is opened.
+   *
+   * @param metrics the metrics
+   */
+  public void setMetrics(TtyMetrics metrics) {
+    this.metrics = metrics;
+    this.eventDecoder.setMetrics(metrics);
+  }
+
+  /**
+   * Run the handlers of this connection on a {@link SerialExecutor} backed by {@code executor} instead of the
+   * event loop, so they can block without stalling the other connections. The handlers keep being called one at a
+   * time and in order. It must be called before the connection is opened.
+   *
+   * @param executor the executor, for instance {@link SerialExecutor#newThreadPerTaskExecutor()}
+   */
+  public void setHandlerExecutor(Executor executor) {
+    this.handlerExecutor = executor != null ? new SerialExecutor(executor) : null;
+    this.eventDecoder.setEventExecutor(handlerExecutor != null ? stdinBuffer::execute : null);
+    this.stdinBuffer.setDirect(handlerExecutor == null);
+  }
+
+  @Override
+  public TtyMetrics metrics() {
+    return metrics;
   }
 
   @Override
@@ -71,6 +176,11 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
     return lastAccessedTime;
   }
 
+  @Override
+  public long lastAccessedMonotonicTime() {
+    return lastAccessedMonotonicTime;
+  }
+
   @Override
   public String terminalType() {
     return terminalType;
@@ -78,12 +188,34 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
 
   @Override
   public void execute(Runnable task) {
-    conn.execute(task);
+    if (handlerExecutor != null) {
+      handlerExecutor.execute(metrics.instrument(task));
+    } else {
+      conn.execute(metrics.instrument(task));
+    }
   }
 
   @Override
   public void schedule(Runnable task, long delay, TimeUnit unit) {
-    conn.schedule(task, delay, unit);
+    conn.schedule(handlerExecutor != null ? () -> execute(task) : task, delay, unit);
+  }
+
+  /**
+   * Execute a task on the event loop, the input is decoded there whatever the handler executor is.
+   */
+  private void ioExecute(Runnable task) {
+    conn.execute(metrics.instrument(task));
+  }
+
+  /**
+   * Call a handler on the handler executor or directly on the event loop.
+   */
+  private void dispatch(Runnable task) {
+    if (handlerExecutor != null) {
+      handlerExecutor.execute(task);
+    } else {
+      task.run();
+    }
   }
 
   @Override
@@ -96,11 +228,32 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
     return outBinary ? charset : StandardCharsets.US_ASCII;
   }
 
+  @Override
+  public boolean isWritable() {
+    return outputQueue.isWritable();
+  }
+
+  @Override
+  public Consumer<Void> getDrainHandler() {
+    return outputQueue.getDrainHandler();
+  }
+
+  @Override
+  public void setDrainHandler(Consumer<Void> handler) {
+    outputQueue.setDrainHandler(handler);
+  }
+
+  @Override
+  protected void onWritabilityChanged(boolean writable) {
+    outputQueue.setTransportWritable(writable);
+  }
+
   @Override
   protected void onSendBinary(boolean binary) {
     sendingBinary = binary;
     if (binary) {
       encoder.setCharset(charset);
+      stdout.setCharset(charset);
     }
     checkAccept();
   }
@@ -116,13 +269,34 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
 
   @Override
   protected void onData(byte[] data) {
-    lastAccessedTime = System.currentTimeMillis();
+    lastAccessedTime = CoarseClock.currentTimeMillis();
+    lastAccessedMonotonicTime = CoarseClock.monotonicTimeMillis();
+    metrics.bytesRead(data.length);
     decoder.write(data);
+    checkDecodeErrors();
+  }
+
+  @Override
+  protected void onData(ByteBuffer data) {
+    lastAccessedTime = CoarseClock.currentTimeMillis();
+    lastAccessedMonotonicTime = CoarseClock.monotonicTimeMillis();
+    metrics.bytesRead(data.remaining());
+    decoder.write(data);
+    checkDecodeErrors();
+  }
+
+  private void checkDecodeErrors() {
+    long count = decoder.malformedInputCount();
+    if (count != decodeErrors) {
+      metrics.decodeErrors((int) (count - decodeErrors));
+      decodeErrors = count;
+    }
   }
 
   @Override
   protected void onOpen(TelnetConnection conn) {
     this.conn = conn;
+    conn.setWriteLimit(outputQueue.policy().limit());
 
     // Kludge mode
     conn.writeWillOption(Option.ECHO);
@@ -142,6 +316,12 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
     // Get some info about user
     conn.writeDoOption(Option.TERMINAL_TYPE);
 
+    // Output compression
+    if (compression) {
+      conn.setCompression(compressionLevel, compressionFlushMode);
+      conn.writeWillOption(Option.COMPRESS2);
+    }
+
     //
     checkAccept();
   }
@@ -152,7 +332,7 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
         if (!inBinary | (inBinary && receivingBinary)) {
           accepted = true;
           readBuffer.setReadHandler(eventDecoder);
-          handler.accept(this);
+          dispatch(() -> handler.accept(this));
         }
       }
     }
@@ -161,8 +341,9 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
   @Override
   protected void onTerminalType(String terminalType) {
     this.terminalType = terminalType;
-    if (termHandler != null) {
-      termHandler.accept(terminalType);
+    Consumer<String> handler = termHandler;
+    if (handler != null) {
+      dispatch(() -> handler.accept(terminalType));
     }
   }
 
@@ -173,9 +354,11 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
 
   @Override
   protected void onSize(int width, int height) {
-    this.size = new Vector(width, height);
-    if (sizeHandler != null) {
-      sizeHandler.accept(size);
+    Vector size = new Vector(width, height);
+    this.size = size;
+    Consumer<Vector> handler = sizeHandler;
+    if (handler != null) {
+      dispatch(() -> handler.accept(size));
     }
   }
 
@@ -214,12 +397,27 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
 
   @Override
   public Consumer<int[]> getStdinHandler() {
-    return eventDecoder.getReadHandler();
+    return stdinBuffer.getReadHandler();
   }
 
   @Override
   public void setStdinHandler(Consumer<int[]> handler) {
-    eventDecoder.setReadHandler(handler);
+    stdinBuffer.setReadHandler(handler);
+  }
+
+  @Override
+  public void pause() {
+    stdinBuffer.pause();
+  }
+
+  @Override
+  public void resume() {
+    stdinBuffer.resume();
+  }
+
+  @Override
+  public void setInputWaterMarks(int lowWaterMark, int highWaterMark) {
+    stdinBuffer.setWaterMarks(lowWaterMark, highWaterMark);
   }
 
   @Override
@@ -239,13 +437,16 @@ public final class TelnetTtyConnection extends TelnetHandler implements TtyConne
 
   @Override
   protected void onClose() {
-    if (closeHandler != null) {
-      closeHandler.accept(null);
+    outputQueue.close();
+    Consumer<Void> handler = closeHandler;
+    if (handler != null) {
+      dispatch(() -> handler.accept(null));
     }
   }
 
   @Override
   public void close() {
+    outputBuffer.flush();
     conn.close();
   }
 }
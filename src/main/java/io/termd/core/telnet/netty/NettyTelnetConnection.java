@@ -16,12 +16,15 @@
 
 package io.termd.core.telnet.netty;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.WriteBufferWaterMark;
 import io.termd.core.telnet.TelnetConnection;
 import io.termd.core.telnet.TelnetHandler;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -49,7 +52,34 @@ public class NettyTelnetConnection extends TelnetConnection {
   // Not properly synchronized, but ok for now
   @Override
   protected void send(byte[] data) {
-    context.writeAndFlush(Unpooled.buffer().writeBytes(data));
+    context.writeAndFlush(context.alloc().ioBuffer(data.length).writeBytes(data));
+  }
+
+  @Override
+  protected void send(ByteBuffer data) {
+    ByteBuf buf = context.alloc().ioBuffer(data.remaining());
+    buf.writeBytes(data);
+    context.writeAndFlush(buf);
+  }
+
+  @Override
+  public boolean isWritable() {
+    return context.channel().isWritable();
+  }
+
+  @Override
+  public void setWriteLimit(int limit) {
+    context.channel().config().setWriteBufferWaterMark(new WriteBufferWaterMark(limit / 2, limit));
+  }
+
+  @Override
+  public void pause() {
+    context.channel().config().setAutoRead(false);
+  }
+
+  @Override
+  public void resume() {
+    context.channel().config().setAutoRead(true);
   }
 
   @Override
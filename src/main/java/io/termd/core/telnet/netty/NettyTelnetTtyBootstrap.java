@@ -1,13 +1,20 @@
 package io.termd.core.telnet.netty;
 
+import io.termd.core.io.MalformedInputAction;
 import io.termd.core.telnet.TelnetTtyConnection;
+import io.termd.core.tty.FlushPolicy;
+import io.termd.core.tty.OverflowPolicy;
 import io.termd.core.tty.TtyConnection;
+import io.termd.core.tty.TtyMetrics;
 import io.termd.core.util.Helper;
+import io.termd.core.util.SerialExecutor;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
+import java.util.zip.Deflater;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -18,6 +25,14 @@ public class NettyTelnetTtyBootstrap {
   private boolean outBinary;
   private boolean inBinary;
   private Charset charset = StandardCharsets.UTF_8;
+  private FlushPolicy flushPolicy = FlushPolicy.IMMEDIATE;
+  private OverflowPolicy overflowPolicy = OverflowPolicy.DEFAULT;
+  private boolean compression;
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+  private int compressionFlushMode = Deflater.SYNC_FLUSH;
+  private TtyMetrics metrics = TtyMetrics.NOOP;
+  private Executor handlerExecutor;
+  private MalformedInputAction malformedInputAction = MalformedInputAction.REPLACE;
 
   public NettyTelnetTtyBootstrap() {
     this.telnet = new NettyTelnetBootstrap();
@@ -79,6 +94,135 @@ public class NettyTelnetTtyBootstrap {
     this.charset = charset;
   }
 
+  public FlushPolicy getFlushPolicy() {
+    return flushPolicy;
+  }
+
+  /**
+   * Set the policy for flushing the output of the connections.
+   *
+   * @param flushPolicy the flush policy
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setFlushPolicy(FlushPolicy flushPolicy) {
+    this.flushPolicy = flushPolicy;
+    return this;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * Set the policy bounding the output of the connections that has not been written to the clients.
+   *
+   * @param overflowPolicy the overflow policy
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+    return this;
+  }
+
+  public boolean isCompression() {
+    return compression;
+  }
+
+  /**
+   * Enable or disable the MCCP2 compression of the output.
+   *
+   * @param compression true to offer the compression to the clients
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setCompression(boolean compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * Set the output compression level, from {@link Deflater#DEFAULT_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}.
+   *
+   * @param compressionLevel the compression level
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setCompressionLevel(int compressionLevel) {
+    if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+    }
+    this.compressionLevel = compressionLevel;
+    return this;
+  }
+
+  public int getCompressionFlushMode() {
+    return compressionFlushMode;
+  }
+
+  /**
+   * Set the output compression flush mode, {@link Deflater#SYNC_FLUSH} keeps the echo latency low and
+   * {@link Deflater#FULL_FLUSH} allows the client to resynchronize at each flush.
+   *
+   * @param compressionFlushMode the flush mode
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setCompressionFlushMode(int compressionFlushMode) {
+    if (compressionFlushMode != Deflater.SYNC_FLUSH && compressionFlushMode != Deflater.FULL_FLUSH) {
+      throw new IllegalArgumentException("Invalid flush mode " + compressionFlushMode);
+    }
+    this.compressionFlushMode = compressionFlushMode;
+    return this;
+  }
+
+  public TtyMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Set the metrics of the connections, {@link TtyMetrics#forConnection(TtyConnection)} is called for each connection.
+   *
+   * @param metrics the metrics
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setMetrics(TtyMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  public Executor getHandlerExecutor() {
+    return handlerExecutor;
+  }
+
+  /**
+   * Run the handlers of each connection on its own serial executor backed by {@code executor} instead of the
+   * event loop, for applications doing blocking work in their handlers. A {@code null} executor keeps the handlers
+   * on the event loop.
+   *
+   * @param executor the executor, for instance {@link SerialExecutor#newThreadPerTaskExecutor()}
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setHandlerExecutor(Executor executor) {
+    this.handlerExecutor = executor;
+    return this;
+  }
+
+  public MalformedInputAction getMalformedInputAction() {
+    return malformedInputAction;
+  }
+
+  /**
+   * Set the action to take when a malformed input sequence is decoded, it is replaced by default.
+   *
+   * @param action the action
+   * @return this object
+   */
+  public NettyTelnetTtyBootstrap setMalformedInputAction(MalformedInputAction action) {
+    this.malformedInputAction = action;
+    return this;
+  }
+
   public CompletableFuture<?> start(Consumer<TtyConnection> factory) {
     CompletableFuture<?> fut = new CompletableFuture<>();
     start(factory, Helper.startedHandler(fut));
@@ -92,7 +236,16 @@ public class NettyTelnetTtyBootstrap {
   }
 
   public void start(Consumer<TtyConnection> factory, Consumer<Throwable> doneHandler) {
-    telnet.start(() -> new TelnetTtyConnection(inBinary, outBinary, charset, factory), doneHandler);
+    telnet.start(() -> {
+      TelnetTtyConnection conn = new TelnetTtyConnection(inBinary, outBinary, charset, flushPolicy, overflowPolicy, factory);
+      if (compression) {
+        conn.setCompression(compressionLevel, compressionFlushMode);
+      }
+      conn.setMetrics(metrics.forConnection(conn));
+      conn.setHandlerExecutor(handlerExecutor);
+      conn.setMalformedInputAction(malformedInputAction);
+      return conn;
+    }, doneHandler);
   }
 
   public void stop(Consumer<Throwable> doneHandler) {
@@ -22,6 +22,7 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.termd.core.telnet.TelnetHandler;
 import io.termd.core.util.Logging;
 
+import java.nio.ByteBuffer;
 import java.util.function.Supplier;
 
 /**
@@ -41,10 +42,17 @@ public class TelnetChannelHandler extends ChannelInboundHandlerAdapter {
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) {
     ByteBuf buf = (ByteBuf) msg;
-    int size = buf.readableBytes();
-    byte[] data = new byte[size];
-    buf.getBytes(0, data);
-    conn.receive(data);
+    try {
+      if (buf.nioBufferCount() == 1) {
+        conn.receive(buf.nioBuffer());
+      } else {
+        for (ByteBuffer nioBuf : buf.nioBuffers()) {
+          conn.receive(nioBuf);
+        }
+      }
+    } finally {
+      buf.release();
+    }
   }
 
   @Override
@@ -59,6 +67,14 @@ public class TelnetChannelHandler extends ChannelInboundHandlerAdapter {
     this.conn = null;
   }
 
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    if (conn != null) {
+      conn.onWritabilityChanged();
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+
   @Override
   public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
     Logging.logReportedIoError(cause);
@@ -190,10 +190,12 @@ public abstract class OpCode {
 
     @Override
     public void eval(EvalContext context) {
-      if (context.getParametersLength() < 2) {
+      // Increments the first two parameters, capabilities like hpa or vpa have a single parameter
+      int length = Math.min(2, context.getParametersLength());
+      if (length == 0) {
         throw new IllegalArgumentException("Missing parameters");
       }
-      for (int i = 0;i < 2; i++) {
+      for (int i = 0;i < length; i++) {
         context.setParameter(i, Integer.toString((Integer.parseInt(context.getParameter(i)) + 1)));
       }
     }
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.termd.core.tty;
+
+import io.termd.core.util.Histogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the metrics of the connections with {@link LongAdder} counters and {@link Histogram} histograms, a
+ * single instance can be shared by the connections of a bootstrap. The metrics are read with {@link #snapshot()}.<p/>
+ *
+ * Each connection records its metrics in the child returned by {@link #forConnection(TtyConnection)}, the child
+ * metrics are rolled up into its parent so the bootstrap instance aggregates all the connections.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class DefaultTtyMetrics implements TtyMetrics {
+
+  private final DefaultTtyMetrics parent;
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder codePointsDecoded = new LongAdder();
+  private final LongAdder decodeErrors = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+  private final LongAdder flushes = new LongAdder();
+  private final Histogram writeSize = new Histogram();
+  private final Histogram outputQueue = new Histogram();
+  private final Histogram taskLatency = new Histogram();
+
+  public DefaultTtyMetrics() {
+    this(null);
+  }
+
+  private DefaultTtyMetrics(DefaultTtyMetrics parent) {
+    this.parent = parent;
+  }
+
+  /**
+   * @return the metrics this object is rolled up into or {@code null} for the aggregate
+   */
+  public DefaultTtyMetrics parent() {
+    return parent;
+  }
+
+  /**
+   * @param conn the connection
+   * @return a child recording the metrics of the connection and rolling them up into this object
+   */
+  @Override
+  public DefaultTtyMetrics forConnection(TtyConnection conn) {
+    return new DefaultTtyMetrics(this);
+  }
+
+  @Override
+  public void bytesRead(int bytes) {
+    bytesRead.add(bytes);
+    if (parent != null) {
+      parent.bytesRead(bytes);
+    }
+  }
+
+  @Override
+  public void codePointsDecoded(int count) {
+    codePointsDecoded.add(count);
+    if (parent != null) {
+      parent.codePointsDecoded(count);
+    }
+  }
+
+  @Override
+  public void decodeErrors(int count) {
+    decodeErrors.add(count);
+    if (parent != null) {
+      parent.decodeErrors(count);
+    }
+  }
+
+  @Override
+  public void bytesWritten(int bytes) {
+    bytesWritten.add(bytes);
+    writeSize.record(bytes);
+    if (parent != null) {
+      parent.bytesWritten(bytes);
+    }
+  }
+
+  @Override
+  public void flushed() {
+    flushes.increment();
+    if (parent != null) {
+      parent.flushed();
+    }
+  }
+
+  @Override
+  public void outputQueued(long pending) {
+    outputQueue.record(pending);
+    if (parent != null) {
+      parent.outputQueued(pending);
+    }
+  }
+
+  @Override
+  public Runnable instrument(Runnable task) {
+    long submitted = System.nanoTime();
+    return () -> {
+      taskLatency(System.nanoTime() - submitted);
+      task.run();
+    };
+  }
+
+  private void taskLatency(long latency) {
+    taskLatency.record(latency);
+    if (parent != null) {
+      parent.taskLatency(latency);
+    }
+  }
+
+  /**
+   * @return a snapshot of the metrics
+   */
+  public Snapshot snapshot() {
+    return new Snapshot(this);
+  }
+
+  /**
+   * An immutable view of the metrics.
+   */
+  public static class Snapshot {
+
+    private final long bytesRead;
+    private final long codePointsDecoded;
+    private final long decodeErrors;
+    private final long bytesWritten;
+    private final long flushes;
+    private final Histogram.Snapshot writeSize;
+    private final Histogram.Snapshot outputQueue;
+    private final Histogram.Snapshot taskLatency;
+
+    private Snapshot(DefaultTtyMetrics metrics) {
+      bytesRead = metrics.bytesRead.sum();
+      codePointsDecoded = metrics.codePointsDecoded.sum();
+      decodeErrors = metrics.decodeErrors.sum();
+      bytesWritten = metrics.bytesWritten.sum();
+      flushes = metrics.flushes.sum();
+      writeSize = metrics.writeSize.snapshot();
+      outputQueue = metrics.outputQueue.snapshot();
+      taskLatency = metrics.taskLatency.snapshot();
+    }
+
+    /**
+     * @return the number of bytes received from the clients
+     */
+    public long bytesRead() {
+      return bytesRead;
+    }
+
+    /**
+     * @return the number of code points decoded from the input
+     */
+    public long codePointsDecoded() {
+      return codePointsDecoded;
+    }
+
+    /**
+     * @return the number of malformed input sequences
+     */
+    public long decodeErrors() {
+      return decodeErrors;
+    }
+
+    /**
+     * @return the number of bytes written to the transports
+     */
+    public long bytesWritten() {
+      return bytesWritten;
+    }
+
+    /**
+     * @return the number of writes to the transports
+     */
+    public long writes() {
+      return writeSize.count();
+    }
+
+    /**
+     * @return the number of output buffer flushes
+     */
+    public long flushes() {
+      return flushes;
+    }
+
+    /**
+     * @return the size in bytes of the writes to the transports
+     */
+    public Histogram.Snapshot writeSize() {
+      return writeSize;
+    }
+
+    /**
+     * @return the bytes queued by the transports, sampled when bytes are queued
+     */
+    public Histogram.Snapshot outputQueue() {
+      return outputQueue;
+    }
+
+    /**
+     * @return the latency in nanoseconds between the submission and the execution of the connection tasks
+     */
+    public Histogram.Snapshot taskLatency() {
+      return taskLatency;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.tty;
+
+/**
+ * Defines when the output of a {@link TtyConnection} is flushed to the client. The output is buffered until
+ * it reaches the byte {@code threshold} or until a flush is triggered:
+ *
+ * <ul>
+ *   <li>{@link #IMMEDIATE}: every write is flushed, there is no buffering</li>
+ *   <li>{@link #endOfTask(int)}: the output is flushed by a task executed after the current task of the connection</li>
+ *   <li>{@link #maxLatency(int, long)}: the output is flushed after a maximum latency</li>
+ * </ul>
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public final class FlushPolicy {
+
+  /**
+   * Flush every write.
+   */
+  public static final FlushPolicy IMMEDIATE = new FlushPolicy(0, 0);
+
+  /**
+   * Buffer the output and flush it at the end of the current connection task.
+   *
+   * @param threshold the number of bytes that triggers a flush
+   * @return the policy
+   */
+  public static FlushPolicy endOfTask(int threshold) {
+    return new FlushPolicy(threshold, 0);
+  }
+
+  /**
+   * Buffer the output and flush it after a max latency.
+   *
+   * @param threshold the number of bytes that triggers a flush
+   * @param maxLatency the max latency in microseconds
+   * @return the policy
+   */
+  public static FlushPolicy maxLatency(int threshold, long maxLatency) {
+    if (maxLatency <= 0) {
+      throw new IllegalArgumentException("Max latency must be > 0");
+    }
+    return new FlushPolicy(threshold, maxLatency);
+  }
+
+  private final int threshold;
+  private final long maxLatency;
+
+  private FlushPolicy(int threshold, long maxLatency) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("Threshold must be >= 0");
+    }
+    this.threshold = threshold;
+    this.maxLatency = maxLatency;
+  }
+
+  /**
+   * @return the number of buffered bytes that triggers a flush, {@code 0} means no buffering
+   */
+  public int threshold() {
+    return threshold;
+  }
+
+  /**
+   * @return the max latency in microseconds, {@code 0} means the end of the current task
+   */
+  public long maxLatency() {
+    return maxLatency;
+  }
+
+  @Override
+  public String toString() {
+    return "FlushPolicy[threshold=" + threshold + ",maxLatency=" + maxLatency + "]";
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.termd.core.tty;
+
+import io.termd.core.util.CoarseClock;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Closes the connections that did not receive input for an idle timeout, optionally writing a warning message to
+ * the connection before closing it.<p/>
+ *
+ * The connections are kept in a hashed timing wheel advanced by a single periodic task of the scheduler, a
+ * connection is only checked when its slot expires: it is rescheduled when it received input in the meantime,
+ * otherwise it is warned or closed. The scheduler can be the event loop of the connections so each event loop has
+ * its own reaper. The warning and the close are executed with {@link TtyConnection#execute(Runnable)}.<p/>
+ *
+ * The time is read from the {@link CoarseClock#monotonicTimeMillis() monotonic clock}, like
+ * {@link TtyConnection#lastAccessedMonotonicTime()}, so a change of the system time neither closes the connections
+ * early nor keeps the idle connections open.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class IdleSessionReaper {
+
+  public static final long DEFAULT_TICK_MS = 1000;
+  public static final int DEFAULT_WHEEL_SIZE = 64;
+
+  private static class Session {
+
+    final TtyConnection conn;
+    long deadline;
+    long warnedAccess = -1;
+    Session prev;
+    Session next;
+    int slot = -1;
+
+    Session(TtyConnection conn) {
+      this.conn = conn;
+    }
+  }
+
+  private final ScheduledExecutorService scheduler;
+  private final LongSupplier clock;
+  private final long idleTimeout;
+  private final long tickMs;
+  private final Session[] wheel;
+  private final Map<TtyConnection, Session> sessions = new IdentityHashMap<>();
+  private final AtomicLong warned = new AtomicLong();
+  private final AtomicLong reaped = new AtomicLong();
+  private String warning;
+  private long warningDelay;
+  private long tick;
+  private ScheduledFuture<?> future;
+
+  /**
+   * Create a reaper with a tick of {@link #DEFAULT_TICK_MS} ms.
+   *
+   * @param scheduler the scheduler running the ticks
+   * @param idleTimeout the idle timeout
+   * @param unit the idle timeout unit
+   */
+  public IdleSessionReaper(ScheduledExecutorService scheduler, long idleTimeout, TimeUnit unit) {
+    this(scheduler, idleTimeout, unit, DEFAULT_TICK_MS, CoarseClock::monotonicTimeMillis);
+  }
+
+  IdleSessionReaper(ScheduledExecutorService scheduler, long idleTimeout, TimeUnit unit, long tickMs, LongSupplier clock) {
+    if (idleTimeout <= 0) {
+      throw new IllegalArgumentException("Invalid idle timeout " + idleTimeout);
+    }
+    if (tickMs <= 0) {
+      throw new IllegalArgumentException("Invalid tick " + tickMs);
+    }
+    this.scheduler = scheduler;
+    this.clock = clock;
+    this.idleTimeout = unit.toMillis(idleTimeout);
+    this.tickMs = tickMs;
+    this.wheel = new Session[DEFAULT_WHEEL_SIZE];
+    this.tick = clock.getAsLong() / tickMs;
+  }
+
+  /**
+   * Write a warning message to the connections before they are closed, it should be set before adding connections.
+   *
+   * @param message the warning message
+   * @param delay how long before the close the message is written
+   * @param unit the delay unit
+   * @return this object
+   */
+  public synchronized IdleSessionReaper setWarning(String message, long delay, TimeUnit unit) {
+    this.warning = message;
+    this.warningDelay = Math.min(unit.toMillis(delay), idleTimeout);
+    return this;
+  }
+
+  /**
+   * Start the periodic task.
+   *
+   * @return this object
+   */
+  public synchronized IdleSessionReaper start() {
+    if (future == null) {
+      future = scheduler.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+    return this;
+  }
+
+  /**
+   * Stop the periodic task, the connections are not closed.
+   */
+  public synchronized void stop() {
+    if (future != null) {
+      future.cancel(false);
+      future = null;
+    }
+  }
+
+  /**
+   * Add a connection to the reaper.
+   *
+   * @param conn the connection
+   */
+  public synchronized void add(TtyConnection conn) {
+    if (!sessions.containsKey(conn)) {
+      Session session = new Session(conn);
+      sessions.put(conn, session);
+      schedule(session, nextDeadline(session, conn.lastAccessedMonotonicTime()));
+    }
+  }
+
+  /**
+   * Remove a connection from the reaper, it should be called when the connection is closed.
+   *
+   * @param conn the connection
+   * @return true if the connection was removed
+   */
+  public synchronized boolean remove(TtyConnection conn) {
+    Session session = sessions.remove(conn);
+    if (session != null) {
+      unlink(session);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of connections watched by the reaper
+   */
+  public synchronized int sessions() {
+    return sessions.size();
+  }
+
+  /**
+   * @return the number of warnings written
+   */
+  public long warned() {
+    return warned.get();
+  }
+
+  /**
+   * @return the number of connections closed
+   */
+  public long reaped() {
+    return reaped.get();
+  }
+
+  /**
+   * Advance the wheel to the current time and process the expired slots.
+   */
+  void tick() {
+    List<Runnable> actions = new ArrayList<>();
+    synchronized (this) {
+      long now = clock.getAsLong();
+      long target = now / tickMs;
+      // Process at most one revolution, the sessions of skipped ticks are all in the processed slots
+      long from = Math.max(tick + 1, target - wheel.length + 1);
+      for (long t = from;t <= target;t++) {
+        tick = t;
+        expire((int) (t % wheel.length), now, actions);
+      }
+      tick = Math.max(tick, target);
+    }
+    actions.forEach(Runnable::run);
+  }
+
+  private void expire(int slot, long now, List<Runnable> actions) {
+    Session session = wheel[slot];
+    while (session != null) {
+      Session next = session.next;
+      if (session.deadline <= now) {
+        unlink(session);
+        check(session, now, actions);
+      }
+      session = next;
+    }
+  }
+
+  private void check(Session session, long now, List<Runnable> actions) {
+    TtyConnection conn = session.conn;
+    long lastAccess = conn.lastAccessedMonotonicTime();
+    if (now >= lastAccess + idleTimeout) {
+      sessions.remove(conn);
+      reaped.incrementAndGet();
+      actions.add(() -> conn.execute(conn::close));
+    } else {
+      if (warning != null && session.warnedAccess != lastAccess && now >= lastAccess + idleTimeout - warningDelay) {
+        session.warnedAccess = lastAccess;
+        warned.incrementAndGet();
+        String message = warning;
+        actions.add(() -> conn.execute(() -> conn.write(message)));
+      }
+      schedule(session, nextDeadline(session, lastAccess));
+    }
+  }
+
+  private long nextDeadline(Session session, long lastAccess) {
+    long closeAt = lastAccess + idleTimeout;
+    if (warning != null && session.warnedAccess != lastAccess) {
+      return closeAt - warningDelay;
+    }
+    return closeAt;
+  }
+
+  private void schedule(Session session, long deadline) {
+    session.deadline = deadline;
+    // The slot of the first tick at or after the deadline that is not processed yet
+    long t = Math.max((deadline + tickMs - 1) / tickMs, tick + 1);
+    int slot = (int) (t % wheel.length);
+    session.slot = slot;
+    session.prev = null;
+    session.next = wheel[slot];
+    if (session.next != null) {
+      session.next.prev = session;
+    }
+    wheel[slot] = session;
+  }
+
+  private void unlink(Session session) {
+    if (session.slot != -1) {
+      if (session.prev != null) {
+        session.prev.next = session.next;
+      } else {
+        wheel[session.slot] = session.next;
+      }
+      if (session.next != null) {
+        session.next.prev = session.prev;
+      }
+      session.prev = session.next = null;
+      session.slot = -1;
+    }
+  }
+}
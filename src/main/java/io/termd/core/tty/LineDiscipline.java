@@ -0,0 +1,313 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.termd.core.tty;
+
+import io.termd.core.io.CodePointBuffer;
+import io.termd.core.util.Wcwidth;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A canonical mode line discipline, the equivalent of {@code stty icanon echo}: the input is edited with the
+ * {@link TtyEvent#ERASE}, {@link TtyEvent#WERASE}, {@link TtyEvent#KILL} and {@link TtyEvent#LNEXT} characters and
+ * delivered line by line.<p/>
+ *
+ * It is a lightweight alternative to {@link io.termd.core.readline.Readline} for clients that only need to read
+ * lines: there is no keymap and no screen redraw, the line is stored in a fixed size buffer and the echo of an input
+ * chunk is written in a single write. An application can switch a connection between raw mode (its own stdin
+ * handler), cooked mode with this class and {@link io.termd.core.readline.Readline}.<p/>
+ *
+ * Like {@link io.termd.core.readline.Readline}, {@code Ctrl-C} discards the line and prints the prompt again and
+ * {@code Ctrl-D} on an empty line ends the interaction with a {@code null} line. {@code Ctrl-D} on a non empty line
+ * delivers the line without the line terminator. A line is terminated by {@code \r} or {@code \n}, the {@code \n} or
+ * {@code \0} following a {@code \r} is ignored. The backspace character is handled as an erase. The other control
+ * characters are part of the line and echoed in the {@code ^X} notation. The input following a line is kept for the
+ * next {@link #readline} call.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class LineDiscipline {
+
+  public static final int DEFAULT_MAX_LENGTH = 4096;
+
+  private static final TtyEvent[] EVENTS = TtyEvent.values();
+  private static final int[] NO_INPUT = new int[0];
+
+  private final int[] line;
+  private final int[] controlChars = new int[EVENTS.length];
+  private int length;
+  private boolean echo = true;
+  private final CodePointBuffer echoBuf = new CodePointBuffer(64);
+  private boolean literalNext;
+  private boolean afterCR;
+  private int[] pending;
+  private TtyConnection conn;
+  private String prompt;
+  private Consumer<String> requestHandler;
+  private Consumer<int[]> prevStdinHandler;
+  private BiConsumer<TtyEvent, Integer> prevEventHandler;
+
+  public LineDiscipline() {
+    this(DEFAULT_MAX_LENGTH);
+  }
+
+  /**
+   * @param maxLength the maximum length of a line in code points, the input exceeding this length is rejected
+   *                  with a bell
+   */
+  public LineDiscipline(int maxLength) {
+    if (maxLength < 1) {
+      throw new IllegalArgumentException("Invalid max length " + maxLength);
+    }
+    line = new int[maxLength];
+    Arrays.fill(controlChars, -1);
+    for (TtyEvent event : new TtyEvent[]{TtyEvent.INTR, TtyEvent.EOF, TtyEvent.ERASE, TtyEvent.KILL, TtyEvent.WERASE, TtyEvent.LNEXT}) {
+      controlChars[event.ordinal()] = event.codePoint();
+    }
+  }
+
+  /**
+   * @param event the event
+   * @return the control char of the event or {@code -1} when it is disabled
+   */
+  public synchronized int getControlChar(TtyEvent event) {
+    return controlChars[event.ordinal()];
+  }
+
+  /**
+   * Set the control char of an event, only the {@link TtyEvent#INTR}, {@link TtyEvent#EOF}, {@link TtyEvent#ERASE},
+   * {@link TtyEvent#KILL}, {@link TtyEvent#WERASE} and {@link TtyEvent#LNEXT} events are used.
+   *
+   * @param event the event
+   * @param controlChar the control char or {@code -1} to disable the event
+   * @return this object
+   */
+  public synchronized LineDiscipline setControlChar(TtyEvent event, int controlChar) {
+    controlChars[event.ordinal()] = controlChar;
+    return this;
+  }
+
+  public synchronized boolean isEcho() {
+    return echo;
+  }
+
+  /**
+   * @param echo whether the input is echoed, it should be disabled for reading a password
+   * @return this object
+   */
+  public synchronized LineDiscipline setEcho(boolean echo) {
+    this.echo = echo;
+    return this;
+  }
+
+  /**
+   * Read a line.
+   *
+   * @param conn the connection
+   * @param prompt the prompt
+   * @param requestHandler the handler called with the line or {@code null} when the input ends
+   */
+  public void readline(TtyConnection conn, String prompt, Consumer<String> requestHandler) {
+    synchronized (this) {
+      if (this.conn != null) {
+        throw new IllegalStateException("Already reading a line");
+      }
+      this.conn = conn;
+      this.prompt = prompt;
+      this.requestHandler = requestHandler;
+      prevStdinHandler = conn.getStdinHandler();
+      prevEventHandler = conn.getEventHandler();
+    }
+    conn.setStdinHandler(this::handle);
+    conn.setEventHandler(null);
+    conn.write(prompt);
+    synchronized (this) {
+      if (pending == null) {
+        return;
+      }
+    }
+    conn.execute(() -> handle(NO_INPUT));
+  }
+
+  /**
+   * Cancel the current interaction if there is one, the request handler is called with {@code null}.
+   *
+   * @return true if an interaction was cancelled
+   */
+  public boolean cancel() {
+    Consumer<String> handler;
+    synchronized (this) {
+      if (conn == null) {
+        return false;
+      }
+      handler = end();
+    }
+    handler.accept(null);
+    return true;
+  }
+
+  private void handle(int[] data) {
+    Consumer<String> handler;
+    String result;
+    synchronized (this) {
+      if (pending != null) {
+        int[] tmp = Arrays.copyOf(pending, pending.length + data.length);
+        System.arraycopy(data, 0, tmp, pending.length, data.length);
+        data = tmp;
+        pending = null;
+      }
+      if (conn == null) {
+        pending = data.length > 0 ? data : null;
+        return;
+      }
+      echoBuf.clear();
+      int index = 0;
+      int status = 0;
+      while (index < data.length && status == 0) {
+        status = process(data[index++]);
+      }
+      if (index < data.length) {
+        pending = Arrays.copyOfRange(data, index, data.length);
+      }
+      flushEcho();
+      if (status == 0) {
+        return;
+      }
+      result = status > 0 ? new String(line, 0, length) : null;
+      handler = end();
+    }
+    handler.accept(result);
+  }
+
+  /**
+   * Process a code point.
+   *
+   * @return {@code 0} to continue, {@code 1} when a line is read and {@code -1} at the end of the input
+   */
+  private int process(int cp) {
+    if (afterCR) {
+      afterCR = false;
+      if (cp == '\n' || cp == 0) {
+        return 0;
+      }
+    }
+    if (literalNext) {
+      literalNext = false;
+      insert(cp);
+      return 0;
+    }
+    if (cp == '\r' || cp == '\n') {
+      afterCR = cp == '\r';
+      echo('\n');
+      return 1;
+    } else if (cp == controlChars[TtyEvent.ERASE.ordinal()] || cp == '\b') {
+      erase(1);
+    } else if (cp == controlChars[TtyEvent.WERASE.ordinal()]) {
+      int n = 0;
+      while (n < length && Character.isWhitespace(line[length - 1 - n])) {
+        n++;
+      }
+      while (n < length && !Character.isWhitespace(line[length - 1 - n])) {
+        n++;
+      }
+      erase(n);
+    } else if (cp == controlChars[TtyEvent.KILL.ordinal()]) {
+      erase(length);
+    } else if (cp == controlChars[TtyEvent.LNEXT.ordinal()]) {
+      literalNext = true;
+    } else if (cp == controlChars[TtyEvent.EOF.ordinal()]) {
+      return length > 0 ? 1 : -1;
+    } else if (cp == controlChars[TtyEvent.INTR.ordinal()]) {
+      length = 0;
+      echo('^');
+      echo(cp ^ 64);
+      output('\n');
+      for (int i = 0;i < prompt.length();) {
+        int c = prompt.codePointAt(i);
+        output(c);
+        i += Character.charCount(c);
+      }
+    } else {
+      insert(cp);
+    }
+    return 0;
+  }
+
+  private void insert(int cp) {
+    if (length == line.length) {
+      echo('\007');
+      return;
+    }
+    line[length++] = cp;
+    if (isControl(cp)) {
+      echo('^');
+      echo(cp ^ 64);
+    } else {
+      echo(cp);
+    }
+  }
+
+  private void erase(int n) {
+    while (n-- > 0) {
+      int cp = line[--length];
+      int width = isControl(cp) ? 2 : Math.max(Wcwidth.of(cp), 0);
+      while (width-- > 0) {
+        echo('\b');
+        echo(' ');
+        echo('\b');
+      }
+    }
+  }
+
+  private static boolean isControl(int cp) {
+    return cp < 32 || cp == 127;
+  }
+
+  private void echo(int cp) {
+    if (echo) {
+      output(cp);
+    }
+  }
+
+  private void output(int cp) {
+    echoBuf.append(cp);
+  }
+
+  private void flushEcho() {
+    if (echoBuf.length() > 0) {
+      echoBuf.writeTo(conn.stdoutHandler());
+      echoBuf.clear();
+    }
+  }
+
+  private Consumer<String> end() {
+    Consumer<String> handler = requestHandler;
+    length = 0;
+    literalNext = false;
+    conn.setStdinHandler(prevStdinHandler);
+    conn.setEventHandler(prevEventHandler);
+    conn = null;
+    prompt = null;
+    requestHandler = null;
+    prevStdinHandler = null;
+    prevEventHandler = null;
+    return handler;
+  }
+}
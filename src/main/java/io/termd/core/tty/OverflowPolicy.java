@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.tty;
+
+/**
+ * Bounds the output of a {@link TtyConnection} that has not been written to the client yet. When more than
+ * {@code limit} bytes are pending the connection is not writable anymore and becomes writable again when half
+ * of the limit has been written, the {@link Action} defines what happens to the output written in the meantime:
+ *
+ * <ul>
+ *   <li>{@link Action#BLOCK}: the output is queued and the input of the connection is paused until the output
+ *   is writable again, the producers are expected to wait for the drain handler</li>
+ *   <li>{@link Action#DROP}: the output is discarded</li>
+ *   <li>{@link Action#DISCONNECT}: the connection is closed</li>
+ * </ul>
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public final class OverflowPolicy {
+
+  public enum Action {
+    BLOCK, DROP, DISCONNECT
+  }
+
+  /**
+   * The default policy, it pauses the input and blocks the producers when more than 64kb are pending.
+   */
+  public static final OverflowPolicy DEFAULT = new OverflowPolicy(64 * 1024, Action.BLOCK);
+
+  /**
+   * @param limit the max number of pending bytes
+   * @return a policy that queues the output, pauses the input and blocks the producers
+   */
+  public static OverflowPolicy block(int limit) {
+    return new OverflowPolicy(limit, Action.BLOCK);
+  }
+
+  /**
+   * @param limit the max number of pending bytes
+   * @return a policy that discards the output
+   */
+  public static OverflowPolicy drop(int limit) {
+    return new OverflowPolicy(limit, Action.DROP);
+  }
+
+  /**
+   * @param limit the max number of pending bytes
+   * @return a policy that closes the connection
+   */
+  public static OverflowPolicy disconnect(int limit) {
+    return new OverflowPolicy(limit, Action.DISCONNECT);
+  }
+
+  private final int limit;
+  private final Action action;
+
+  private OverflowPolicy(int limit, Action action) {
+    if (limit < 2) {
+      throw new IllegalArgumentException("Limit must be >= 2");
+    }
+    this.limit = limit;
+    this.action = action;
+  }
+
+  /**
+   * @return the number of pending bytes that makes the connection not writable
+   */
+  public int limit() {
+    return limit;
+  }
+
+  /**
+   * @return the number of pending bytes under which the connection becomes writable again
+   */
+  public int lowWaterMark() {
+    return limit / 2;
+  }
+
+  /**
+   * @return the action applied to the output written when the connection is not writable
+   */
+  public Action action() {
+    return action;
+  }
+
+  @Override
+  public String toString() {
+    return "OverflowPolicy[limit=" + limit + ",action=" + action + "]";
+  }
+}
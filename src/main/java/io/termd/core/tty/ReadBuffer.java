@@ -14,65 +14,340 @@
  * limitations under the License.
  */
 
+
 package io.termd.core.tty;
 
-import java.util.ArrayDeque;
+import io.termd.core.io.CodePointConsumer;
+
+import java.util.Arrays;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 /**
+ * Buffers the input of a connection when there is no read handler or when the buffer is paused.<p/>
+ *
+ * The buffer is lock-free: any thread can write to it, the chunks are delivered to the read handler by a single
+ * thread at a time. The input is delivered directly when the buffer is empty, otherwise the pending chunks are
+ * drained in a single task of the executor and the adjacent chunks smaller than {@link #MERGE_LIMIT} code points
+ * are merged.<p/>
+ *
+ * The flow control handler is called with {@code false} when the buffered input reaches the high water mark
+ * so the transport stops reading from the client and with {@code true} when it drops to the low water mark.
+ * The water marks are expressed in code points.<p/>
+ *
+ * The input is never dropped: the {@code capacity} bounds the high water mark, so the transport is asked to stop
+ * reading at the latest when the buffer is full. The input the transport still writes past the capacity, for
+ * instance the data in flight when it stops reading, is buffered and counted by {@link #overflowed()}.<p/>
+ *
+ * The direct delivery can be disabled with {@link #setDirect(boolean)} so the read handler always runs on the
+ * executor.<p/>
+ *
+ * A task passed to {@link #execute(Runnable)} is run in order with the buffered input, it allows to deliver
+ * the events decoded from the input, like signals, in the order the client sent them.<p/>
+ *
+ * When the buffer is empty a slice passed to {@link #accept(int[], int, int)} is delivered without copying to a
+ * read handler that is a {@link CodePointConsumer}, the slice is copied when it has to be buffered.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
-public class ReadBuffer implements Consumer<int[]> {
+public class ReadBuffer implements Consumer<int[]>, CodePointConsumer {
+
+  public static final int DEFAULT_LOW_WATER_MARK = 4 * 1024;
+  public static final int DEFAULT_HIGH_WATER_MARK = 16 * 1024;
+  public static final int DEFAULT_CAPACITY = 64 * 1024;
 
-  private final Queue<int[]> queue = new ArrayDeque<>(10);
+  /**
+   * The maximum size of a chunk merged from buffered chunks.
+   */
+  public static final int MERGE_LIMIT = 1024;
+
+  private final Queue<Object> queue = new ConcurrentLinkedQueue<>();
   private final Executor executor;
+  private final int capacity;
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicInteger wip = new AtomicInteger();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final Object flowLock = new Object();
+  private boolean readPaused;
+  private final AtomicLong overflowed = new AtomicLong();
   private volatile Consumer<int[]> readHandler;
+  private volatile Consumer<Boolean> flowControlHandler;
+  private volatile int lowWaterMark = DEFAULT_LOW_WATER_MARK;
+  private volatile int highWaterMark = DEFAULT_HIGH_WATER_MARK;
+  private volatile boolean paused;
+  private volatile boolean direct = true;
 
   public ReadBuffer(Executor executor) {
+    this(executor, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param executor the executor of the drain tasks
+   * @param capacity the number of buffered code points at which the transport is asked to stop reading
+   */
+  public ReadBuffer(Executor executor, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity);
+    }
     this.executor = executor;
+    this.capacity = capacity;
   }
 
   @Override
   public void accept(int[] data) {
-    queue.add(data);
-    while (readHandler != null && queue.size() > 0) {
-      data = queue.poll();
-      if (data != null) {
-        readHandler.accept(data);
+    enqueue(data);
+    if (direct) {
+      drain();
+    } else {
+      scheduleDrain();
+    }
+  }
+
+  @Override
+  public void accept(int[] data, int offset, int length) {
+    Consumer<int[]> handler = readHandler;
+    if (direct && handler instanceof CodePointConsumer && !paused && queue.isEmpty() && wip.compareAndSet(0, 1)) {
+      // Recheck now that this thread is the only one delivering
+      if (handler == readHandler && !paused && queue.isEmpty()) {
+        ((CodePointConsumer) handler).accept(data, offset, length);
+      } else {
+        enqueue(Arrays.copyOfRange(data, offset, offset + length));
+      }
+      drainLoop(1);
+    } else {
+      accept(Arrays.copyOfRange(data, offset, offset + length));
+    }
+  }
+
+  /**
+   * Run a task after the input buffered so far has been delivered to the read handler. When the buffer is paused
+   * or has no read handler the task is handed to the executor immediately, the pause holds only the input.
+   *
+   * @param task the task
+   */
+  public void execute(Runnable task) {
+    if (paused || readHandler == null) {
+      executor.execute(task);
+    } else {
+      queue.add(task);
+      if (direct) {
+        drain();
+      } else {
+        scheduleDrain();
       }
     }
   }
 
+  /**
+   * @return true when the input can be delivered directly by the thread writing to the buffer
+   */
+  public boolean isDirect() {
+    return direct;
+  }
+
+  /**
+   * Set whether the input can be delivered directly by the thread writing to the buffer, when it is {@code false}
+   * the input is always delivered by a task of the executor, so the read handler never runs on the writing thread.
+   *
+   * @param direct the direct delivery
+   * @return this object
+   */
+  public ReadBuffer setDirect(boolean direct) {
+    this.direct = direct;
+    return this;
+  }
+
   public Consumer<int[]> getReadHandler() {
     return readHandler;
   }
 
   public void setReadHandler(final Consumer<int[]> readHandler) {
-    if (readHandler != null) {
-      if (this.readHandler != null) {
-        this.readHandler = readHandler;
-      } else {
-        ReadBuffer.this.readHandler = readHandler;
-        drainQueue();
-      }
-    } else {
-      this.readHandler = null;
+    Consumer<int[]> prev = this.readHandler;
+    this.readHandler = readHandler;
+    if (readHandler != null && prev == null) {
+      scheduleDrain();
     }
   }
 
-  private void drainQueue() {
-    if (queue.size() > 0 && readHandler != null) {
-      executor.execute(() -> {
-        if (readHandler != null) {
-          final int[] data = queue.poll();
-          if (data != null) {
-            readHandler.accept(data);
-            drainQueue();
+  /**
+   * @return the number of buffered code points
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * @return the number of buffered code points at which the transport is asked to stop reading
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of code points buffered while the buffer was full
+   */
+  public long overflowed() {
+    return overflowed.get();
+  }
+
+  public Consumer<Boolean> getFlowControlHandler() {
+    return flowControlHandler;
+  }
+
+  /**
+   * Set the handler called when the transport should stop or resume reading from the client.
+   *
+   * @param handler the flow control handler
+   */
+  public void setFlowControlHandler(Consumer<Boolean> handler) {
+    this.flowControlHandler = handler;
+    checkWaterMarks();
+  }
+
+  /**
+   * Set the water marks of the buffer.
+   *
+   * @param lowWaterMark the number of code points under which the transport resumes reading
+   * @param highWaterMark the number of code points above which the transport stops reading
+   */
+  public void setWaterMarks(int lowWaterMark, int highWaterMark) {
+    if (lowWaterMark < 0 || highWaterMark <= lowWaterMark) {
+      throw new IllegalArgumentException("Invalid water marks " + lowWaterMark + "/" + highWaterMark);
+    }
+    this.lowWaterMark = lowWaterMark;
+    this.highWaterMark = highWaterMark;
+    checkWaterMarks();
+  }
+
+  /**
+   * @return true when the flow control handler was told to stop reading
+   */
+  public boolean isReadPaused() {
+    synchronized (flowLock) {
+      return readPaused;
+    }
+  }
+
+  public boolean isPaused() {
+    return paused;
+  }
+
+  /**
+   * Pause the delivery of the input to the read handler, the input is buffered.
+   */
+  public void pause() {
+    paused = true;
+  }
+
+  /**
+   * Resume the delivery of the input to the read handler, the buffered input is delivered by a task of the executor.
+   */
+  public void resume() {
+    if (paused) {
+      paused = false;
+      scheduleDrain();
+    }
+  }
+
+  private void enqueue(int[] data) {
+    int len = data.length;
+    int current = size.addAndGet(len);
+    if (current > capacity) {
+      overflowed.addAndGet(Math.min(len, current - capacity));
+    }
+    queue.add(data);
+    checkWaterMarks();
+  }
+
+  /**
+   * Check the water marks, the producer and the consumer call it after updating the size. The state change and the
+   * flow control callback are atomic, the last thread to check reads the last size so the transport ends up in the
+   * state matching the buffered input.
+   */
+  private void checkWaterMarks() {
+    if (flowControlHandler != null) {
+      synchronized (flowLock) {
+        Consumer<Boolean> handler = flowControlHandler;
+        if (handler != null) {
+          int current = size.get();
+          if (current >= Math.min(highWaterMark, capacity)) {
+            if (!readPaused) {
+              readPaused = true;
+              handler.accept(false);
+            }
+          } else if (current <= Math.min(lowWaterMark, capacity - 1)) {
+            if (readPaused) {
+              readPaused = false;
+              handler.accept(true);
+            }
           }
         }
+      }
+    }
+  }
+
+  private void scheduleDrain() {
+    if (!queue.isEmpty() && readHandler != null && !paused && scheduled.compareAndSet(false, true)) {
+      executor.execute(() -> {
+        scheduled.set(false);
+        drain();
       });
     }
   }
+
+  private void drain() {
+    if (wip.getAndIncrement() == 0) {
+      drainLoop(1);
+    }
+  }
+
+  /**
+   * Deliver the buffered chunks until the buffer is empty, paused or without read handler, the loop runs again
+   * when another thread signaled new input meanwhile.
+   */
+  private void drainLoop(int missed) {
+    do {
+      Consumer<int[]> handler;
+      while ((handler = readHandler) != null) {
+        Object next = queue.peek();
+        if (next instanceof Runnable) {
+          // The tasks are not held by the pause, only the input is
+          queue.poll();
+          ((Runnable) next).run();
+          continue;
+        } else if (next == null || paused) {
+          break;
+        }
+        int[] data = poll();
+        size.addAndGet(-data.length);
+        checkWaterMarks();
+        handler.accept(data);
+      }
+      missed = wip.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private int[] poll() {
+    int[] data = (int[]) queue.poll();
+    if (data.length >= MERGE_LIMIT) {
+      return data;
+    }
+    int len = data.length;
+    Object peek;
+    int[] next;
+    while ((peek = queue.peek()) instanceof int[] && len + (next = (int[]) peek).length <= MERGE_LIMIT) {
+      queue.poll();
+      if (len + next.length > data.length) {
+        data = Arrays.copyOf(data, Math.min(MERGE_LIMIT, Math.max(len + next.length, len * 2)));
+      }
+      System.arraycopy(next, 0, data, len, next.length);
+      len += next.length;
+    }
+    return len == data.length ? data : Arrays.copyOf(data, len);
+  }
 }
@@ -16,6 +16,7 @@
 
 package io.termd.core.tty;
 
+import io.termd.core.util.CoarseClock;
 import io.termd.core.util.Vector;
 import io.termd.core.util.Helper;
 
@@ -32,10 +33,21 @@ import java.util.function.Consumer;
 public interface TtyConnection {
 
   /**
-   * @return the last time this connection received input
+   * @return the last time this connection received input, read from the {@link CoarseClock}
    */
   long lastAccessedTime();
 
+  /**
+   * The default implementation derives it from {@link #lastAccessedTime()}, so it is subject to the changes of the
+   * system time.
+   *
+   * @return the last time this connection received input, read from
+   *         {@link CoarseClock#monotonicTimeMillis()}
+   */
+  default long lastAccessedMonotonicTime() {
+    return CoarseClock.monotonicTimeMillis() - (CoarseClock.currentTimeMillis() - lastAccessedTime());
+  }
+
   Vector size();
 
   /**
@@ -93,6 +105,64 @@ public interface TtyConnection {
 
   void close();
 
+  /**
+   * @return true when the client accepts more output, when it returns false the producers should stop writing
+   *         until the drain handler is called
+   */
+  default boolean isWritable() {
+    return true;
+  }
+
+  /**
+   * @return the drain handler
+   */
+  default Consumer<Void> getDrainHandler() {
+    return null;
+  }
+
+  /**
+   * Set an handler called when the connection becomes writable again after {@link #isWritable()} returned false.
+   * The default implementation ignores the handler since the connection is always writable.
+   *
+   * @param handler the drain handler
+   */
+  default void setDrainHandler(Consumer<Void> handler) {
+  }
+
+  /**
+   * Pause the delivery of the input to the stdin handler, the input is buffered and the connection stops reading
+   * from the client when the buffer reaches its high water mark. The events are still delivered to the event
+   * handler.<p/>
+   *
+   * Flow control is optional: the default implementation does nothing and the input keeps being delivered.
+   */
+  default void pause() {
+  }
+
+  /**
+   * Resume the delivery of the input to the stdin handler, the default implementation does nothing.
+   */
+  default void resume() {
+  }
+
+  /**
+   * Set the water marks of the input buffer, the connection stops reading from the client when the buffer
+   * reaches {@code highWaterMark} code points and resumes when it drops to {@code lowWaterMark} code points.
+   * The default implementation ignores the water marks.
+   *
+   * @param lowWaterMark the low water mark
+   * @param highWaterMark the high water mark
+   */
+  default void setInputWaterMarks(int lowWaterMark, int highWaterMark) {
+  }
+
+  /**
+   * @return the metrics of this connection, the default implementation returns {@link TtyMetrics#NOOP}
+   */
+  default TtyMetrics metrics() {
+    return TtyMetrics.NOOP;
+  }
+
   /**
    * Write a string to the client.
    *
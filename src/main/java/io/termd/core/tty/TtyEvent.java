@@ -17,6 +17,8 @@
 package io.termd.core.tty;
 
 /**
+ * The special characters of a tty, the default values are the usual POSIX control characters.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
 public enum TtyEvent {
@@ -25,7 +27,24 @@ public enum TtyEvent {
 
   EOF('D' - 64),
 
-  SUSP('Z' - 64);
+  SUSP('Z' - 64),
+
+  QUIT('\\' - 64),
+
+  ERASE(127),
+
+  KILL('U' - 64),
+
+  WERASE('W' - 64),
+
+  /**
+   * The next code point is read literally, this event is not delivered to the event handler.
+   */
+  LNEXT('V' - 64),
+
+  START('Q' - 64),
+
+  STOP('S' - 64);
 
   final int codePoint;
 
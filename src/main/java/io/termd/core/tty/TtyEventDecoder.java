@@ -14,26 +14,48 @@
  * limitations under the License.
  */
 
+
 package io.termd.core.tty;
 
+import io.termd.core.io.CodePointConsumer;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
+ * Decodes the {@link TtyEvent} special characters of the input, the other code points are delivered to the
+ * read handler.<p/>
+ *
+ * The input is scanned in place and delivered as slices of the original array, when the read handler is a
+ * {@link CodePointConsumer} the slices are passed without copying, otherwise a slice is copied unless it spans the
+ * whole array passed to {@link #accept(int[])}. The array passed to {@link #accept(int[], int, int)} is never
+ * retained.<p/>
+ *
+ * The special characters are looked up in a table, an event is disabled with a {@code -1} control char. Only
+ * {@link TtyEvent#INTR}, {@link TtyEvent#SUSP} and {@link TtyEvent#EOF} are enabled by default, the other events
+ * are enabled with {@link #setControlChar(TtyEvent, int)}.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
-public class TtyEventDecoder implements Consumer<int[]> {
+public class TtyEventDecoder implements Consumer<int[]>, CodePointConsumer {
+
+  private static final TtyEvent[] EVENTS = TtyEvent.values();
 
   private Consumer<int[]> readHandler;
   private BiConsumer<TtyEvent, Integer> eventHandler;
-  private final int vintr;
-  private final int veof;
-  private final int vsusp;
+  private TtyMetrics metrics = TtyMetrics.NOOP;
+  private Executor eventExecutor;
+  private final int[] controlChars = new int[EVENTS.length];
+  private final TtyEvent[] table = new TtyEvent[256];
+  private boolean literalNext;
 
   public TtyEventDecoder(int vintr, int vsusp, int veof) {
-    this.vintr = vintr;
-    this.vsusp = vsusp;
-    this.veof = veof;
+    Arrays.fill(controlChars, -1);
+    setControlChar(TtyEvent.INTR, vintr);
+    setControlChar(TtyEvent.SUSP, vsusp);
+    setControlChar(TtyEvent.EOF, veof);
   }
 
   public Consumer<int[]> getReadHandler() {
@@ -54,42 +76,117 @@ public class TtyEventDecoder implements Consumer<int[]> {
     return this;
   }
 
+  public Executor getEventExecutor() {
+    return eventExecutor;
+  }
+
+  /**
+   * Set the executor delivering the events to the event handler, when it is {@code null} the events are delivered
+   * by the thread decoding the input.
+   *
+   * @param eventExecutor the executor
+   * @return this object
+   */
+  public TtyEventDecoder setEventExecutor(Executor eventExecutor) {
+    this.eventExecutor = eventExecutor;
+    return this;
+  }
+
+  public TtyMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @param metrics the metrics recording the decoded code points
+   * @return this object
+   */
+  public TtyEventDecoder setMetrics(TtyMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * @param event the event
+   * @return the control char of the event or {@code -1} when the event is disabled
+   */
+  public int getControlChar(TtyEvent event) {
+    return controlChars[event.ordinal()];
+  }
+
+  /**
+   * Set the control char of an event, a control char must be in the {@code [0,255]} range, any other value
+   * disables the event.
+   *
+   * @param event the event
+   * @param controlChar the control char
+   * @return this object
+   */
+  public TtyEventDecoder setControlChar(TtyEvent event, int controlChar) {
+    if (controlChar < 0 || controlChar >= table.length) {
+      controlChar = -1;
+    }
+    controlChars[event.ordinal()] = controlChar;
+    // Rebuild the table, when several events share a control char the first event wins
+    Arrays.fill(table, null);
+    for (int i = EVENTS.length - 1;i >= 0;i--) {
+      int c = controlChars[i];
+      if (c != -1) {
+        table[c] = EVENTS[i];
+      }
+    }
+    return this;
+  }
+
   @Override
   public void accept(int[] data) {
-    if (eventHandler != null) {
-      int index = 0;
-      while (index < data.length) {
+    decode(data, 0, data.length, true);
+  }
+
+  @Override
+  public void accept(int[] data, int offset, int length) {
+    decode(data, offset, length, false);
+  }
+
+  private void decode(int[] data, int offset, int length, boolean owned) {
+    metrics.codePointsDecoded(length);
+    int end = offset + length;
+    BiConsumer<TtyEvent, Integer> handler = eventHandler;
+    if (handler != null) {
+      int from = offset;
+      for (int index = offset;index < end;index++) {
         int val = data[index];
-        TtyEvent event = null;
-        if (val == vintr) {
-          event = TtyEvent.INTR;
-        } else if (val == vsusp) {
-          event = TtyEvent.SUSP;
-        } else if (val == veof) {
-          event = TtyEvent.EOF;
+        if (literalNext) {
+          literalNext = false;
+          continue;
         }
+        TtyEvent event = val >= 0 && val < table.length ? table[val] : null;
         if (event != null) {
-          if (eventHandler != null) {
-            if (readHandler != null) {
-              int[] a = new int[index];
-              if (index > 0) {
-                System.arraycopy(data, 0, a, 0, index);
-                readHandler.accept(a);
-              }
-            }
-            eventHandler.accept(event, val);
-            int[] a = new int[data.length - index - 1];
-            System.arraycopy(data, index + 1, a, 0, a.length);
-            data = a;
-            index = 0;
-            continue;
+          read(data, from, index, owned);
+          from = index + 1;
+          if (event == TtyEvent.LNEXT) {
+            literalNext = true;
+          } else if (eventExecutor != null) {
+            eventExecutor.execute(() -> handler.accept(event, val));
+          } else {
+            handler.accept(event, val);
           }
         }
-        index++;
       }
+      offset = from;
     }
-    if (readHandler != null && data.length > 0) {
-      readHandler.accept(data);
+    read(data, offset, end, owned);
+  }
+
+  private void read(int[] data, int from, int to, boolean owned) {
+    Consumer<int[]> handler = readHandler;
+    if (handler != null && from < to) {
+      if (handler instanceof CodePointConsumer) {
+        ((CodePointConsumer) handler).accept(data, from, to - from);
+      } else if (owned && from == 0 && to == data.length) {
+        handler.accept(data);
+      } else {
+        handler.accept(Arrays.copyOfRange(data, from, to));
+      }
     }
   }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.termd.core.tty;
+
+/**
+ * The metrics SPI of the connections, the connections call the metrics methods from their I/O paths so an
+ * implementation must be thread safe and should not allocate. All methods do nothing by default and the
+ * connections use {@link #NOOP} when no metrics are configured.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ * @see DefaultTtyMetrics
+ */
+public interface TtyMetrics {
+
+  /**
+   * Metrics that record nothing.
+   */
+  TtyMetrics NOOP = new TtyMetrics() {
+  };
+
+  /**
+   * Called when a connection is created, the returned metrics are used by this connection.
+   *
+   * @param conn the connection
+   * @return the metrics of the connection, this object by default
+   */
+  default TtyMetrics forConnection(TtyConnection conn) {
+    return this;
+  }
+
+  /**
+   * Bytes were received from the client.
+   *
+   * @param bytes the number of bytes
+   */
+  default void bytesRead(int bytes) {
+  }
+
+  /**
+   * Code points were decoded from the input.
+   *
+   * @param count the number of code points
+   */
+  default void codePointsDecoded(int count) {
+  }
+
+  /**
+   * Malformed input sequences were decoded.
+   *
+   * @param count the number of malformed sequences
+   */
+  default void decodeErrors(int count) {
+  }
+
+  /**
+   * Bytes were written to the transport in a single write.
+   *
+   * @param bytes the number of bytes
+   */
+  default void bytesWritten(int bytes) {
+  }
+
+  /**
+   * The output buffer was flushed.
+   */
+  default void flushed() {
+  }
+
+  /**
+   * Bytes were queued by the transport.
+   *
+   * @param pending the number of bytes queued and not yet written to the client
+   */
+  default void outputQueued(long pending) {
+  }
+
+  /**
+   * Instrument a task executed by the connection, for instance to measure its scheduling latency.
+   *
+   * @param task the task
+   * @return the instrumented task, the task itself by default
+   */
+  default Runnable instrument(Runnable task) {
+    return task;
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.tty;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Aggregates the bytes written to a connection and flushes them according to a {@link FlushPolicy}, the
+ * flush tasks are executed or scheduled with the connection.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class TtyOutputBuffer implements Consumer<ByteBuffer> {
+
+  private final TtyConnection conn;
+  private final FlushPolicy policy;
+  private final Consumer<ByteBuffer> out;
+  private final Runnable flushTask = this::flush;
+  private ByteBuffer buffer;
+  private boolean flushPending;
+
+  public TtyOutputBuffer(TtyConnection conn, FlushPolicy policy, Consumer<ByteBuffer> out) {
+    this.conn = conn;
+    this.policy = policy;
+    this.out = out;
+  }
+
+  public FlushPolicy policy() {
+    return policy;
+  }
+
+  @Override
+  public synchronized void accept(ByteBuffer data) {
+    int threshold = policy.threshold();
+    int pending = buffer != null ? buffer.position() : 0;
+    if (pending == 0 && data.remaining() >= threshold) {
+      // Nothing to aggregate
+      conn.metrics().bytesWritten(data.remaining());
+      out.accept(data);
+      return;
+    }
+    if (buffer == null || data.remaining() > buffer.remaining()) {
+      ByteBuffer tmp = ByteBuffer.allocate(Math.max(pending + data.remaining(), Math.max(threshold, 256)));
+      if (buffer != null) {
+        buffer.flip();
+        tmp.put(buffer);
+      }
+      buffer = tmp;
+    }
+    buffer.put(data);
+    if (buffer.position() >= threshold) {
+      flush();
+    } else if (!flushPending) {
+      flushPending = true;
+      long maxLatency = policy.maxLatency();
+      if (maxLatency > 0) {
+        conn.schedule(flushTask, maxLatency, TimeUnit.MICROSECONDS);
+      } else {
+        conn.execute(flushTask);
+      }
+    }
+  }
+
+  /**
+   * Flush the buffered bytes.
+   */
+  public synchronized void flush() {
+    flushPending = false;
+    if (buffer != null && buffer.position() > 0) {
+      buffer.flip();
+      TtyMetrics metrics = conn.metrics();
+      metrics.flushed();
+      metrics.bytesWritten(buffer.remaining());
+      try {
+        out.accept(buffer);
+      } finally {
+        buffer.clear();
+      }
+    }
+  }
+}
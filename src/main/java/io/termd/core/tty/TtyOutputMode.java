@@ -14,50 +14,286 @@
  * limitations under the License.
  */
 
+
 package io.termd.core.tty;
 
+import io.termd.core.io.CodePointBuffer;
+import io.termd.core.io.CodePointConsumer;
+import io.termd.core.util.Wcwidth;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.function.Consumer;
 
 /**
+ * The output processing of a tty, the equivalent of the {@code stty} output modes:
+ *
+ * <ul>
+ *   <li>{@code onlcr}: translate newline to carriage return-newline, enabled by default</li>
+ *   <li>{@code ocrnl}: translate carriage return to newline</li>
+ *   <li>{@code onocr}: don't output carriage return at column 0</li>
+ *   <li>{@code onlret}: newline performs a carriage return</li>
+ *   <li>{@code xtabs}: expand tabs to spaces with tab stops every 8 columns</li>
+ * </ul>
+ *
+ * When a charset is set, the code points it cannot encode are replaced with the replacement code point before
+ * encoding.<p/>
+ *
+ * The code points are processed in a single pass into a reused buffer. When the next handler is a
+ * {@link CodePointConsumer} it receives the buffer, otherwise it receives a single copy per write or the
+ * original array when nothing was translated. The column is tracked across writes for {@code onocr} and
+ * {@code xtabs}.
+ *
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
  */
-public class TtyOutputMode implements Consumer<int[]> {
+public class TtyOutputMode implements Consumer<int[]>, CodePointConsumer {
+
+  private static final int ONLCR = 1, OCRNL = 2, ONOCR = 4, ONLRET = 8, XTABS = 16;
+  private static final int MODE_NONE = 0, MODE_ASCII = 1, MODE_LATIN1 = 2, MODE_CHARSET = 3;
 
   private final Consumer<int[]> readHandler;
+  private volatile int flags = ONLCR;
+  private volatile Charset charset;
+  private volatile int replacement = '?';
+  private Charset current;
+  private int mode;
+  private CharsetEncoder encoder;
+  private final CodePointBuffer out = new CodePointBuffer(256);
+  private int column;
 
   public TtyOutputMode(Consumer<int[]> readHandler) {
     this.readHandler = readHandler;
   }
 
+  public boolean isOnlcr() {
+    return (flags & ONLCR) != 0;
+  }
+
+  /**
+   * @param onlcr translate newline to carriage return-newline
+   * @return this object
+   */
+  public TtyOutputMode setOnlcr(boolean onlcr) {
+    return setFlag(ONLCR, onlcr);
+  }
+
+  public boolean isOcrnl() {
+    return (flags & OCRNL) != 0;
+  }
+
+  /**
+   * @param ocrnl translate carriage return to newline
+   * @return this object
+   */
+  public TtyOutputMode setOcrnl(boolean ocrnl) {
+    return setFlag(OCRNL, ocrnl);
+  }
+
+  public boolean isOnocr() {
+    return (flags & ONOCR) != 0;
+  }
+
+  /**
+   * @param onocr don't output carriage return at column 0
+   * @return this object
+   */
+  public TtyOutputMode setOnocr(boolean onocr) {
+    return setFlag(ONOCR, onocr);
+  }
+
+  public boolean isOnlret() {
+    return (flags & ONLRET) != 0;
+  }
+
+  /**
+   * @param onlret newline performs a carriage return
+   * @return this object
+   */
+  public TtyOutputMode setOnlret(boolean onlret) {
+    return setFlag(ONLRET, onlret);
+  }
+
+  public boolean isXtabs() {
+    return (flags & XTABS) != 0;
+  }
+
+  /**
+   * @param xtabs expand tabs to spaces
+   * @return this object
+   */
+  public TtyOutputMode setXtabs(boolean xtabs) {
+    return setFlag(XTABS, xtabs);
+  }
+
+  private TtyOutputMode setFlag(int flag, boolean on) {
+    synchronized (this) {
+      flags = on ? flags | flag : flags & ~flag;
+    }
+    return this;
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Set the charset of the output, the code points this charset cannot encode are replaced with the replacement
+   * code point. A {@code null} charset disables the replacement.
+   *
+   * @param charset the charset
+   * @return this object
+   */
+  public TtyOutputMode setCharset(Charset charset) {
+    this.charset = charset;
+    return this;
+  }
+
+  public int getReplacement() {
+    return replacement;
+  }
+
+  /**
+   * @param replacement the code point replacing the code points the charset cannot encode
+   * @return this object
+   */
+  public TtyOutputMode setReplacement(int replacement) {
+    this.replacement = replacement;
+    return this;
+  }
+
   @Override
   public void accept(int[] data) {
-    if (readHandler != null && data.length > 0) {
-      int prev = 0;
-      int ptr = 0;
-      while (ptr < data.length) {
-        // Simple implementation that works only on system that uses /n as line terminator
-        // equivalent to 'stty onlcr'
-        int cp = data[ptr];
-        if (cp == '\n') {
-          if (ptr > prev) {
-            sendChunk(data, prev, ptr);
+    process(data, 0, data.length, true);
+  }
+
+  @Override
+  public void accept(int[] data, int offset, int length) {
+    process(data, offset, length, false);
+  }
+
+  private synchronized void process(int[] data, int offset, int length, boolean owned) {
+    if (readHandler == null || length == 0) {
+      return;
+    }
+    checkCharset();
+    int flags = this.flags;
+    int end = offset + length;
+    // A code point produces at most 8 code points
+    int max = (flags & XTABS) != 0 ? length * 8 : length * 2;
+    int[] buf = out.clear().ensureCapacity(max).array();
+    int len = 0;
+    int column = this.column;
+    boolean translated = false;
+    for (int i = offset;i < end;i++) {
+      int cp = data[i];
+      switch (cp) {
+        case '\n':
+          if ((flags & ONLRET) != 0) {
+            column = 0;
           }
-          readHandler.accept(new int[]{'\r','\n'});
-          prev = ++ptr;
-        } else {
-          ptr++;
-        }
+          if ((flags & ONLCR) != 0) {
+            column = 0;
+            translated = true;
+            buf[len++] = '\r';
+          }
+          buf[len++] = '\n';
+          break;
+        case '\r':
+          if ((flags & ONOCR) != 0 && column == 0) {
+            translated = true;
+            break;
+          }
+          if ((flags & OCRNL) != 0) {
+            if ((flags & ONLRET) != 0) {
+              column = 0;
+            }
+            translated = true;
+            buf[len++] = '\n';
+          } else {
+            column = 0;
+            buf[len++] = '\r';
+          }
+          break;
+        case '\t':
+          int spaces = 8 - (column & 7);
+          column += spaces;
+          if ((flags & XTABS) != 0) {
+            translated = true;
+            while (spaces-- > 0) {
+              buf[len++] = ' ';
+            }
+          } else {
+            buf[len++] = '\t';
+          }
+          break;
+        case '\b':
+          if (column > 0) {
+            column--;
+          }
+          buf[len++] = '\b';
+          break;
+        default:
+          if (cp >= 32 && cp < 127) {
+            column++;
+          } else if (cp >= 0x80) {
+            if (!canEncode(cp)) {
+              cp = replacement;
+              translated = true;
+            }
+            int width = Wcwidth.of(cp);
+            if (width > 0) {
+              column += width;
+            }
+          }
+          buf[len++] = cp;
+          break;
       }
-      if (ptr > prev) {
-        sendChunk(data, prev, ptr);
+    }
+    this.column = column;
+    out.setLength(len);
+    if (readHandler instanceof CodePointConsumer) {
+      ((CodePointConsumer) readHandler).accept(out);
+    } else if (owned && !translated) {
+      readHandler.accept(data);
+    } else {
+      readHandler.accept(out.toArray());
+    }
+  }
+
+  private void checkCharset() {
+    Charset next = charset;
+    if (next != current) {
+      current = next;
+      encoder = null;
+      if (next == null || next.equals(StandardCharsets.UTF_8) || next.name().startsWith("UTF-")) {
+        mode = MODE_NONE;
+      } else if (next.equals(StandardCharsets.US_ASCII)) {
+        mode = MODE_ASCII;
+      } else if (next.equals(StandardCharsets.ISO_8859_1)) {
+        mode = MODE_LATIN1;
+      } else {
+        mode = next.canEncode() ? MODE_CHARSET : MODE_NONE;
+        if (mode == MODE_CHARSET) {
+          encoder = next.newEncoder();
+        }
       }
     }
   }
 
-  private void sendChunk(int[] data, int prev, int ptr) {
-    int len = ptr - prev;
-    int[] buf = new int[len];
-    System.arraycopy(data, prev, buf, 0, len);
-    readHandler.accept(buf);
+  private boolean canEncode(int cp) {
+    switch (mode) {
+      case MODE_NONE:
+        return true;
+      case MODE_ASCII:
+        return false;
+      case MODE_LATIN1:
+        return cp < 0x100;
+      default:
+        if (Character.isBmpCodePoint(cp)) {
+          return encoder.canEncode((char) cp);
+        }
+        return Character.isValidCodePoint(cp) && encoder.canEncode(new String(Character.toChars(cp)));
+    }
   }
 }
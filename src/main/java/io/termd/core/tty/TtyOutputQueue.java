@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.termd.core.tty;
+
+import java.util.function.Consumer;
+
+/**
+ * Tracks the writability of the output of a {@link TtyConnection} and applies its {@link OverflowPolicy}.<p/>
+ *
+ * The transport reports its writability with {@link #setTransportWritable(boolean)}, for instance from the
+ * Netty channel writability, and/or the bytes it has not written yet with {@link #queued(int)} and
+ * {@link #written(int)}. The output is checked with {@link #offer(int)} before being handed to the transport.
+ * The drain handler is executed with the connection when the output becomes writable again.<p/>
+ *
+ * With the {@link OverflowPolicy.Action#BLOCK} action the input of the connection is paused while the output is
+ * not writable, so the client has to read its output before sending more input.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class TtyOutputQueue {
+
+  private final TtyConnection conn;
+  private final OverflowPolicy policy;
+  private long pending;
+  private long dropped;
+  private boolean transportWritable = true;
+  private boolean writable = true;
+  private boolean closed;
+  private Consumer<Void> drainHandler;
+
+  public TtyOutputQueue(TtyConnection conn, OverflowPolicy policy) {
+    this.conn = conn;
+    this.policy = policy;
+  }
+
+  public OverflowPolicy policy() {
+    return policy;
+  }
+
+  /**
+   * @return true when the output can be written, a closed queue is always writable
+   */
+  public synchronized boolean isWritable() {
+    return writable || closed;
+  }
+
+  /**
+   * @return the number of bytes queued by the transport and not written yet
+   */
+  public synchronized long pending() {
+    return pending;
+  }
+
+  /**
+   * @return the number of bytes discarded by the {@link OverflowPolicy.Action#DROP} action
+   */
+  public synchronized long dropped() {
+    return dropped;
+  }
+
+  public synchronized Consumer<Void> getDrainHandler() {
+    return drainHandler;
+  }
+
+  public synchronized void setDrainHandler(Consumer<Void> handler) {
+    this.drainHandler = handler;
+  }
+
+  /**
+   * Check the output before it is written to the transport, the overflow policy is applied when the output is
+   * not writable.
+   *
+   * @param bytes the number of bytes
+   * @return true when the bytes shall be written, false when they must be discarded
+   */
+  public boolean offer(int bytes) {
+    synchronized (this) {
+      if (writable || closed) {
+        return true;
+      }
+      switch (policy.action()) {
+        case BLOCK:
+          return true;
+        case DROP:
+          dropped += bytes;
+          return false;
+        default:
+          closed = true;
+          break;
+      }
+    }
+    conn.close();
+    return false;
+  }
+
+  /**
+   * Signal bytes queued by the transport.
+   *
+   * @param bytes the number of bytes
+   */
+  public void queued(int bytes) {
+    Runnable action;
+    long queued;
+    synchronized (this) {
+      pending += bytes;
+      queued = pending;
+      action = update();
+    }
+    conn.metrics().outputQueued(queued);
+    run(action);
+  }
+
+  /**
+   * Signal bytes written by the transport.
+   *
+   * @param bytes the number of bytes
+   */
+  public void written(int bytes) {
+    Runnable action;
+    synchronized (this) {
+      pending -= bytes;
+      action = update();
+    }
+    run(action);
+  }
+
+  /**
+   * Signal a change of the transport writability.
+   *
+   * @param writable the transport writability
+   */
+  public void setTransportWritable(boolean writable) {
+    Runnable action;
+    synchronized (this) {
+      transportWritable = writable;
+      action = update();
+    }
+    run(action);
+  }
+
+  /**
+   * Close the queue, it releases the producers waiting for the output to drain.
+   */
+  public void close() {
+    Runnable action;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      action = writable ? null : drain(drainHandler);
+    }
+    run(action);
+  }
+
+  /**
+   * Update the writability and return the action to run.
+   */
+  private Runnable update() {
+    boolean next = transportWritable && pending < (writable ? policy.limit() : policy.lowWaterMark() + 1);
+    if (next == writable) {
+      return null;
+    }
+    writable = next;
+    if (closed) {
+      return null;
+    } else if (next) {
+      return drain(drainHandler);
+    } else {
+      return policy.action() == OverflowPolicy.Action.BLOCK ? conn::pause : null;
+    }
+  }
+
+  /**
+   * @return the action resuming the input paused by the {@link OverflowPolicy.Action#BLOCK} action and calling
+   * the drain handler
+   */
+  private Runnable drain(Consumer<Void> handler) {
+    boolean block = policy.action() == OverflowPolicy.Action.BLOCK;
+    return () -> {
+      if (block) {
+        conn.resume();
+      }
+      if (handler != null) {
+        handler.accept(null);
+      }
+    };
+  }
+
+  private void run(Runnable action) {
+    if (action != null) {
+      // Executed in order with the connection
+      conn.execute(action);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.termd.core.util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A coarse clock shared by the connections: the time is read from volatile fields updated every
+ * {@link #RESOLUTION_MS} milliseconds by a single task of a daemon thread, instead of calling
+ * {@link System#currentTimeMillis()} or {@link System#nanoTime()} for each packet.<p/>
+ *
+ * The wall clock time follows the changes of the system time, durations such as idle timeouts should be measured
+ * with the {@link #monotonicTimeMillis() monotonic time} instead.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public final class CoarseClock {
+
+  /**
+   * The resolution of the clock in milliseconds.
+   */
+  public static final long RESOLUTION_MS = 10;
+
+  private static final long ORIGIN = System.nanoTime();
+  private static volatile long now = System.currentTimeMillis();
+  private static volatile long monotonic;
+
+  static {
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "termd-clock");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleAtFixedRate(() -> {
+      now = System.currentTimeMillis();
+      monotonic = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ORIGIN);
+    }, RESOLUTION_MS, RESOLUTION_MS, TimeUnit.MILLISECONDS);
+  }
+
+  private CoarseClock() {
+  }
+
+  /**
+   * @return the current time in milliseconds, it lags the system time by at most {@link #RESOLUTION_MS}
+   */
+  public static long currentTimeMillis() {
+    return now;
+  }
+
+  /**
+   * @return the milliseconds elapsed since the clock started, it never goes backward and is not affected by the
+   *         changes of the system time, it lags by at most {@link #RESOLUTION_MS}
+   */
+  public static long monotonicTimeMillis() {
+    return monotonic;
+  }
+}
@@ -192,15 +192,29 @@ public class Helper {
    * @return the height
    */
   public static Vector computePosition(int[] codePoints, Vector origin, int offset, int width) {
-    if (offset < 0) {
+    return computePosition(codePoints, origin, 0, offset, width);
+  }
+
+  /**
+   * Compute the position after the chars of the {@literal [from,to)} range of the {@literal codePoints} given a
+   * {@literal width} and a relative {@literal origin} position.
+   *
+   * @param origin the relative position to start from
+   * @param from the offset of the first char
+   * @param to the offset after the last char
+   * @param width the screen width
+   * @return the position
+   */
+  public static Vector computePosition(int[] codePoints, Vector origin, int from, int to, int width) {
+    if (from < 0 || to < from) {
       throw new IndexOutOfBoundsException("Offset cannot be negative");
     }
-    if (offset > codePoints.length) {
+    if (to > codePoints.length) {
       throw new IndexOutOfBoundsException("Offset cannot bebe greater than the length");
     }
     int col = origin.x();
     int row = origin.y();
-    for (int i = 0;i < offset;i++) {
+    for (int i = from;i < to;i++) {
       int cp = codePoints[i];
       int w = Wcwidth.of(cp);
       if (w == -1) {
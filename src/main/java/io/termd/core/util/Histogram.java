@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.termd.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non negative values with log-linear buckets: the values under 16 have their own
+ * bucket, the greater values are bucketed with 16 sub buckets per power of two, so a recorded value is known
+ * within 6.25%. Recording does not allocate, the values are read with a {@link Snapshot}.<p/>
+ *
+ * The bucket counts are striped by thread to avoid the contention of the threads recording concurrently, a stripe
+ * is allocated when a thread mapped to it records its first value.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class Histogram {
+
+  private static final int SUB_BITS = 4;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+  private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+  private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Record a value, a negative value is recorded as {@code 0}.
+   *
+   * @param value the value
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    stripe().incrementAndGet(index(value));
+    count.increment();
+    sum.add(value);
+    long current;
+    while (value > (current = max.get())) {
+      if (max.compareAndSet(current, value)) {
+        break;
+      }
+    }
+  }
+
+  private AtomicLongArray stripe() {
+    int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+    AtomicLongArray stripe = stripes.get(index);
+    if (stripe == null) {
+      stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS));
+      stripe = stripes.get(index);
+    }
+    return stripe;
+  }
+
+  static int index(long value) {
+    if (value < SUB_COUNT) {
+      return (int) value;
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+    return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+  }
+
+  /**
+   * @return the greatest value of the bucket
+   */
+  static long highestValue(int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    }
+    int exp = index / SUB_COUNT + SUB_BITS - 1;
+    long sub = index % SUB_COUNT;
+    long lowest = (SUB_COUNT + sub) << (exp - SUB_BITS);
+    return lowest + (1L << (exp - SUB_BITS)) - 1;
+  }
+
+  /**
+   * @return a snapshot of the histogram, the values recorded concurrently may be partially visible
+   */
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0;i < STRIPES;i++) {
+      AtomicLongArray stripe = stripes.get(i);
+      if (stripe != null) {
+        for (int j = 0;j < BUCKETS;j++) {
+          counts[j] += stripe.get(j);
+        }
+      }
+    }
+    return new Snapshot(counts, count.sum(), sum.sum(), max.get());
+  }
+
+  /**
+   * An immutable view of a histogram.
+   */
+  public static class Snapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    private Snapshot(long[] counts, long count, long sum, long max) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long count() {
+      return count;
+    }
+
+    /**
+     * @return the sum of the recorded values
+     */
+    public long sum() {
+      return sum;
+    }
+
+    /**
+     * @return the greatest recorded value
+     */
+    public long max() {
+      return max;
+    }
+
+    /**
+     * @return the mean of the recorded values
+     */
+    public double mean() {
+      return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * @param percentile the percentile between {@code 0} and {@code 100}
+     * @return the value under which {@code percentile} percents of the recorded values are
+     */
+    public long valueAtPercentile(double percentile) {
+      long total = 0;
+      for (long c : counts) {
+        total += c;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+      long seen = 0;
+      for (int i = 0;i < counts.length;i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(highestValue(i), max);
+        }
+      }
+      return max;
+    }
+  }
+}
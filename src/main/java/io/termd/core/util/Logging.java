@@ -29,6 +29,7 @@ public final class Logging {
   public static final Logger IO_ERROR = Logger.getLogger("io.termd.core.io_error");
   public static final Logger READLINE = Logger.getLogger("io.termd.core.readline");
   public static final Logger TERMINFO = Logger.getLogger("io.termd.core.terminfo");
+  public static final Logger TTY = Logger.getLogger("io.termd.core.tty");
 
   /**
    * Log an io error reported by the IO layer that lead to closing the resource
@@ -49,6 +50,15 @@ public final class Logging {
     Logging.IO_ERROR.log(Level.SEVERE, "IO error", cause);
   }
 
+  /**
+   * Log an error thrown by a task of a connection handler.
+   *
+   * @param cause the error
+   */
+  public static void logHandlerError(Throwable cause) {
+    Logging.TTY.log(Level.SEVERE, "Handler error", cause);
+  }
+
   private Logging() {
   }
 }
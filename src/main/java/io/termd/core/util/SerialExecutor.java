@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Julien Viet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.termd.core.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tasks one at a time and in submission order on an underlying executor, the tasks can block without
+ * affecting the other serial executors sharing the underlying executor. Each connection gets its own serial executor
+ * so its handlers keep the ordering guarantees of an event loop.<p/>
+ *
+ * The pending tasks are drained by a single task of the underlying executor, a task submitted while the
+ * executor drains is run by the same drain.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class SerialExecutor implements Executor {
+
+  /**
+   * Create an executor starting a new thread for each task, the threads are virtual threads when the JVM provides
+   * them, otherwise they are daemon threads reused by a cached pool.
+   *
+   * @return the executor
+   */
+  public static ExecutorService newThreadPerTaskExecutor() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (Exception ignore) {
+      // No virtual threads
+    }
+    AtomicInteger count = new AtomicInteger();
+    return Executors.newCachedThreadPool(task -> {
+      Thread thread = new Thread(task, "termd-handler-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private final Executor executor;
+  private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger wip = new AtomicInteger();
+  private final Runnable drainTask = this::drain;
+
+  public SerialExecutor(Executor executor) {
+    if (executor == null) {
+      throw new NullPointerException("No null executor accepted");
+    }
+    this.executor = executor;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    tasks.add(task);
+    if (wip.getAndIncrement() == 0) {
+      executor.execute(drainTask);
+    }
+  }
+
+  private void drain() {
+    int missed = 1;
+    do {
+      for (int i = 0;i < missed;i++) {
+        Runnable task = tasks.poll();
+        try {
+          task.run();
+        } catch (Throwable t) {
+          Logging.logHandlerError(t);
+        }
+      }
+      missed = wip.addAndGet(-missed);
+    } while (missed != 0);
+  }
+}
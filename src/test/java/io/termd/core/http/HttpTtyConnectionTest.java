@@ -0,0 +1,96 @@
+package io.termd.core.http;
+
+import io.termd.core.io.MalformedInputAction;
+import io.termd.core.util.Vector;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class HttpTtyConnectionTest {
+
+  static class TestConnection extends HttpTtyConnection {
+
+    final List<Vector> sizes = new ArrayList<>();
+    final StringBuilder stdin = new StringBuilder();
+
+    TestConnection() {
+      setSizeHandler(sizes::add);
+      setStdinHandler(codePoints -> stdin.append(new String(codePoints, 0, codePoints.length)));
+    }
+
+    @Override
+    protected void write(byte[] buffer) {
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      task.run();
+    }
+
+    @Override
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  @Test
+  public void testCompactMessages() {
+    TestConnection conn = new TestConnection();
+    conn.writeToDecoder("dhello 😀");
+    assertEquals("hello 😀", conn.stdin.toString());
+    conn.writeToDecoder("r100,40");
+    conn.writeToDecoder("r100,40");
+    conn.writeToDecoder("r100");
+    conn.writeToDecoder("r100,x");
+    conn.writeToDecoder("r0,10");
+    conn.writeToDecoder("d");
+    conn.writeToDecoder("");
+    assertEquals("hello 😀", conn.stdin.toString());
+    assertEquals(1, conn.sizes.size());
+    assertEquals(new Vector(100, 40), conn.size());
+  }
+
+  @Test
+  public void testJsonMessages() {
+    TestConnection conn = new TestConnection();
+    conn.writeToDecoder("{\"action\":\"read\",\"data\":\"abc\\u00e9\"}");
+    assertEquals("abcé", conn.stdin.toString());
+    conn.writeToDecoder("{\"action\":\"resize\",\"cols\":120,\"rows\":30}");
+    assertEquals(new Vector(120, 30), conn.size());
+    conn.writeToDecoder("{invalid");
+    assertEquals(1, conn.sizes.size());
+  }
+
+  @Test
+  public void testBinaryInput() {
+    TestConnection conn = new TestConnection();
+    ByteBuffer buf = ByteBuffer.wrap("café".getBytes(StandardCharsets.UTF_8));
+    conn.writeToDecoder(buf);
+    assertFalse(buf.hasRemaining());
+    assertEquals("café", conn.stdin.toString());
+  }
+
+  @Test
+  public void testMalformedInputAction() {
+    TestConnection conn = new TestConnection();
+    assertEquals(MalformedInputAction.REPLACE, conn.getMalformedInputAction());
+    conn.writeToDecoder(new byte[]{'a', (byte) 0xE9, 'b'});
+    assertEquals("a\uFFFDb", conn.stdin.toString());
+    conn.setMalformedInputAction(MalformedInputAction.LATIN1);
+    conn.writeToDecoder(new byte[]{'c', (byte) 0xE9, 'd'});
+    assertEquals("a\uFFFDbc\u00E9d", conn.stdin.toString());
+  }
+}
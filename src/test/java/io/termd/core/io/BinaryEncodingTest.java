@@ -4,13 +4,18 @@ import io.termd.core.util.Helper;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -96,4 +101,193 @@ public class BinaryEncodingTest {
     assertEquals(1, codePoints.size());
     assertEquals('\u20AC', (int)codePoints.get(0));
   }
+
+  @Test
+  public void testDecoderReuseBuffer() throws Exception {
+    final List<String> chunks = new ArrayList<>();
+    final List<int[]> arrays = new ArrayList<>();
+    BinaryDecoder decoder = new BinaryDecoder(2, UTF8, (codePoints, offset, length) -> {
+      arrays.add(codePoints);
+      chunks.add(new String(codePoints, offset, length));
+    });
+    decoder.write(new byte[]{65, 66, 67, 68, 69});
+    assertEquals(Arrays.asList("AB", "CD", "E"), chunks);
+    assertEquals(3, arrays.size());
+    assertSame(arrays.get(0), arrays.get(1));
+    assertSame(arrays.get(0), arrays.get(2));
+  }
+
+  @Test
+  public void testDecoderSplitSequence() throws Exception {
+    String s = "A\u20AC" + new StringBuilder().appendCodePoint(66231) + "B";
+    byte[] bytes = s.getBytes(UTF8);
+    for (int i = 0;i <= bytes.length;i++) {
+      StringBuilder sb = new StringBuilder();
+      BinaryDecoder decoder = new BinaryDecoder(4, UTF8, (codePoints, offset, length) -> {
+        sb.append(new String(codePoints, offset, length));
+      });
+      decoder.write(bytes, 0, i);
+      decoder.write(bytes, i, bytes.length - i);
+      assertEquals(s, sb.toString());
+    }
+  }
+
+  @Test
+  public void testDecoderLatin1() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    BinaryDecoder decoder = new BinaryDecoder(4, Charset.forName("ISO-8859-1"), event -> {
+      Helper.appendCodePoints(event, sb);
+    });
+    decoder.write(new byte[]{65, (byte) 0xE9, (byte) 0xFF});
+    assertEquals("A\u00E9\u00FF", sb.toString());
+  }
+
+  @Test
+  public void testDecoderSwitchCharset() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    BinaryDecoder decoder = new BinaryDecoder(4, UTF8, event -> {
+      Helper.appendCodePoints(event, sb);
+    });
+    decoder.write(new byte[]{(byte) 0xE2, (byte) 0x82});
+    decoder.setCharset(Charset.forName("UTF-16BE"));
+    decoder.setCharset(UTF8);
+    decoder.write(new byte[]{(byte) 0xAC});
+    assertEquals("\u20AC", sb.toString());
+  }
+
+  @Test
+  public void testDecodeByteBuffer() throws Exception {
+    String s = "A\u20AC" + new StringBuilder().appendCodePoint(66231) + "B";
+    byte[] bytes = s.getBytes(UTF8);
+    for (ByteBuffer buf : Arrays.asList(ByteBuffer.allocate(bytes.length + 1), ByteBuffer.allocateDirect(bytes.length + 1))) {
+      StringBuilder sb = new StringBuilder();
+      BinaryDecoder decoder = new BinaryDecoder(4, UTF8, (codePoints, offset, length) -> {
+        sb.append(new String(codePoints, offset, length));
+      });
+      buf.put((byte) 'X').put(bytes).flip();
+      buf.get();
+      decoder.write(buf);
+      assertEquals(s, sb.toString());
+      assertEquals(buf.limit(), buf.position());
+    }
+  }
+
+  private String decodeMalformed(Charset charset, MalformedInputAction action, int count, List<String> reports, int... bytes) {
+    StringBuilder sb = new StringBuilder();
+    BinaryDecoder decoder = new BinaryDecoder(4, charset, event -> {
+      Helper.appendCodePoints(event, sb);
+    });
+    decoder.setMalformedInputAction(action);
+    decoder.setMalformedInputHandler(malformed -> {
+      StringBuilder report = new StringBuilder();
+      for (byte b : malformed) {
+        report.append(String.format("%02x", b & 0xFF));
+      }
+      reports.add(report.toString());
+    });
+    byte[] data = new byte[bytes.length];
+    for (int i = 0;i < bytes.length;i++) {
+      data[i] = (byte) bytes[i];
+    }
+    decoder.write(data);
+    assertEquals(count, decoder.malformedInputCount());
+    return sb.toString();
+  }
+
+  @Test
+  public void testDecoderMalformedUTF8() throws Exception {
+    List<String> reports = new ArrayList<>();
+    // Invalid lead byte, truncated sequence, surrogate
+    int[] bytes = { 'A', 0xFF, 'B', 0xE2, 0x82, 'C', 0xED, 0xA0, 0x80, 'D' };
+    assertEquals("A\uFFFDB\uFFFDC\uFFFD\uFFFD\uFFFDD", decodeMalformed(UTF8, MalformedInputAction.REPLACE, 5, reports, bytes));
+    assertEquals("ABCD", decodeMalformed(UTF8, MalformedInputAction.IGNORE, 5, reports, bytes));
+    assertEquals("A\u00FFB\u00E2\u0082C\u00ED\u00A0\u0080D", decodeMalformed(UTF8, MalformedInputAction.LATIN1, 5, reports, bytes));
+    assertEquals("ABCD", decodeMalformed(UTF8, MalformedInputAction.REPORT, 5, reports, bytes));
+    assertEquals(Arrays.asList("ff", "e282", "ed", "a0", "80"), reports);
+  }
+
+  @Test
+  public void testDecoderMalformedASCII() throws Exception {
+    List<String> reports = new ArrayList<>();
+    Charset ascii = Charset.forName("US-ASCII");
+    assertEquals("A\uFFFDB", decodeMalformed(ascii, MalformedInputAction.REPLACE, 1, reports, 'A', 0xE9, 'B'));
+    assertEquals("A\u00E9B", decodeMalformed(ascii, MalformedInputAction.LATIN1, 1, reports, 'A', 0xE9, 'B'));
+  }
+
+  @Test
+  public void testDecoderMalformedCharset() throws Exception {
+    List<String> reports = new ArrayList<>();
+    Charset utf16 = Charset.forName("UTF-16BE");
+    // Lone low surrogate
+    int[] bytes = { 0, 'A', 0xDC, 0, 0, 'B' };
+    assertEquals("A\uFFFDB", decodeMalformed(utf16, MalformedInputAction.REPLACE, 1, reports, bytes));
+    assertEquals("AB", decodeMalformed(utf16, MalformedInputAction.IGNORE, 1, reports, bytes));
+    assertEquals("AB", decodeMalformed(utf16, MalformedInputAction.REPORT, 1, reports, bytes));
+    assertEquals(Arrays.asList("dc00"), reports);
+  }
+
+  @Test
+  public void testEncoderCharsets() throws Exception {
+    String s = "A\u00E9\u20AC" + new StringBuilder().appendCodePoint(66231) + "B";
+    int[] codePoints = Helper.toCodePoints(s);
+    for (String name : Arrays.asList("UTF-8", "US-ASCII", "ISO-8859-1", "UTF-16BE", "windows-1252")) {
+      Charset charset = Charset.forName(name);
+      List<byte[]> events = new ArrayList<>();
+      BinaryEncoder encoder = new BinaryEncoder(charset, events::add);
+      encoder.accept(codePoints);
+      encoder.accept(codePoints, 1, 3);
+      assertEquals(2, events.size());
+      assertEquals(name, Arrays.toString(s.getBytes(charset)), Arrays.toString(events.get(0)));
+      assertEquals(name, Arrays.toString(new String(codePoints, 1, 3).getBytes(charset)), Arrays.toString(events.get(1)));
+    }
+  }
+
+  @Test
+  public void testEncoderReuseBuffer() throws Exception {
+    List<ByteBuffer> buffers = new ArrayList<>();
+    List<String> chunks = new ArrayList<>();
+    BinaryEncoder encoder = new BinaryEncoder(4, UTF8, buf -> {
+      buffers.add(buf);
+      chunks.add(UTF8.decode(buf).toString());
+    });
+    encoder.accept(Helper.toCodePoints("AB"));
+    encoder.accept(Helper.toCodePoints("CD"));
+    encoder.accept(Helper.toCodePoints("\u20AC\u20AC"));
+    assertEquals(Arrays.asList("AB", "CD", "\u20AC\u20AC"), chunks);
+    assertSame(buffers.get(0), buffers.get(1));
+  }
+
+  @Test
+  public void testEncodeInBuffer() throws Exception {
+    BinaryEncoder encoder = new BinaryEncoder(UTF8, bytes -> {});
+    int[] codePoints = Helper.toCodePoints("A\u20AC");
+    for (ByteBuffer dst : Arrays.asList(ByteBuffer.allocate(16), ByteBuffer.allocateDirect(16))) {
+      dst.put((byte) 'X');
+      encoder.encode(codePoints, 0, codePoints.length, dst);
+      dst.flip();
+      assertEquals("XA\u20AC", UTF8.decode(dst).toString());
+      dst.clear();
+      dst.limit(5);
+      try {
+        encoder.encode(Helper.toCodePoints("\u20AC\u20AC"), 0, 2, dst);
+        fail();
+      } catch (BufferOverflowException ignore) {
+        // Expected
+      }
+    }
+  }
+
+  @Test
+  public void testEncoderSwitchCharset() throws Exception {
+    List<byte[]> events = new ArrayList<>();
+    BinaryEncoder encoder = new BinaryEncoder(StandardCharsets.US_ASCII, events::add);
+    encoder.accept(new int[]{0xE9});
+    encoder.setCharset(StandardCharsets.ISO_8859_1);
+    encoder.accept(new int[]{0xE9});
+    encoder.setCharset(UTF8);
+    encoder.accept(new int[]{0xE9});
+    assertEquals("[63]", Arrays.toString(events.get(0)));
+    assertEquals("[-23]", Arrays.toString(events.get(1)));
+    assertEquals("[-61, -87]", Arrays.toString(events.get(2)));
+  }
 }
@@ -0,0 +1,104 @@
+package io.termd.core.io;
+
+import org.junit.Test;
+
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class CodePointBufferTest {
+
+  @Test
+  public void testAppend() {
+    CodePointBuffer buffer = new CodePointBuffer(2);
+    buffer.append('a').append('b').append(new int[] { 'x', 'c', 'd', 'y' }, 1, 2);
+    assertEquals(4, buffer.length());
+    assertEquals((int) 'c', buffer.get(2));
+    assertEquals("abcd", buffer.toString());
+    int[] array = buffer.array();
+    buffer.clear().append('e');
+    assertSame(array, buffer.array());
+    assertEquals("e", buffer.toString());
+  }
+
+  @Test
+  public void testWrap() {
+    int[] data = { 'a', 'b', 'c', 'd' };
+    CodePointBuffer buffer = CodePointBuffer.wrap(data, 1, 2);
+    assertSame(data, buffer.array());
+    assertEquals(1, buffer.offset());
+    assertEquals("bc", buffer.toString());
+    buffer.append('x');
+    assertSame(data, buffer.array());
+    assertEquals((int) 'x', data[3]);
+    buffer.append('y');
+    assertNotSame(data, buffer.array());
+    assertEquals(0, buffer.offset());
+    assertEquals("bcxy", buffer.toString());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testGetOutOfBounds() {
+    new CodePointBuffer(4).append('a').get(1);
+  }
+
+  @Test
+  public void testReadOnly() {
+    CodePointBuffer buffer = new CodePointBuffer(4).append('a');
+    CodePointBuffer view = buffer.asReadOnly();
+    assertTrue(view.isReadOnly());
+    assertEquals("a", view.toString());
+    try {
+      view.array();
+      fail();
+    } catch (ReadOnlyBufferException ignore) {
+    }
+    try {
+      view.append('b');
+      fail();
+    } catch (ReadOnlyBufferException ignore) {
+    }
+  }
+
+  @Test
+  public void testWriteTo() {
+    CodePointBuffer buffer = new CodePointBuffer(4).append('a').append('b');
+    List<int[]> copies = new ArrayList<>();
+    buffer.writeTo(copies::add);
+    assertEquals(1, copies.size());
+    assertNotSame(buffer.array(), copies.get(0));
+    assertEquals(2, copies.get(0).length);
+    List<String> slices = new ArrayList<>();
+    class Slices implements Consumer<int[]>, CodePointConsumer {
+      public void accept(int[] data) {
+        fail();
+      }
+      public void accept(int[] data, int offset, int length) {
+        assertSame(buffer.array(), data);
+        slices.add(offset + ":" + length);
+      }
+    }
+    buffer.writeTo(new Slices());
+    assertEquals("[0:2]", slices.toString());
+  }
+
+  @Test
+  public void testAdapt() {
+    List<int[]> copies = new ArrayList<>();
+    CodePointConsumer adapter = CodePointConsumer.adapt(copies::add);
+    int[] data = { 'a', 'b', 'c' };
+    adapter.accept(data, 1, 2);
+    assertEquals(1, copies.size());
+    assertEquals((int) 'b', copies.get(0)[0]);
+    assertEquals(2, copies.get(0).length);
+    BinaryEncoder encoder = new BinaryEncoder(StandardCharsets.UTF_8, (Consumer<byte[]>) bytes -> {});
+    assertSame(encoder, CodePointConsumer.adapt(encoder));
+  }
+}
@@ -0,0 +1,179 @@
+package io.termd.core.readline;
+
+import io.termd.core.term.Capability;
+import io.termd.core.term.Device;
+import io.termd.core.term.Feature;
+import io.termd.core.term.OpCode;
+import io.termd.core.term.Sequence;
+import io.termd.core.util.Helper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class CursorMotionTest {
+
+  private static String move(CursorMotion motion, int fromCol, int fromRow, int toCol, int toRow, String text) {
+    StringBuilder sb = new StringBuilder();
+    int[] chars = text != null ? Helper.toCodePoints(text) : null;
+    motion.move(fromCol, fromRow, toCol, toRow, chars != null ? col -> chars[col] : null, chars != null ? chars.length : 0,
+        codePoints -> Helper.appendCodePoints(codePoints, sb));
+    return sb.toString();
+  }
+
+  @Test
+  public void testHorizontal() {
+    CursorMotion motion = new CursorMotion(null);
+    assertEquals("", move(motion, 3, 0, 3, 0, null));
+    assertEquals("\b\b", move(motion, 5, 0, 3, 0, null));
+    assertEquals("\033[5D", move(motion, 15, 0, 10, 0, null));
+    assertEquals("\r", move(motion, 3, 0, 0, 0, null));
+    assertEquals("\033[C", move(motion, 3, 0, 4, 0, null));
+    assertEquals("\033[6C", move(motion, 3, 0, 9, 0, null));
+    assertEquals("\033[20D", move(motion, 70, 0, 50, 0, null));
+    assertEquals("\033[6G", move(motion, 95, 0, 5, 0, null));
+  }
+
+  @Test
+  public void testRewriteChars() {
+    CursorMotion motion = new CursorMotion(null);
+    String text = "abcdefghij";
+    assertEquals("de", move(motion, 3, 0, 5, 0, text));
+    assertEquals("\033[6C", move(motion, 3, 0, 9, 0, text));
+    assertEquals("\rab", move(motion, 8, 0, 2, 0, text));
+    assertEquals("\033[6C", move(motion, 3, 0, 9, 0, "abc"));
+  }
+
+  @Test
+  public void testVertical() {
+    CursorMotion motion = new CursorMotion(null);
+    assertEquals("\033[A", move(motion, 0, 2, 0, 1, null));
+    assertEquals("\033[3A", move(motion, 0, 4, 0, 1, null));
+    assertEquals("\033[1B", move(motion, 0, 1, 0, 2, null));
+    assertEquals("\033[Aab", move(motion, 0, 1, 2, 0, "ab"));
+  }
+
+  @Test
+  public void testDevice() {
+    Device device = new Device(Collections.singletonList("test"));
+    device.addFeature(new Feature<>(Capability.carriage_return, new Sequence("\r")));
+    device.addFeature(new Feature<>(Capability.cursor_left, new Sequence("\b")));
+    device.addFeature(new Feature<>(Capability.cursor_right, new Sequence("\033[C")));
+    device.addFeature(new Feature<>(Capability.cursor_up, new Sequence("\033[A")));
+    device.addFeature(new Feature<>(Capability.cursor_down, new Sequence("\033[B")));
+    CursorMotion motion = new CursorMotion(device);
+    assertEquals("\b\b\b\b\b", move(motion, 15, 0, 10, 0, null));
+    assertEquals("\033[C\033[C", move(motion, 3, 0, 5, 0, null));
+    assertEquals("\033[B\033[B", move(motion, 0, 0, 0, 2, null));
+    assertFalse(motion.canEditChars());
+  }
+
+  @Test
+  public void testEditChars() {
+    CursorMotion motion = new CursorMotion(null);
+    assertTrue(motion.canEditChars());
+    StringBuilder sb = new StringBuilder();
+    motion.insertChars(2, codePoints -> Helper.appendCodePoints(codePoints, sb));
+    motion.deleteChars(3, codePoints -> Helper.appendCodePoints(codePoints, sb));
+    motion.clearToEndOfLine(codePoints -> Helper.appendCodePoints(codePoints, sb));
+    assertEquals("\033[2@\033[3P\033[K", sb.toString());
+  }
+
+  @Test
+  public void testForTerminal() {
+    assertSame(CursorMotion.DEFAULT, CursorMotion.forTerminal(null));
+    assertSame(CursorMotion.DEFAULT, CursorMotion.forTerminal("unknown-terminal"));
+  }
+
+  private static void assertXterm(CursorMotion motion) {
+    assertEquals("\b\b", move(motion, 5, 0, 3, 0, null));
+    assertEquals("\033[6C", move(motion, 3, 0, 9, 0, null));
+    assertEquals("\033[20D", move(motion, 70, 0, 50, 0, null));
+    assertEquals("\033[6G", move(motion, 95, 0, 5, 0, null));
+    assertEquals("\033[3A\rab", move(motion, 7, 3, 2, 0, "abc"));
+    assertEquals("\033[1B", move(motion, 0, 1, 0, 2, null));
+    assertTrue(motion.canEditChars());
+  }
+
+  @Test
+  public void testDefault() {
+    assertXterm(CursorMotion.DEFAULT);
+  }
+
+  @Test
+  public void testXterm() {
+    assertXterm(CursorMotion.forTerminal("xterm"));
+    assertXterm(CursorMotion.forTerminal("XTERM"));
+  }
+
+  private static Sequence parameterized(String prefix, String suffix, boolean add1) {
+    OpCode.Printf print = new OpCode.Printf(null, null, null, 'd');
+    return new Sequence(add1 ?
+        Arrays.asList(new OpCode.Literal(prefix), OpCode.Add1ToParams.INSTANCE, new OpCode.PushParam(1), print, new OpCode.Literal(suffix)) :
+        Arrays.asList(new OpCode.Literal(prefix), new OpCode.PushParam(1), print, new OpCode.Literal(suffix)));
+  }
+
+  @Test
+  public void testTermInfoSequences() {
+    Device device = new Device(Collections.singletonList("test"));
+    device.addFeature(new Feature<>(Capability.carriage_return, new Sequence("\r")));
+    device.addFeature(new Feature<>(Capability.cursor_left, new Sequence("\b")));
+    device.addFeature(new Feature<>(Capability.cursor_right, new Sequence("\033[C")));
+    device.addFeature(new Feature<>(Capability.cursor_up, new Sequence("\033[A")));
+    device.addFeature(new Feature<>(Capability.cursor_down, new Sequence("\n")));
+    device.addFeature(new Feature<>(Capability.clr_eol, new Sequence("\033[K")));
+    device.addFeature(new Feature<>(Capability.parm_left_cursor, parameterized("\033[", "D", false)));
+    device.addFeature(new Feature<>(Capability.parm_right_cursor, parameterized("\033[", "C", false)));
+    device.addFeature(new Feature<>(Capability.parm_up_cursor, parameterized("\033[", "A", false)));
+    device.addFeature(new Feature<>(Capability.parm_down_cursor, parameterized("\033[", "B", false)));
+    device.addFeature(new Feature<>(Capability.column_address, parameterized("\033[", "G", true)));
+    device.addFeature(new Feature<>(Capability.parm_ich, parameterized("\033[", "@", false)));
+    device.addFeature(new Feature<>(Capability.parm_dch, parameterized("\033[", "P", false)));
+    assertXterm(new CursorMotion(device));
+  }
+
+  private static String clearToEndOfLine(CursorMotion motion) {
+    StringBuilder sb = new StringBuilder();
+    motion.clearToEndOfLine(codePoints -> Helper.appendCodePoints(codePoints, sb));
+    return sb.toString();
+  }
+
+  @Test
+  public void testVt100() {
+    // The vt100 sequences have padding that must not be output
+    CursorMotion motion = CursorMotion.forTerminal("vt100");
+    assertEquals("\033[K", clearToEndOfLine(motion));
+    assertEquals("\033[A", move(motion, 0, 1, 0, 0, null));
+    assertEquals("\033[C", move(motion, 0, 0, 1, 0, null));
+    assertEquals("\033[6C", move(motion, 3, 0, 9, 0, null));
+    assertEquals("\033[3A", move(motion, 0, 3, 0, 0, null));
+  }
+
+  @Test
+  public void testPadding() {
+    Device device = new Device(Collections.singletonList("test"));
+    device.addFeature(new Feature<>(Capability.cursor_up, new Sequence("\033[A$<100>")));
+    device.addFeature(new Feature<>(Capability.clr_eol, new Sequence("\033[K$<3/>")));
+    device.addFeature(new Feature<>(Capability.parm_up_cursor, parameterized("\033[", "A$<5.5*>", false)));
+    CursorMotion motion = new CursorMotion(device);
+    assertEquals("\033[K", clearToEndOfLine(motion));
+    // The padding is not counted in the cost, cuu1 is cheaper than cuu 1
+    assertEquals("\033[A", move(motion, 0, 1, 0, 0, null));
+    assertEquals("\033[3A", move(motion, 0, 3, 0, 0, null));
+  }
+
+  @Test
+  public void testInvalidSequence() {
+    Device device = new Device(Collections.singletonList("test"));
+    // Pops an empty stack
+    device.addFeature(new Feature<>(Capability.column_address, new Sequence(Arrays.asList(
+        new OpCode.Literal("\033["), new OpCode.Printf(null, null, null, 'd'), new OpCode.Literal("G")))));
+    CursorMotion motion = new CursorMotion(device);
+    assertEquals("\033[6G", move(motion, 95, 0, 5, 0, null));
+  }
+}
@@ -115,4 +115,44 @@ public class EventQueueTest {
     } catch (ReadOnlyBufferException ignore) {
     }
   }
+
+  @Test
+  public void testLongestMatch() {
+    EventQueue queue = new EventQueue(new Keymap(new ByteArrayInputStream("\"a\":foo\n\"abc\":bar\n\"abd\":juu\n\"abd\":daa".getBytes())));
+    queue.append('a', 'b');
+    assertEquals("foo", ((FunctionEvent) queue.peek()).name());
+    queue.append('c', 'a', 'b', 'd', 'a', 'b', 'x');
+    assertEquals("bar", ((FunctionEvent) queue.next()).name());
+    assertEquals("daa", ((FunctionEvent) queue.next()).name());
+    assertEquals("foo", ((FunctionEvent) queue.next()).name());
+    assertEquals('b', queue.next().getCodePointAt(0));
+    assertEquals('x', queue.next().getCodePointAt(0));
+    assertFalse(queue.hasNext());
+  }
+
+  @Test
+  public void testWrapAround() {
+    EventQueue queue = new EventQueue(new Keymap(new ByteArrayInputStream("\"ab\":foo".getBytes())));
+    for (int i = 0;i < 100;i++) {
+      queue.append('x', 'y', 'z', 'a');
+      assertEquals('x', queue.next().getCodePointAt(0));
+      assertEquals('y', queue.next().getCodePointAt(0));
+      assertEquals('z', queue.next().getCodePointAt(0));
+      assertFalse(queue.hasNext());
+      queue.append('b');
+      assertEquals("foo", ((FunctionEvent) queue.next()).name());
+    }
+    int[] data = new int[40];
+    for (int i = 0;i < data.length;i++) {
+      data[i] = 'A' + i;
+    }
+    queue.append('c');
+    queue.append(data);
+    assertEquals('c', queue.next().getCodePointAt(0));
+    int[] pending = queue.clear();
+    assertEquals(40, pending.length);
+    assertEquals('A', pending[0]);
+    assertEquals('A' + 39, pending[39]);
+    assertFalse(queue.hasNext());
+  }
 }
@@ -28,4 +28,65 @@ public class KeymapTest {
     assertEquals("my-func", ((FunctionEvent) eq.next()).name());
     assertFalse(eq.hasNext());
   }
+
+  @Test
+  public void testSharedTrie() {
+    Keymap keymap = new Keymap();
+    KeyTrie trie = keymap.trie();
+    assertSame(trie, keymap.trie());
+    EventQueue before = new EventQueue(keymap);
+    keymap.bindFunction("\\C-j", "my-func");
+    assertNotSame(trie, keymap.trie());
+    before.append('J' - 64);
+    assertFalse(before.next() instanceof FunctionEvent);
+    EventQueue after = new EventQueue(keymap);
+    after.append('J' - 64);
+    assertEquals("my-func", ((FunctionEvent) after.next()).name());
+  }
+
+  @Test
+  public void testImmutable() {
+    Keymap keymap = Keymap.getDefaultImmutable();
+    assertTrue(keymap.isImmutable());
+    assertSame(keymap, keymap.toImmutable());
+    try {
+      keymap.bindFunction("\\C-j", "my-func");
+      fail();
+    } catch (UnsupportedOperationException ignore) {
+    }
+  }
+
+  @Test
+  public void testDerive() {
+    Keymap base = Keymap.getDefaultImmutable();
+    Keymap derived = Keymap.getDefault();
+    assertFalse(derived.isImmutable());
+    assertSame(base.trie(), derived.trie());
+    derived.bindFunction("\\C-j", "my-func");
+    KeyTrie trie = derived.trie();
+    assertNotSame(base.trie(), trie);
+    assertEquals("accept-line", ((FunctionEvent) base.trie().root.child('J' - 64).binding()).name());
+    // The untouched sequences are shared with the base
+    assertNotNull(trie.root.child(27));
+    assertSame(base.trie().root.child(27), trie.root.child(27));
+    EventQueue queue = new EventQueue(derived);
+    queue.append('J' - 64);
+    assertEquals("my-func", ((FunctionEvent) queue.next()).name());
+    EventQueue other = new EventQueue(Keymap.getDefault());
+    other.append('J' - 64);
+    assertEquals("accept-line", ((FunctionEvent) other.next()).name());
+  }
+
+  @Test
+  public void testDeriveMutable() {
+    Keymap keymap = new Keymap();
+    keymap.bindFunction("\\C-j", "first");
+    Keymap derived = keymap.derive();
+    derived.bindFunction("\\C-k", "second");
+    keymap.bindFunction("\\C-k", "third");
+    EventQueue queue = new EventQueue(derived);
+    queue.append('J' - 64, 'K' - 64);
+    assertEquals("first", ((FunctionEvent) queue.next()).name());
+    assertEquals("second", ((FunctionEvent) queue.next()).name());
+  }
 }
@@ -328,7 +328,7 @@ public class LineBufferTest {
     LineBuffer to = new LineBuffer();
     to.insert('d');
     buffer.update(to, screen, 40);
-    screen.assertCodePoints("\r\033[1Ad\r\033[1B\033[K\033[1C\033[1A").assertEmpty();
+    screen.assertCodePoints("\033[A\rd\033[1B\r\033[K\033[Ad").assertEmpty();
   }
 
   @Test
@@ -340,4 +340,106 @@ public class LineBufferTest {
     buffer.update(to, screen, 2);
     screen.assertCodePoints("abcde").assertEmpty();
   }
+
+  @Test
+  public void testGrow() {
+    LineBuffer buffer = new LineBuffer();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0;i < 5000;i++) {
+      buffer.insert('a' + i % 26);
+      expected.append((char) ('a' + i % 26));
+    }
+    assertEquals(5000, buffer.getSize());
+    assertEquals(expected.toString(), buffer.toString());
+    buffer.setCursor(2500);
+    buffer.insert("XY");
+    expected.insert(2500, "XY");
+    assertEquals(expected.toString(), buffer.toString());
+    assertEquals(2502, buffer.getCursor());
+  }
+
+  @Test
+  public void testEditAroundGap() {
+    LineBuffer buffer = new LineBuffer();
+    buffer.insert("abcdef");
+    buffer.setCursor(2);
+    buffer.insert('X');
+    assertEquals("abXcdef", buffer.toString());
+    buffer.setCursor(6);
+    assertEquals(2, buffer.delete(-2));
+    assertEquals("abXcf", buffer.toString());
+    assertEquals(4, buffer.getCursor());
+    buffer.setCursor(1);
+    assertEquals(2, buffer.delete(2));
+    assertEquals("acf", buffer.toString());
+    assertEquals('c', buffer.getAt(1));
+    assertEquals(2, buffer.delete(10));
+    assertEquals("a", buffer.toString());
+    assertEquals(1, buffer.delete(-10));
+    assertEquals("", buffer.toString());
+  }
+
+  @Test
+  public void testCopyOnWrite() {
+    LineBuffer buffer = new LineBuffer();
+    buffer.insert("abc");
+    buffer.setCursor(1);
+    LineBuffer copy = buffer.copy();
+    copy.insert('X');
+    assertEquals("abc", buffer.toString());
+    assertEquals("aXbc", copy.toString());
+    buffer.delete(1);
+    assertEquals("ac", buffer.toString());
+    assertEquals("aXbc", copy.toString());
+    LineBuffer other = copy.copy();
+    other.clear();
+    other.insert('z');
+    assertEquals("z", other.toString());
+    assertEquals("aXbc", copy.toString());
+  }
+
+  @Test
+  public void testSetSizeWithGap() {
+    LineBuffer buffer = new LineBuffer();
+    buffer.insert("abcdef");
+    buffer.setCursor(1);
+    buffer.insert('X');
+    buffer.setSize(4);
+    assertEquals("aXbc", buffer.toString());
+    assertEquals(2, buffer.getCursor());
+    buffer.setSize(10);
+    assertEquals(4, buffer.getSize());
+    buffer.setCursor(4);
+    buffer.insert('d');
+    assertEquals("aXbcd", buffer.toString());
+  }
+
+  @Test
+  public void testPositionAcrossGap() {
+    LineBuffer buffer = new LineBuffer();
+    buffer.insert("abc\ndef");
+    buffer.setCursor(2);
+    buffer.insert('X');
+    assertEquals(new Vector(3, 0), buffer.getPosition(3, 80));
+    assertEquals(new Vector(0, 1), buffer.getPosition(5, 80));
+    assertEquals(new Vector(3, 1), buffer.getPosition(8, 80));
+    assertEquals(new Vector(1, 4), buffer.getPosition(8, 2));
+  }
+
+  @Test
+  public void testMultiline() {
+    LineBuffer buffer = new LineBuffer();
+    buffer.insert("ab\ncd\ne");
+    assertTrue(buffer.isMultiline());
+    LineBuffer copy = buffer.copy();
+    buffer.setCursor(3);
+    buffer.delete(-1);
+    assertTrue(buffer.isMultiline());
+    buffer.setSize(4);
+    assertFalse(buffer.isMultiline());
+    assertTrue(copy.isMultiline());
+    copy.setCursor(0);
+    copy.delete(10);
+    assertFalse(copy.isMultiline());
+  }
 }
@@ -81,7 +81,7 @@ public class LineBufferUpdateTest {
     LineBuffer curr = new LineBuffer().insert("a\nbc");
     curr.update(new LineBuffer().insert("abdef"), screen, 20);
     // TODO : improve that
-    screen.assertCodePoints("\b\033[1Abdef\r\033[1B\033[K\033[1C\033[1C\033[1C\033[1C\033[1C\033[1A").assertEmpty();
+    screen.assertCodePoints("\033[A\bbdef\033[1B\r\033[K\033[A\033[5C").assertEmpty();
   }
 
   @Test
@@ -89,7 +89,7 @@ public class LineBufferUpdateTest {
     TestTerminal screen = new TestTerminal();
     LineBuffer curr = new LineBuffer().insert("abcde");
     curr.update(new LineBuffer().insert("aBcdEf"), screen, 20);
-    screen.assertCodePoints("\b\b\b\bB\033[1C\033[1CEf").assertEmpty();
+    screen.assertCodePoints("\raBcdEf").assertEmpty();
   }
 
   @Test
@@ -97,7 +97,7 @@ public class LineBufferUpdateTest {
     TestTerminal screen = new TestTerminal();
     LineBuffer curr = new LineBuffer().insert("abcdefgh");
     curr.update(new LineBuffer().insert("aBcdefgHi"), screen, 4);
-    screen.assertCodePoints("\033[1C\033[1A\033[1AB\033[1C\033[1BHi").assertEmpty();
+    screen.assertCodePoints("\033[2AaB\033[1BgHi").assertEmpty();
   }
 
   @Test
@@ -121,7 +121,7 @@ public class LineBufferUpdateTest {
     TestTerminal screen = new TestTerminal();
     LineBuffer curr = new LineBuffer().insert("ab\ncd");
     curr.update(new LineBuffer().insert("abcde"), screen, 4);
-    screen.assertCodePoints("\033[1Acde\033[K").assertEmpty();
+    screen.assertCodePoints("\033[Acde\033[K").assertEmpty();
   }
 
   @Test
@@ -129,7 +129,7 @@ public class LineBufferUpdateTest {
     TestTerminal screen = new TestTerminal();
     LineBuffer curr = new LineBuffer().insert("ab\ncd");
     curr.update(new LineBuffer().insert("abcd"), screen, 4);
-    screen.assertCodePoints("\033[1Acd \r\033[K").assertEmpty();
+    screen.assertCodePoints("\033[Acd \r\033[K").assertEmpty();
   }
 
   @Test
@@ -137,7 +137,7 @@ public class LineBufferUpdateTest {
     TestTerminal screen = new TestTerminal();
     LineBuffer curr = new LineBuffer().insert("ab\nef");
     curr.update(new LineBuffer().insert("abcdefg"), screen, 4);
-    screen.assertCodePoints("\033[1Acd\033[1C\033[1Cg").assertEmpty();
+    screen.assertCodePoints("\033[Acdefg").assertEmpty();
   }
 
   @Test
@@ -153,7 +153,7 @@ public class LineBufferUpdateTest {
     TestTerminal screen = new TestTerminal();
     LineBuffer curr = new LineBuffer().insert("abc\nb");
     curr.update(new LineBuffer().insert("a\nbc"), screen, 20);
-    screen.assertCodePoints("\033[1A\033[K\n\033[1Cc").assertEmpty();
+    screen.assertCodePoints("\033[A\033[K\nbc").assertEmpty();
   }
 
   @Test
@@ -161,10 +161,9 @@ public class LineBufferUpdateTest {
     TestTerminal screen = new TestTerminal();
     LineBuffer curr = new LineBuffer().insert("ab\ncd\nef\ngh");
     curr.update(new LineBuffer().insert("AbC"), screen, 20);
-    screen.assertCodePoints("\r\033[1A\033[1A\033[1AA\033[1CC\r\033[1B\033[K"
+    screen.assertCodePoints("\033[3A\rAbC\033[1B\r\033[K"
             + "\033[1B\033[K\033[1B\033[K"
-            + "\033[1C\033[1C"
-            + "\033[1C\033[1A\033[1A\033[1A"
+            + "\033[3AAbC"
     ).assertEmpty();
   }
 
@@ -181,7 +180,7 @@ public class LineBufferUpdateTest {
     TestTerminal screen = new TestTerminal();
     LineBuffer curr = new LineBuffer().insert("abcdefg").setCursor(2);
     curr.update(new LineBuffer().insert("ab"), screen, 4);
-    screen.assertCodePoints("\033[K\r\033[1B\033[K\033[1C\033[1C\033[1A").assertEmpty();
+    screen.assertCodePoints("\033[K\033[1B\r\033[K\033[Aab").assertEmpty();
   }
 
   @Test
@@ -189,7 +188,7 @@ public class LineBufferUpdateTest {
     TestTerminal screen = new TestTerminal();
     LineBuffer curr = new LineBuffer().insert("abcdefg").setCursor(3);
     curr.update(new LineBuffer().insert("abc"), screen, 4);
-    screen.assertCodePoints("\033[K\r\033[1B\033[K\033[1C\033[1C\033[1C\033[1A").assertEmpty();
+    screen.assertCodePoints("\033[K\033[1B\r\033[K\033[Aabc").assertEmpty();
   }
 
   @Test
@@ -200,6 +199,6 @@ public class LineBufferUpdateTest {
     // todo:
     // optimize \033[1C + \033[1C -> \033[2C
     // optimize \033[1A + \033[1A -> \033[2A
-    screen.assertCodePoints("\033[K\r\033[1B\033[K\033[1B\033[K\033[1C\033[1C\033[1A\033[1A").assertEmpty();
+    screen.assertCodePoints("\033[K\033[1B\r\033[K\033[1B\033[K\033[2Aab").assertEmpty();
   }
 }
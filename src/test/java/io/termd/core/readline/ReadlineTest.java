@@ -462,4 +462,58 @@ public class ReadlineTest extends TestBase {
     term.assertAt(0, 2);
     term.assertScreen("% a");
   }
+
+  @Test
+  public void testInsertCharOutput() {
+    TestTerm term = new TestTerm(this);
+    term.readlineFail();
+    term.output();
+    term.read('A');
+    term.read('B');
+    assertEquals("AB", term.output());
+    term.read(BACKWARD_KEY);
+    assertEquals("\b", term.output());
+    term.read('C');
+    assertEquals("\033[1@C", term.output());
+    term.assertScreen("% ACB");
+    term.assertAt(0, 4);
+  }
+
+  @Test
+  public void testDeleteCharOutput() {
+    TestTerm term = new TestTerm(this);
+    term.readlineFail();
+    term.read('A', 'B', 'C', 'D');
+    term.read(CTRL_A_KEY);
+    term.assertAt(0, 2);
+    term.output();
+    term.read(FORWARD_KEY);
+    assertEquals("A", term.output());
+    term.read(CTRL_D_KEY);
+    assertEquals("\033[1P", term.output());
+    term.assertScreen("% ACD");
+    term.assertAt(0, 3);
+    term.read(CTRL_E_KEY);
+    term.read(BACKWARD_DELETE_KEY);
+    term.assertScreen("% AC");
+    term.assertAt(0, 4);
+  }
+
+  @Test
+  public void testInsertCharWrap() {
+    TestTerm term = new TestTerm(this);
+    term.setWidth(5);
+    term.readlineFail();
+    term.read('A', 'B');
+    term.assertScreen("% AB");
+    term.read('C');
+    term.assertScreen("% ABC");
+    term.assertAt(1, 0);
+    term.read('D');
+    term.assertScreen("% ABC", "D");
+    term.assertAt(1, 1);
+    term.read(BACKWARD_DELETE_KEY);
+    term.assertScreen("% ABC", "");
+    term.assertAt(1, 0);
+  }
 }
@@ -60,10 +60,12 @@ class TestTerm {
   private int acc = -1;
   private int bell;
   private int width = 40;
+  private final StringBuilder output = new StringBuilder();
   Consumer<int[]> writeHandler = new Consumer<int[]>() {
     @Override
     public void accept(int[] event) {
       for (int i : event) {
+        output.appendCodePoint(i);
         if (buffer[row] == null) {
           buffer[row] = new int[100];
         }
@@ -107,6 +109,9 @@ class TestTerm {
                 acc = acc * 10 + (i - '0');
               }
             } else {
+              if (acc == -1 && i >= 'A' && i <= 'D') {
+                acc = 1;
+              }
               switch (i) {
                 case 'A':
                   while (acc-- > 0 && row > 0) {
@@ -128,6 +133,28 @@ class TestTerm {
                     backward();
                   }
                   break;
+                case '@': {
+                  int n = acc == -1 ? 1 : acc;
+                  int[] line = buffer[row];
+                  for (int j = line.length - 1;j >= cursor + n;j--) {
+                    line[j] = line[j - n];
+                  }
+                  for (int j = cursor;j < cursor + n;j++) {
+                    line[j] = ' ';
+                  }
+                  break;
+                }
+                case 'P': {
+                  int n = acc == -1 ? 1 : acc;
+                  int[] line = buffer[row];
+                  for (int j = cursor;j < line.length;j++) {
+                    line[j] = j + n < line.length ? line[j + n] : 0;
+                  }
+                  break;
+                }
+                case 'G':
+                  cursor = acc == -1 ? 0 : acc - 1;
+                  break;
                 case 'K': {
                   if (acc != -1) {
                     throw new UnsupportedOperationException("Not yet implemented");
@@ -362,6 +389,15 @@ class TestTerm {
     readlineTest.assertEquals(cursor, this.cursor);
   }
 
+  /**
+   * @return the output written since the last call
+   */
+  String output() {
+    String s = output.toString();
+    output.setLength(0);
+    return s;
+  }
+
   void read(int... data) {
     readHandler.accept(data);
   }
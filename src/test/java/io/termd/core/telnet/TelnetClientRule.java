@@ -23,6 +23,7 @@ import org.apache.commons.net.telnet.TelnetOptionHandler;
 import org.junit.rules.ExternalResource;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
@@ -118,6 +119,13 @@ public class TelnetClientRule extends ExternalResource {
     return this;
   }
 
+  /**
+   * @return the input stream of the socket, bypassing the telnet client
+   */
+  public InputStream directInput() throws IOException {
+    return socket.getInputStream();
+  }
+
   public void writeDirect(byte... bytes) throws IOException {
     synchronized (client) {
       directOutput.write(bytes);
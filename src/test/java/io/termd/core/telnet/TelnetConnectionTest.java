@@ -0,0 +1,234 @@
+package io.termd.core.telnet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class TelnetConnectionTest {
+
+  static class TestConnection extends TelnetConnection {
+
+    final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    TestConnection(TelnetHandler handler) {
+      super(handler);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    protected void execute(Runnable task) {
+      task.run();
+    }
+
+    @Override
+    protected void schedule(Runnable task, long delay, TimeUnit unit) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void send(byte[] data) {
+      sent.write(data, 0, data.length);
+    }
+
+    byte[] sent() {
+      byte[] bytes = sent.toByteArray();
+      sent.reset();
+      return bytes;
+    }
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0;i < values.length;i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+
+  @Test
+  public void testWriteBuffer() {
+    TestConnection conn = new TestConnection(new TelnetHandler());
+    ByteBuffer buf = ByteBuffer.wrap(bytes('A', 0xFF, 'B', 0xFF, 0xFF));
+    conn.write(buf);
+    assertFalse(buf.hasRemaining());
+    assertArrayEquals(bytes('A', 0x7F, 'B', 0x7F, 0x7F), conn.sent());
+    conn.sendBinary = true;
+    conn.write(ByteBuffer.wrap(bytes('A', 0xFF, 'B', 0xFF, 0xFF)));
+    assertArrayEquals(bytes('A', 0xFF, 0xFF, 'B', 0xFF, 0xFF, 0xFF, 0xFF), conn.sent());
+    for (byte[] data : new byte[][] { bytes(0xFF), bytes('A', 'B'), bytes(0xFF, 'A', 0xFF) }) {
+      conn.write(data.clone());
+      byte[] expected = conn.sent();
+      conn.write(ByteBuffer.wrap(data.clone()));
+      assertArrayEquals(expected, conn.sent());
+    }
+  }
+
+  @Test
+  public void testReceiveBuffer() {
+    List<String> events = new ArrayList<>();
+    TestConnection conn = new TestConnection(new TelnetHandler() {
+      @Override
+      protected void onData(byte[] data) {
+        events.add(new String(data));
+      }
+      @Override
+      protected void onCommand(byte command) {
+        events.add("cmd:" + (command & 0xFF));
+      }
+    });
+    ByteBuffer buf = ByteBuffer.wrap(bytes('A', 'B', 0xFF, 0xF1, 'C', 0xFF, 0xFD));
+    conn.receive(buf);
+    assertFalse(buf.hasRemaining());
+    conn.receive(ByteBuffer.wrap(bytes(99, 'D')));
+    assertEquals("[AB, cmd:241, C, D]", events.toString());
+    assertArrayEquals(bytes(0xFF, 0xFC, 99), conn.sent());
+  }
+
+  private List<String> parse(boolean binary, byte[] data, int split) {
+    List<String> events = new ArrayList<>();
+    TestConnection conn = new TestConnection(new TelnetHandler() {
+      @Override
+      protected void onData(byte[] data) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : data) {
+          sb.append((char) (b & 0xFF));
+        }
+        if (events.size() > 0 && events.get(events.size() - 1).startsWith("data:")) {
+          events.set(events.size() - 1, events.get(events.size() - 1) + sb);
+        } else {
+          events.add("data:" + sb);
+        }
+      }
+      @Override
+      protected void onCommand(byte command) {
+        events.add("cmd:" + (command & 0xFF));
+      }
+    }) {
+      @Override
+      protected void onOptionParameters(byte optionCode, byte[] parameters) {
+        events.add("sb:" + optionCode + ":" + Arrays.toString(parameters));
+      }
+      @Override
+      protected void onOptionWill(byte optionCode) {
+        events.add("will:" + optionCode);
+      }
+    };
+    conn.receiveBinary = binary;
+    conn.receive(Arrays.copyOfRange(data, 0, split));
+    conn.receive(Arrays.copyOfRange(data, split, data.length));
+    return events;
+  }
+
+  @Test
+  public void testParse() {
+    byte[] data = bytes('A', 0xFF, 0xF1, 'B', 0xFF, 0xFA, 24, 0, 'x', 0xFF, 0xFF, 'y', 0xFF, 0xF0, 0xFF, 0xFB, 31, 'C', 0xFF, 0xFF, 'D');
+    for (int i = 0;i <= data.length;i++) {
+      assertEquals("split at " + i,
+          Arrays.asList("data:A", "cmd:241", "data:B", "sb:24:[0, 120, -1, 121]", "will:31", "data:C\u00FFD"),
+          parse(true, data, i));
+      assertEquals("split at " + i,
+          Arrays.asList("data:A", "cmd:241", "data:B", "sb:24:[0, 120, -1, 121]", "will:31", "data:C", "cmd:255", "data:D"),
+          parse(false, data, i));
+    }
+  }
+
+  @Test
+  public void testParseEmptyParameters() {
+    assertEquals(Arrays.asList("sb:24:[]", "data:A"), parse(false, bytes(0xFF, 0xFA, 24, 0xFF, 0xF0, 'A'), 0));
+  }
+
+  @Test
+  public void testRegisterOption() {
+    List<String> events = new ArrayList<>();
+    TestConnection conn = new TestConnection(new TelnetHandler());
+    TestConnection other = new TestConnection(new TelnetHandler());
+    conn.registerOption(new OptionHandler() {
+      @Override
+      public byte code() {
+        return 39;
+      }
+      @Override
+      public void handleWill(TelnetConnection session) {
+        events.add("will");
+        session.writeOptionParameters(code(), (byte) 1, (byte) 0xFF);
+      }
+      @Override
+      public void handleParameters(TelnetConnection session, byte[] parameters) {
+        events.add("params:" + Arrays.toString(parameters));
+      }
+    });
+    conn.receive(bytes(0xFF, 0xFB, 39, 0xFF, 0xFA, 39, 0, 'a', 0xFF, 0xF0));
+    assertEquals(Arrays.asList("will", "params:[0, 97]"), events);
+    assertArrayEquals(bytes(0xFF, 0xFA, 39, 1, 0xFF, 0xFF, 0xFF, 0xF0), conn.sent());
+    other.receive(bytes(0xFF, 0xFB, 39));
+    assertArrayEquals(bytes(0xFF, 0xFE, 39), other.sent());
+    assertSame(Option.NAWS, conn.getOption((byte) 31));
+    conn.unregisterOption((byte) 31);
+    assertNull(conn.getOption((byte) 31));
+    assertSame(Option.NAWS, other.getOption((byte) 31));
+  }
+
+  private static byte[] inflate(Inflater inflater, byte[] data) throws Exception {
+    inflater.setInput(data);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[64];
+    int n;
+    while ((n = inflater.inflate(buf)) > 0) {
+      out.write(buf, 0, n);
+    }
+    assertTrue(inflater.needsInput());
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testCompression() throws Exception {
+    TestConnection conn = new TestConnection(new TelnetHandler());
+    conn.receive(bytes(0xFF, 0xFD, 86));
+    assertArrayEquals(bytes(0xFF, 0xFC, 86), conn.sent());
+    conn.setCompression(Deflater.BEST_SPEED, Deflater.SYNC_FLUSH);
+    conn.receive(bytes(0xFF, 0xFD, 86));
+    assertTrue(conn.isCompressing());
+    assertArrayEquals(bytes(0xFF, 0xFA, 86, 0xFF, 0xF0), conn.sent());
+    Inflater inflater = new Inflater();
+    conn.write("hello".getBytes());
+    assertEquals("hello", new String(inflate(inflater, conn.sent())));
+    conn.sendBinary = true;
+    conn.write(ByteBuffer.wrap(bytes('A', 0xFF, 'B')));
+    assertArrayEquals(bytes('A', 0xFF, 0xFF, 'B'), inflate(inflater, conn.sent()));
+    ByteBuffer direct = ByteBuffer.allocateDirect(2000);
+    while (direct.hasRemaining()) {
+      direct.put((byte) ('a' + direct.position() % 26));
+    }
+    direct.flip();
+    conn.write(direct);
+    byte[] inflated = inflate(inflater, conn.sent());
+    assertEquals(2000, inflated.length);
+    assertEquals('x', inflated[1999]);
+    conn.receive(bytes(0xFF, 0xFE, 86));
+    assertFalse(conn.isCompressing());
+    inflate(inflater, conn.sent());
+    assertTrue(inflater.finished());
+    conn.write("raw".getBytes());
+    assertEquals("raw", new String(conn.sent()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCompressionFlushMode() {
+    new TestConnection(new TelnetHandler()).setCompression(Deflater.BEST_SPEED, Deflater.NO_FLUSH);
+  }
+}
@@ -25,11 +25,16 @@ import org.apache.commons.net.telnet.WindowSizeOptionHandler;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
 
 /**
  * See <a href="http://commons.apache.org/proper/commons-net/examples/telnet/TelnetClientExample.java>for more possibilities</a>
@@ -389,4 +394,45 @@ public abstract class TelnetHandlerTest extends TelnetTestBase {
     assertEquals((byte)-1, data[8]);
     assertEquals((byte)-1, data[9]);
   }
+
+  private static byte[] readBytes(InputStream in, int length) throws Exception {
+    byte[] bytes = new byte[length];
+    int num = 0;
+    while (num < length) {
+      int read = in.read(bytes, num, length - num);
+      if (read == -1) {
+        throw failure("Closed");
+      }
+      num += read;
+    }
+    return bytes;
+  }
+
+  @Test
+  public void testCompression() throws Exception {
+    server.start(() -> new TelnetHandler() {
+      private TelnetConnection conn;
+      @Override
+      protected void onOpen(TelnetConnection conn) {
+        this.conn = conn;
+        conn.setCompression(Deflater.BEST_SPEED, Deflater.SYNC_FLUSH);
+        conn.writeWillOption(Option.COMPRESS2);
+      }
+      @Override
+      protected void onData(byte[] data) {
+        conn.write(data);
+      }
+    });
+    client.client.setReaderThread(false);
+    client.connect("localhost", 4000);
+    InputStream in = client.directInput();
+    assertArrayEquals(new byte[]{TelnetConnection.BYTE_IAC, TelnetConnection.BYTE_WILL, 86}, readBytes(in, 3));
+    client.writeDirectAndFlush(TelnetConnection.BYTE_IAC, TelnetConnection.BYTE_DO, (byte) 86);
+    assertArrayEquals(new byte[]{TelnetConnection.BYTE_IAC, TelnetConnection.BYTE_SB, 86, TelnetConnection.BYTE_IAC, TelnetConnection.BYTE_SE}, readBytes(in, 5));
+    InputStream inflated = new InflaterInputStream(in);
+    client.writeDirectAndFlush("hello".getBytes());
+    assertEquals("hello", new String(readBytes(inflated, 5)));
+    client.writeDirectAndFlush("world".getBytes());
+    assertEquals("world", new String(readBytes(inflated, 5)));
+  }
 }
@@ -0,0 +1,52 @@
+package io.termd.core.telnet;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class TelnetTtyConnectionTest {
+
+  @Test
+  public void testHandlerExecutor() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Thread ioThread = Thread.currentThread();
+      BlockingQueue<String> events = new LinkedBlockingQueue<>();
+      CountDownLatch opened = new CountDownLatch(1);
+      TelnetTtyConnection ttyConn = new TelnetTtyConnection(false, false, StandardCharsets.UTF_8, conn -> {
+        conn.setStdinHandler(data -> {
+          assertNotSame(ioThread, Thread.currentThread());
+          events.add(new String(data, 0, data.length));
+        });
+        conn.setEventHandler((event, key) -> {
+          assertNotSame(ioThread, Thread.currentThread());
+          events.add(event.name());
+        });
+        opened.countDown();
+      });
+      ttyConn.setHandlerExecutor(executor);
+      TelnetConnectionTest.TestConnection conn = new TelnetConnectionTest.TestConnection(ttyConn);
+      conn.onInit();
+      assertTrue(opened.await(10, TimeUnit.SECONDS));
+      conn.receive("ab".getBytes());
+      conn.receive(new byte[]{3});
+      conn.receive("c".getBytes());
+      assertEquals("ab", events.poll(10, TimeUnit.SECONDS));
+      assertEquals("INTR", events.poll(10, TimeUnit.SECONDS));
+      assertEquals("c", events.poll(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -538,6 +538,16 @@ public class TermInfoTest {
     }
   }
 
+  @Test
+  public void testEvalAdd1ToParams() throws Exception {
+    EvalContext context = new EvalContext(new String[]{"4", "7", "9"}, new StringBuilder());
+    OpCode.Add1ToParams.INSTANCE.eval(context);
+    assertEquals(Arrays.asList("5", "8", "9"), Arrays.asList(context.parameters));
+    context = new EvalContext(new String[]{"4"}, new StringBuilder());
+    OpCode.Add1ToParams.INSTANCE.eval(context);
+    assertEquals(Arrays.asList("5"), Arrays.asList(context.parameters));
+  }
+
   @Test
   public void testEvalPushConstant() throws Exception {
     OpCode.PushConstant opcode = new OpCode.PushConstant(65, false);
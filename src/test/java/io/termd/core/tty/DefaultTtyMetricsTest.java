@@ -0,0 +1,97 @@
+package io.termd.core.tty;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class DefaultTtyMetricsTest {
+
+  private static ByteBuffer bytes(String s) {
+    return ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  public void testOutputBuffer() {
+    DefaultTtyMetrics metrics = new DefaultTtyMetrics();
+    TestTtyConnection conn = new TestTtyConnection() {
+      @Override
+      public TtyMetrics metrics() {
+        return metrics;
+      }
+    };
+    TtyOutputBuffer buffer = new TtyOutputBuffer(conn, FlushPolicy.endOfTask(1024), buf -> buf.position(buf.limit()));
+    buffer.accept(bytes("abc"));
+    buffer.accept(bytes("de"));
+    assertEquals(0, metrics.snapshot().bytesWritten());
+    conn.runTasks();
+    DefaultTtyMetrics.Snapshot snapshot = metrics.snapshot();
+    assertEquals(5, snapshot.bytesWritten());
+    assertEquals(1, snapshot.writes());
+    assertEquals(1, snapshot.flushes());
+    assertEquals(5, snapshot.writeSize().max());
+  }
+
+  @Test
+  public void testDecoder() {
+    DefaultTtyMetrics metrics = new DefaultTtyMetrics();
+    TtyEventDecoder decoder = new TtyEventDecoder(3, 26, 4).setMetrics(metrics);
+    decoder.setReadHandler(data -> {});
+    decoder.accept(new int[] { 'a', 'b', 'c' });
+    metrics.bytesRead(3);
+    metrics.decodeErrors(1);
+    DefaultTtyMetrics.Snapshot snapshot = metrics.snapshot();
+    assertEquals(3, snapshot.codePointsDecoded());
+    assertEquals(3, snapshot.bytesRead());
+    assertEquals(1, snapshot.decodeErrors());
+  }
+
+  @Test
+  public void testInstrument() {
+    DefaultTtyMetrics metrics = new DefaultTtyMetrics();
+    int[] count = new int[1];
+    Runnable task = metrics.instrument(() -> count[0]++);
+    assertEquals(0, metrics.snapshot().taskLatency().count());
+    task.run();
+    assertEquals(1, count[0]);
+    assertEquals(1, metrics.snapshot().taskLatency().count());
+  }
+
+  @Test
+  public void testForConnection() {
+    DefaultTtyMetrics metrics = new DefaultTtyMetrics();
+    DefaultTtyMetrics conn1 = metrics.forConnection(new TestTtyConnection());
+    DefaultTtyMetrics conn2 = metrics.forConnection(new TestTtyConnection());
+    assertNotSame(conn1, conn2);
+    assertSame(metrics, conn1.parent());
+    assertNull(metrics.parent());
+    conn1.bytesRead(3);
+    conn1.bytesWritten(5);
+    conn1.instrument(() -> {}).run();
+    conn2.bytesRead(4);
+    conn2.decodeErrors(1);
+    assertEquals(3, conn1.snapshot().bytesRead());
+    assertEquals(1, conn1.snapshot().writes());
+    assertEquals(1, conn1.snapshot().taskLatency().count());
+    assertEquals(0, conn1.snapshot().decodeErrors());
+    assertEquals(4, conn2.snapshot().bytesRead());
+    assertEquals(0, conn2.snapshot().writes());
+    DefaultTtyMetrics.Snapshot snapshot = metrics.snapshot();
+    assertEquals(7, snapshot.bytesRead());
+    assertEquals(5, snapshot.bytesWritten());
+    assertEquals(1, snapshot.decodeErrors());
+    assertEquals(1, snapshot.taskLatency().count());
+  }
+
+  @Test
+  public void testNoop() {
+    Runnable task = () -> {};
+    assertSame(task, TtyMetrics.NOOP.instrument(task));
+    assertSame(TtyMetrics.NOOP, TtyMetrics.NOOP.forConnection(new TestTtyConnection()));
+  }
+}
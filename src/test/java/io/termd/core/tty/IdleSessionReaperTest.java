@@ -0,0 +1,183 @@
+package io.termd.core.tty;
+
+import io.termd.core.util.Helper;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class IdleSessionReaperTest {
+
+  private long now = 100_000;
+  private long wallClock = 1_500_000_000_000L;
+
+  private class Connection extends TestTtyConnection {
+    long lastAccessedTime = wallClock;
+    long lastAccessedMonotonicTime = now;
+    int closed;
+    @Override
+    public long lastAccessedTime() {
+      return lastAccessedTime;
+    }
+    @Override
+    public long lastAccessedMonotonicTime() {
+      return lastAccessedMonotonicTime;
+    }
+    void access() {
+      lastAccessedTime = wallClock;
+      lastAccessedMonotonicTime = now;
+    }
+    @Override
+    public void close() {
+      closed++;
+    }
+    String output() {
+      StringBuilder sb = new StringBuilder();
+      stdout.forEach(data -> sb.append(Helper.fromCodePoints(data)));
+      return sb.toString();
+    }
+  }
+
+  private IdleSessionReaper reaper(long timeout) {
+    return new IdleSessionReaper(null, timeout, TimeUnit.MILLISECONDS, 100, () -> now);
+  }
+
+  private void advance(IdleSessionReaper reaper, long ms) {
+    while (ms > 0) {
+      long step = Math.min(100, ms);
+      now += step;
+      wallClock += step;
+      ms -= step;
+      reaper.tick();
+    }
+  }
+
+  @Test
+  public void testReap() {
+    IdleSessionReaper reaper = reaper(1000);
+    Connection conn = new Connection();
+    reaper.add(conn);
+    assertEquals(1, reaper.sessions());
+    advance(reaper, 900);
+    assertEquals(0, conn.runTasks());
+    advance(reaper, 100);
+    assertEquals(1, conn.runTasks());
+    assertEquals(1, conn.closed);
+    assertEquals(0, reaper.sessions());
+    assertEquals(1, reaper.reaped());
+  }
+
+  @Test
+  public void testActivity() {
+    IdleSessionReaper reaper = reaper(1000);
+    Connection conn = new Connection();
+    reaper.add(conn);
+    advance(reaper, 700);
+    conn.access();
+    advance(reaper, 700);
+    conn.runTasks();
+    assertEquals(0, conn.closed);
+    advance(reaper, 300);
+    conn.runTasks();
+    assertEquals(1, conn.closed);
+  }
+
+  @Test
+  public void testLongTimeout() {
+    // The timeout spans several revolutions of the wheel
+    IdleSessionReaper reaper = reaper(20_000);
+    Connection conn = new Connection();
+    reaper.add(conn);
+    advance(reaper, 19_900);
+    conn.runTasks();
+    assertEquals(0, conn.closed);
+    advance(reaper, 100);
+    conn.runTasks();
+    assertEquals(1, conn.closed);
+  }
+
+  @Test
+  public void testSkippedTicks() {
+    IdleSessionReaper reaper = reaper(1000);
+    Connection conn = new Connection();
+    reaper.add(conn);
+    now += 60_000;
+    reaper.tick();
+    conn.runTasks();
+    assertEquals(1, conn.closed);
+  }
+
+  @Test
+  public void testWarning() {
+    IdleSessionReaper reaper = reaper(1000).setWarning("bye", 300, TimeUnit.MILLISECONDS);
+    Connection conn = new Connection();
+    reaper.add(conn);
+    advance(reaper, 700);
+    conn.runTasks();
+    assertEquals("bye", conn.output());
+    assertEquals(1, reaper.warned());
+    assertEquals(0, conn.closed);
+    advance(reaper, 300);
+    conn.runTasks();
+    assertEquals(1, conn.closed);
+    assertEquals("bye", conn.output());
+  }
+
+  @Test
+  public void testWarningThenActivity() {
+    IdleSessionReaper reaper = reaper(1000).setWarning("bye", 300, TimeUnit.MILLISECONDS);
+    Connection conn = new Connection();
+    reaper.add(conn);
+    advance(reaper, 800);
+    conn.access();
+    advance(reaper, 600);
+    conn.runTasks();
+    assertEquals("bye", conn.output());
+    advance(reaper, 100);
+    conn.runTasks();
+    assertEquals("byebye", conn.output());
+    assertEquals(0, conn.closed);
+  }
+
+  @Test
+  public void testSystemTimeStep() {
+    IdleSessionReaper reaper = reaper(1000);
+    Connection idle = new Connection();
+    Connection active = new Connection();
+    reaper.add(idle);
+    reaper.add(active);
+    advance(reaper, 500);
+    // The system time is set one hour backward, then one hour forward
+    wallClock -= TimeUnit.HOURS.toMillis(1);
+    active.access();
+    advance(reaper, 400);
+    wallClock += TimeUnit.HOURS.toMillis(2);
+    active.access();
+    advance(reaper, 100);
+    idle.runTasks();
+    active.runTasks();
+    assertEquals(1, idle.closed);
+    assertEquals(0, active.closed);
+    advance(reaper, 800);
+    active.runTasks();
+    assertEquals(0, active.closed);
+    advance(reaper, 100);
+    active.runTasks();
+    assertEquals(1, active.closed);
+  }
+
+  @Test
+  public void testRemove() {
+    IdleSessionReaper reaper = reaper(1000);
+    Connection conn = new Connection();
+    reaper.add(conn);
+    assertTrue(reaper.remove(conn));
+    assertFalse(reaper.remove(conn));
+    advance(reaper, 2000);
+    assertEquals(0, conn.runTasks());
+  }
+}
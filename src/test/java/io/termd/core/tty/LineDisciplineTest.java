@@ -0,0 +1,153 @@
+package io.termd.core.tty;
+
+import io.termd.core.util.Helper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class LineDisciplineTest {
+
+  private final TestTtyConnection conn = new TestTtyConnection();
+  private final List<String> lines = new ArrayList<>();
+
+  private void read(String s) {
+    conn.getStdinHandler().accept(Helper.toCodePoints(s));
+  }
+
+  private String output() {
+    StringBuilder sb = new StringBuilder();
+    for (int[] data : conn.stdout) {
+      sb.append(Helper.fromCodePoints(data));
+    }
+    conn.stdout.clear();
+    return sb.toString();
+  }
+
+  @Test
+  public void testReadLine() {
+    Consumer<int[]> stdinHandler = data -> {};
+    conn.setStdinHandler(stdinHandler);
+    LineDiscipline discipline = new LineDiscipline();
+    discipline.readline(conn, "% ", lines::add);
+    assertEquals("% ", output());
+    read("abc");
+    assertEquals("abc", output());
+    assertEquals(0, lines.size());
+    read("\r");
+    assertEquals(Arrays.asList("abc"), lines);
+    assertEquals("\n", output());
+    assertSame(stdinHandler, conn.getStdinHandler());
+  }
+
+  @Test
+  public void testEdit() {
+    LineDiscipline discipline = new LineDiscipline();
+    discipline.readline(conn, "", lines::add);
+    read("abd\u007Fc\b\bcd");
+    assertEquals("abd\b \bc\b \b\b \bcd", output());
+    read("foo bar  \u0017x\u0015hello\n");
+    assertEquals(Arrays.asList("hello"), lines);
+  }
+
+  @Test
+  public void testEraseWidth() {
+    LineDiscipline discipline = new LineDiscipline();
+    discipline.readline(conn, "", lines::add);
+    read("中\u0001\u007F\u007F");
+    assertEquals("中^A\b \b\b \b\b \b\b \b", output());
+  }
+
+  @Test
+  public void testLiteralNext() {
+    LineDiscipline discipline = new LineDiscipline();
+    discipline.readline(conn, "", lines::add);
+    read("a\u0016\u007F\u0016\u0015\n");
+    assertEquals(Arrays.asList("a\u007F\u0015"), lines);
+    assertEquals("a^?^U\n", output());
+  }
+
+  @Test
+  public void testPendingInput() {
+    LineDiscipline discipline = new LineDiscipline();
+    discipline.readline(conn, "", lines::add);
+    read("foo\r\nbar\r\njuu");
+    assertEquals(Arrays.asList("foo"), lines);
+    assertNull(conn.getStdinHandler());
+    discipline.readline(conn, "", lines::add);
+    assertEquals(1, conn.runTasks());
+    assertEquals(Arrays.asList("foo", "bar"), lines);
+    discipline.readline(conn, "", lines::add);
+    assertEquals(1, conn.runTasks());
+    read("\r");
+    assertEquals(Arrays.asList("foo", "bar", "juu"), lines);
+  }
+
+  @Test
+  public void testEof() {
+    LineDiscipline discipline = new LineDiscipline();
+    discipline.readline(conn, "", lines::add);
+    read("ab\u0004");
+    assertEquals(Arrays.asList("ab"), lines);
+    discipline.readline(conn, "", lines::add);
+    read("\u0004");
+    assertEquals(Arrays.asList("ab", null), lines);
+  }
+
+  @Test
+  public void testInterrupt() {
+    LineDiscipline discipline = new LineDiscipline();
+    discipline.readline(conn, "% ", lines::add);
+    output();
+    read("abc\u0003d\r");
+    assertEquals("abc^C\n% d\n", output());
+    assertEquals(Arrays.asList("d"), lines);
+  }
+
+  @Test
+  public void testNoEcho() {
+    LineDiscipline discipline = new LineDiscipline().setEcho(false);
+    discipline.readline(conn, "Password: ", lines::add);
+    assertEquals("Password: ", output());
+    read("secret\u007F\r");
+    assertEquals("", output());
+    assertEquals(Arrays.asList("secre"), lines);
+  }
+
+  @Test
+  public void testMaxLength() {
+    LineDiscipline discipline = new LineDiscipline(3);
+    discipline.readline(conn, "", lines::add);
+    read("abcd\r");
+    assertEquals("abc\007\n", output());
+    assertEquals(Arrays.asList("abc"), lines);
+  }
+
+  @Test
+  public void testCancel() {
+    LineDiscipline discipline = new LineDiscipline();
+    assertFalse(discipline.cancel());
+    discipline.readline(conn, "", lines::add);
+    read("abc");
+    assertTrue(discipline.cancel());
+    assertEquals(Arrays.asList((String) null), lines);
+    assertNull(conn.getStdinHandler());
+    discipline.readline(conn, "", lines::add);
+    read("d\r");
+    assertEquals(Arrays.asList(null, "d"), lines);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAlreadyReading() {
+    LineDiscipline discipline = new LineDiscipline();
+    discipline.readline(conn, "", lines::add);
+    discipline.readline(conn, "", lines::add);
+  }
+}
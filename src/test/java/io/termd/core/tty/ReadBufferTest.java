@@ -5,8 +5,19 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static io.termd.core.tty.ReadBuffer.MERGE_LIMIT;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -39,6 +50,22 @@ public class ReadBufferTest extends TestBase {
     assertEquals(reads.get(0), new int[]{'f','o','o'});
   }
 
+  @Test
+  public void testNotDirect() {
+    buf.setDirect(false);
+    buf.setReadHandler(event -> reads.add(event));
+    buf.accept(new int[]{'f', 'o', 'o'});
+    assertEquals(0, reads.size());
+    assertEquals(1, commands.size());
+    commands.poll().run();
+    assertEquals(1, reads.size());
+    buf.accept(new int[]{'b', 'a', 'r'}, 1, 2);
+    assertEquals(1, reads.size());
+    commands.poll().run();
+    assertEquals(2, reads.size());
+    assertEquals(reads.get(1), new int[]{'a', 'r'});
+  }
+
   @Test
   public void testBar() throws Exception {
     buf.accept(new int[]{'f', 'o', 'o'});
@@ -68,7 +95,7 @@ public class ReadBufferTest extends TestBase {
     commands.poll().run();
     assertEquals(1, reads.size());
     assertEquals(0, commands.size());
-    assertEquals(reads.get(0), new int[]{'f', 'o', 'o'});
+    assertEquals(reads.get(0), new int[]{'f', 'o', 'o', 'b', 'a', 'r'});
     assertEquals(null, buf.getReadHandler());
   }
 
@@ -83,16 +110,213 @@ public class ReadBufferTest extends TestBase {
     assertEquals(1, commands.size());
     commands.poll().run();
     assertEquals(1, reads.size());
-    assertEquals(1, commands.size());
-    assertEquals(reads.get(0), new int[]{'f', 'o', 'o'});
+    assertEquals(0, commands.size());
+    assertEquals(reads.get(0), new int[]{'f', 'o', 'o', 'b', 'a', 'r'});
     buf.accept(new int[]{'j', 'u', 'u'});
+    assertEquals(2, reads.size());
+    assertEquals(0, commands.size());
+    assertEquals(reads.get(1), new int[]{'j', 'u', 'u'});
+  }
+
+  @Test
+  public void testPauseFromHandler() throws Exception {
+    buf.accept(new int[]{'f', 'o', 'o'});
+    buf.accept(new int[MERGE_LIMIT]);
+    buf.accept(new int[]{'b', 'a', 'r'});
+    buf.setReadHandler(event -> {
+      reads.add(event);
+      buf.pause();
+    });
+    commands.poll().run();
+    assertEquals(1, reads.size());
+    assertEquals(reads.get(0), new int[]{'f', 'o', 'o'});
+    buf.resume();
+    commands.poll().run();
+    assertEquals(2, reads.size());
+    assertEquals(MERGE_LIMIT, reads.get(1).length);
+    buf.resume();
+    commands.poll().run();
     assertEquals(3, reads.size());
+    assertEquals(reads.get(2), new int[]{'b', 'a', 'r'});
+    assertEquals(0, commands.size());
+  }
+
+  @Test
+  public void testMerge() throws Exception {
+    int[] first = {'a'};
+    buf.accept(first);
+    for (int i = 0;i < MERGE_LIMIT;i++) {
+      buf.accept(new int[]{'b'});
+    }
+    buf.setReadHandler(event -> reads.add(event));
+    commands.poll().run();
+    assertEquals(2, reads.size());
+    assertEquals(MERGE_LIMIT, reads.get(0).length);
+    assertEquals((int) 'a', reads.get(0)[0]);
+    assertEquals((int) 'b', reads.get(0)[MERGE_LIMIT - 1]);
+    assertEquals(reads.get(1), new int[]{'b'});
+    assertEquals(first, new int[]{'a'});
+    assertEquals(0, buf.size());
+  }
+
+  @Test
+  public void testExecuteInOrder() throws Exception {
+    List<String> events = new ArrayList<>();
+    buf.setDirect(false);
+    buf.setReadHandler(event -> events.add(new String(event, 0, event.length)));
+    buf.accept(new int[]{'a', 'b'});
+    buf.execute(() -> events.add("task"));
+    buf.accept(new int[]{'c'});
     assertEquals(1, commands.size());
-    assertEquals(reads.get(1), new int[]{'b', 'a', 'r'});
-    assertEquals(reads.get(2), new int[]{'j', 'u', 'u'});
     commands.poll().run();
-    assertEquals(3, reads.size());
+    assertEquals(Arrays.asList("ab", "task", "c"), events);
+  }
+
+  @Test
+  public void testExecutePaused() throws Exception {
+    List<String> events = new ArrayList<>();
+    buf.setReadHandler(event -> events.add(new String(event, 0, event.length)));
+    buf.pause();
+    buf.accept(new int[]{'a', 'b'});
+    buf.execute(() -> events.add("task"));
+    commands.poll().run();
+    assertEquals(Collections.singletonList("task"), events);
+    buf.resume();
+    commands.poll().run();
+    assertEquals(Arrays.asList("task", "ab"), events);
+  }
+
+  @Test
+  public void testCapacity() throws Exception {
+    List<Boolean> flow = new ArrayList<>();
+    buf = new ReadBuffer(commands::add, 5);
+    buf.setFlowControlHandler(flow::add);
+    buf.accept(new int[]{'f', 'o', 'o'});
+    assertEquals(Collections.emptyList(), flow);
+    buf.accept(new int[]{'b', 'a', 'r'});
+    assertEquals(Collections.singletonList(false), flow);
+    buf.accept(new int[]{'j', 'u'});
+    assertEquals(8, buf.size());
+    assertEquals(3L, buf.overflowed());
+    buf.setReadHandler(event -> reads.add(event));
+    commands.poll().run();
+    assertEquals(1, reads.size());
+    assertEquals(reads.get(0), new int[]{'f', 'o', 'o', 'b', 'a', 'r', 'j', 'u'});
+    assertEquals(Arrays.asList(false, true), flow);
+  }
+
+  @Test
+  public void testPauseResume() throws Exception {
+    buf.setReadHandler(event -> reads.add(event));
+    buf.pause();
+    buf.accept(new int[]{'f', 'o', 'o'});
+    buf.accept(new int[]{'b', 'a', 'r'});
+    assertEquals(0, reads.size());
     assertEquals(0, commands.size());
+    assertEquals(6, buf.size());
+    buf.resume();
+    assertEquals(1, commands.size());
+    buf.pause();
+    commands.poll().run();
+    assertEquals(0, reads.size());
+    assertEquals(0, commands.size());
+    buf.resume();
+    commands.poll().run();
+    assertEquals(1, reads.size());
+    assertEquals(reads.get(0), new int[]{'f', 'o', 'o', 'b', 'a', 'r'});
+    assertEquals(0, commands.size());
+    buf.accept(new int[]{'j', 'u', 'u'});
+    assertEquals(2, reads.size());
+  }
+
+  @Test
+  public void testWaterMarks() throws Exception {
+    ArrayList<Boolean> flow = new ArrayList<>();
+    buf.setWaterMarks(2, 6);
+    buf.setFlowControlHandler(flow::add);
+    buf.accept(new int[]{'f', 'o', 'o'});
+    assertEquals(0, flow.size());
+    buf.accept(new int[]{'b', 'a', 'r'});
+    assertEquals(1, flow.size());
+    assertEquals(false, flow.get(0));
+    buf.accept(new int[]{'j', 'u', 'u'});
+    assertEquals(1, flow.size());
+    buf.setReadHandler(event -> reads.add(event));
+    commands.poll().run();
+    assertEquals(2, flow.size());
+    assertEquals(true, flow.get(1));
+    assertEquals(1, reads.size());
+    assertEquals(0, buf.size());
   }
 
+  @Test
+  public void testConcurrentWriters() throws Exception {
+    int writers = 4;
+    int count = 10000;
+    int[] last = new int[writers];
+    Arrays.fill(last, -1);
+    AtomicInteger received = new AtomicInteger();
+    buf = new ReadBuffer(Runnable::run, writers * count);
+    buf.setReadHandler(event -> {
+      for (int value : event) {
+        int writer = value / count;
+        assertEquals(last[writer] + 1, value % count);
+        last[writer] = value % count;
+        received.incrementAndGet();
+      }
+    });
+    Thread[] threads = new Thread[writers];
+    for (int i = 0;i < writers;i++) {
+      int writer = i;
+      threads[i] = new Thread(() -> {
+        for (int j = 0;j < count;j++) {
+          buf.accept(new int[]{writer * count + j});
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(writers * count, received.get());
+    assertEquals(0, buf.size());
+  }
+
+  @Test
+  public void testConcurrentFlowControl() throws Exception {
+    int count = 10000;
+    ExecutorService consumer = Executors.newSingleThreadExecutor();
+    try {
+      AtomicInteger received = new AtomicInteger();
+      AtomicReference<Boolean> last = new AtomicReference<>();
+      AtomicInteger callbacks = new AtomicInteger();
+      buf = new ReadBuffer(consumer, 8).setDirect(false);
+      buf.setWaterMarks(2, 4);
+      buf.setFlowControlHandler(read -> {
+        if (!read) {
+          // Widen the window between the state change and the callback
+          LockSupport.parkNanos(100000);
+        }
+        last.set(read);
+        callbacks.incrementAndGet();
+      });
+      buf.setReadHandler(event -> received.addAndGet(event.length));
+      for (int i = 0;i < count;i++) {
+        buf.accept(new int[]{i});
+      }
+      long deadline = System.currentTimeMillis() + 10000;
+      while (received.get() < count) {
+        assertTrue(System.currentTimeMillis() < deadline);
+        Thread.sleep(1);
+      }
+      // Let the consumer complete its last check
+      consumer.submit(() -> {}).get(10, TimeUnit.SECONDS);
+      assertEquals(0, buf.size());
+      assertTrue(callbacks.get() > 0);
+      assertFalse(buf.isReadPaused());
+      assertEquals(Boolean.TRUE, last.get());
+    } finally {
+      consumer.shutdown();
+    }
+  }
 }
@@ -0,0 +1,142 @@
+package io.termd.core.tty;
+
+import io.termd.core.util.Vector;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A connection that queues its tasks, the tests run them explicitly.
+ *
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class TestTtyConnection implements TtyConnection {
+
+  final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+  final List<Long> delays = new ArrayList<>();
+  final List<int[]> stdout = new ArrayList<>();
+  private Consumer<int[]> stdinHandler;
+  private BiConsumer<TtyEvent, Integer> eventHandler;
+  private Consumer<Vector> sizeHandler;
+  private Consumer<String> termHandler;
+  private Consumer<Void> closeHandler;
+
+  /**
+   * Run the pending tasks, including the tasks they execute.
+   *
+   * @return the number of tasks run
+   */
+  int runTasks() {
+    int count = 0;
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      task.run();
+      count++;
+    }
+    return count;
+  }
+
+  @Override
+  public long lastAccessedTime() {
+    return 0;
+  }
+
+  @Override
+  public Vector size() {
+    return new Vector(80, 24);
+  }
+
+  @Override
+  public Charset inputCharset() {
+    return StandardCharsets.UTF_8;
+  }
+
+  @Override
+  public Charset outputCharset() {
+    return StandardCharsets.UTF_8;
+  }
+
+  @Override
+  public String terminalType() {
+    return "xterm";
+  }
+
+  @Override
+  public Consumer<String> getTerminalTypeHandler() {
+    return termHandler;
+  }
+
+  @Override
+  public void setTerminalTypeHandler(Consumer<String> handler) {
+    termHandler = handler;
+  }
+
+  @Override
+  public Consumer<Vector> getSizeHandler() {
+    return sizeHandler;
+  }
+
+  @Override
+  public void setSizeHandler(Consumer<Vector> handler) {
+    sizeHandler = handler;
+  }
+
+  @Override
+  public BiConsumer<TtyEvent, Integer> getEventHandler() {
+    return eventHandler;
+  }
+
+  @Override
+  public void setEventHandler(BiConsumer<TtyEvent, Integer> handler) {
+    eventHandler = handler;
+  }
+
+  @Override
+  public Consumer<int[]> getStdinHandler() {
+    return stdinHandler;
+  }
+
+  @Override
+  public void setStdinHandler(Consumer<int[]> handler) {
+    stdinHandler = handler;
+  }
+
+  @Override
+  public Consumer<int[]> stdoutHandler() {
+    return stdout::add;
+  }
+
+  @Override
+  public void setCloseHandler(Consumer<Void> closeHandler) {
+    this.closeHandler = closeHandler;
+  }
+
+  @Override
+  public Consumer<Void> getCloseHandler() {
+    return closeHandler;
+  }
+
+  @Override
+  public void close() {
+    if (closeHandler != null) {
+      closeHandler.accept(null);
+    }
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    tasks.add(task);
+  }
+
+  @Override
+  public void schedule(Runnable task, long delay, TimeUnit unit) {
+    delays.add(unit.toMicros(delay));
+    tasks.add(task);
+  }
+}
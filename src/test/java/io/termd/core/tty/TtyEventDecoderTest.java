@@ -0,0 +1,119 @@
+package io.termd.core.tty;
+
+import io.termd.core.io.CodePointConsumer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class TtyEventDecoderTest {
+
+  private final List<String> events = new ArrayList<>();
+
+  private static String str(int[] codePoints, int offset, int length) {
+    return new String(codePoints, offset, length);
+  }
+
+  private TtyEventDecoder decoder() {
+    return new TtyEventDecoder(3, 26, 4)
+        .setReadHandler(data -> events.add(str(data, 0, data.length)))
+        .setEventHandler((event, cp) -> events.add(event.name()));
+  }
+
+  @Test
+  public void testDecode() {
+    TtyEventDecoder decoder = decoder();
+    decoder.accept(new int[]{'a', 'b', 3, 'c', 26, 4, 'd'});
+    assertEquals(Arrays.asList("ab", "INTR", "c", "SUSP", "EOF", "d"), events);
+  }
+
+  @Test
+  public void testNoEventHandler() {
+    TtyEventDecoder decoder = decoder().setEventHandler(null);
+    int[] data = {'a', 3, 'b'};
+    List<int[]> reads = new ArrayList<>();
+    decoder.setReadHandler(reads::add);
+    decoder.accept(data);
+    assertEquals(1, reads.size());
+    assertSame(data, reads.get(0));
+  }
+
+  @Test
+  public void testSlices() {
+    TtyEventDecoder decoder = new TtyEventDecoder(3, 26, 4);
+    int[] data = {'x', 'a', 'b', 3, 'c', 'x'};
+    decoder.setEventHandler((event, cp) -> events.add(event.name()));
+    class Handler implements Consumer<int[]>, CodePointConsumer {
+      @Override
+      public void accept(int[] codePoints) {
+        fail();
+      }
+      @Override
+      public void accept(int[] codePoints, int offset, int length) {
+        assertSame(data, codePoints);
+        events.add(str(codePoints, offset, length));
+      }
+    }
+    decoder.setReadHandler(new Handler());
+    decoder.accept(data, 1, 4);
+    assertEquals(Arrays.asList("ab", "INTR", "c"), events);
+  }
+
+  @Test
+  public void testSliceIsCopied() {
+    TtyEventDecoder decoder = new TtyEventDecoder(3, 26, 4);
+    int[] data = {'a', 'b'};
+    List<int[]> reads = new ArrayList<>();
+    decoder.setReadHandler(reads::add);
+    decoder.accept(data, 0, 2);
+    data[0] = 'z';
+    assertEquals(1, reads.size());
+    assertNotSame(data, reads.get(0));
+    assertEquals("ab", str(reads.get(0), 0, 2));
+  }
+
+  @Test
+  public void testControlChars() {
+    TtyEventDecoder decoder = decoder();
+    assertEquals(-1, decoder.getControlChar(TtyEvent.QUIT));
+    decoder.accept(new int[]{28, 127});
+    assertEquals(Arrays.asList("\u001C\u007F"), events);
+    events.clear();
+    decoder.setControlChar(TtyEvent.QUIT, TtyEvent.QUIT.codePoint());
+    decoder.setControlChar(TtyEvent.ERASE, TtyEvent.ERASE.codePoint());
+    decoder.setControlChar(TtyEvent.INTR, -1);
+    assertEquals(28, decoder.getControlChar(TtyEvent.QUIT));
+    assertEquals(-1, decoder.getControlChar(TtyEvent.INTR));
+    decoder.accept(new int[]{'a', 28, 127, 3});
+    assertEquals(Arrays.asList("a", "QUIT", "ERASE", "\u0003"), events);
+  }
+
+  @Test
+  public void testLiteralNext() {
+    TtyEventDecoder decoder = decoder().setControlChar(TtyEvent.LNEXT, TtyEvent.LNEXT.codePoint());
+    decoder.accept(new int[]{'a', 22, 3, 'b', 3});
+    assertEquals(Arrays.asList("a", "\u0003b", "INTR"), events);
+    events.clear();
+    decoder.accept(new int[]{22});
+    decoder.accept(new int[]{22, 3});
+    assertEquals(Arrays.asList("\u0016", "INTR"), events);
+  }
+
+  @Test
+  public void testEventExecutor() {
+    List<Runnable> tasks = new ArrayList<>();
+    TtyEventDecoder decoder = decoder().setEventExecutor(tasks::add);
+    decoder.accept(new int[]{'a', 3, 'b'});
+    assertEquals(Arrays.asList("a", "b"), events);
+    assertEquals(1, tasks.size());
+    tasks.get(0).run();
+    assertEquals(Arrays.asList("a", "b", "INTR"), events);
+  }
+}
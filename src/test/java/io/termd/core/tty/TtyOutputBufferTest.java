@@ -0,0 +1,90 @@
+package io.termd.core.tty;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class TtyOutputBufferTest {
+
+  private static ByteBuffer bytes(String s) {
+    return ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static String string(ByteBuffer buf) {
+    return StandardCharsets.US_ASCII.decode(buf).toString();
+  }
+
+  @Test
+  public void testImmediate() {
+    TestTtyConnection conn = new TestTtyConnection();
+    List<String> flushed = new ArrayList<>();
+    TtyOutputBuffer buffer = new TtyOutputBuffer(conn, FlushPolicy.IMMEDIATE, buf -> flushed.add(string(buf)));
+    buffer.accept(bytes("ab"));
+    buffer.accept(bytes("cd"));
+    assertEquals(Arrays.asList("ab", "cd"), flushed);
+    assertEquals(0, conn.runTasks());
+  }
+
+  @Test
+  public void testEndOfTask() {
+    TestTtyConnection conn = new TestTtyConnection();
+    List<String> flushed = new ArrayList<>();
+    TtyOutputBuffer buffer = new TtyOutputBuffer(conn, FlushPolicy.endOfTask(1024), buf -> flushed.add(string(buf)));
+    for (String s : Arrays.asList("ab", "cd", "ef")) {
+      buffer.accept(bytes(s));
+    }
+    assertEquals(Arrays.asList(), flushed);
+    assertEquals(1, conn.runTasks());
+    assertEquals(Arrays.asList("abcdef"), flushed);
+    buffer.accept(bytes("gh"));
+    assertEquals(1, conn.runTasks());
+    assertEquals(Arrays.asList("abcdef", "gh"), flushed);
+  }
+
+  @Test
+  public void testThreshold() {
+    TestTtyConnection conn = new TestTtyConnection();
+    List<String> flushed = new ArrayList<>();
+    TtyOutputBuffer buffer = new TtyOutputBuffer(conn, FlushPolicy.endOfTask(4), buf -> flushed.add(string(buf)));
+    buffer.accept(bytes("ab"));
+    buffer.accept(bytes("cde"));
+    assertEquals(Arrays.asList("abcde"), flushed);
+    buffer.accept(bytes("fghij"));
+    assertEquals(Arrays.asList("abcde", "fghij"), flushed);
+    conn.runTasks();
+    assertEquals(Arrays.asList("abcde", "fghij"), flushed);
+  }
+
+  @Test
+  public void testMaxLatency() {
+    TestTtyConnection conn = new TestTtyConnection();
+    List<String> flushed = new ArrayList<>();
+    TtyOutputBuffer buffer = new TtyOutputBuffer(conn, FlushPolicy.maxLatency(1024, 500), buf -> flushed.add(string(buf)));
+    buffer.accept(bytes("ab"));
+    buffer.accept(bytes("cd"));
+    assertEquals(Arrays.asList(500L), conn.delays);
+    conn.runTasks();
+    assertEquals(Arrays.asList("abcd"), flushed);
+  }
+
+  @Test
+  public void testFlush() {
+    TestTtyConnection conn = new TestTtyConnection();
+    List<String> flushed = new ArrayList<>();
+    TtyOutputBuffer buffer = new TtyOutputBuffer(conn, FlushPolicy.endOfTask(1024), buf -> flushed.add(string(buf)));
+    buffer.accept(bytes("ab"));
+    buffer.flush();
+    assertEquals(Arrays.asList("ab"), flushed);
+    conn.runTasks();
+    assertEquals(Arrays.asList("ab"), flushed);
+  }
+}
@@ -16,9 +16,15 @@
 
 package io.termd.core.tty;
 
+import io.termd.core.io.CodePointConsumer;
 import io.termd.core.util.Helper;
 import org.junit.Test;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -38,9 +44,89 @@ public class TtyOutputModeTest {
     assertOutput("a\r\nb\r\nc", "a\nb\nc");
   }
 
+  @Test
+  public void testOcrnl() {
+    assertOutput("a\nb", "a\rb", mode -> mode.setOcrnl(true));
+    assertOutput("a\r\n", "a\n", mode -> mode.setOcrnl(true));
+  }
+
+  @Test
+  public void testOnocr() {
+    assertOutput("a\r\nb", "\ra\r\r\nb", mode -> mode.setOnocr(true).setOnlcr(false));
+    assertOutput("\r\na\r", "\r\na\r", mode -> mode.setOnocr(true));
+  }
+
+  @Test
+  public void testOnlret() {
+    assertOutput("ab\nc", "ab\n\rc", mode -> mode.setOnlcr(false).setOnlret(true).setOnocr(true));
+    assertOutput("ab\n\rc", "ab\n\rc", mode -> mode.setOnlcr(false).setOnocr(true));
+  }
+
+  @Test
+  public void testXtabs() {
+    assertOutput("a\tb", "a\tb");
+    assertOutput("a       b", "a\tb", mode -> mode.setXtabs(true));
+    assertOutput("abcdefgh        i", "abcdefgh\ti", mode -> mode.setXtabs(true));
+    assertOutput("ab\bc      d", "ab\bc\td", mode -> mode.setXtabs(true));
+    assertOutput("\u4e2d      x", "\u4e2d\tx", mode -> mode.setXtabs(true));
+    assertOutput("ab\r\n        c", "ab\n\tc", mode -> mode.setXtabs(true));
+  }
+
+  @Test
+  public void testColumnAcrossWrites() {
+    Stream.Builder<int[]> builder = Stream.<int[]>builder();
+    TtyOutputMode out = new TtyOutputMode(builder).setXtabs(true);
+    out.accept(Helper.toCodePoints("abc"));
+    out.accept(Helper.toCodePoints("\t"));
+    assertEquals("abc     ", Helper.fromCodePoints(builder.build().flatMapToInt(IntStream::of).toArray()));
+  }
+
+  @Test
+  public void testCharsetFallback() {
+    assertOutput("caf\u00e9 ?", "caf\u00e9 \u20ac", mode -> mode.setCharset(StandardCharsets.ISO_8859_1));
+    assertOutput("caf_ _", "caf\u00e9 \u20ac", mode -> mode.setCharset(StandardCharsets.US_ASCII).setReplacement('_'));
+    assertOutput("caf\u00e9 \u20ac", "caf\u00e9 \u20ac", mode -> mode.setCharset(StandardCharsets.UTF_8));
+    assertOutput("\u00e9?", "\u00e9\u4e2d", mode -> mode.setCharset(Charset.forName("windows-1252")));
+  }
+
+  @Test
+  public void testNoCopy() {
+    List<int[]> list = new ArrayList<>();
+    TtyOutputMode out = new TtyOutputMode(list::add);
+    int[] data = Helper.toCodePoints("abc");
+    out.accept(data);
+    assertSame(data, list.get(0));
+    int[][] received = new int[1][];
+    out = new TtyOutputMode(new Sink(received));
+    out.accept(Helper.toCodePoints("a\nb"));
+    int[] buffer = received[0];
+    out.accept(Helper.toCodePoints("c\nd"));
+    assertSame(buffer, received[0]);
+  }
+
+  private static class Sink implements Consumer<int[]>, CodePointConsumer {
+    final int[][] received;
+    Sink(int[][] received) {
+      this.received = received;
+    }
+    @Override
+    public void accept(int[] codePoints) {
+      fail();
+    }
+    @Override
+    public void accept(int[] codePoints, int offset, int length) {
+      received[0] = codePoints;
+    }
+  }
+
   private void assertOutput(String expected, String actual) {
+    assertOutput(expected, actual, mode -> {});
+  }
+
+  private void assertOutput(String expected, String actual, Consumer<TtyOutputMode> config) {
     Stream.Builder<int[]> builder = Stream.<int[]>builder();
     TtyOutputMode out = new TtyOutputMode(builder);
+    config.accept(out);
     out.accept(Helper.toCodePoints(actual));
     String result = Helper.fromCodePoints(builder.build().flatMapToInt(IntStream::of).toArray());
     assertEquals(expected, result);
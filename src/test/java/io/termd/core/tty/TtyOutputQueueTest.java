@@ -0,0 +1,129 @@
+package io.termd.core.tty;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class TtyOutputQueueTest {
+
+  @Test
+  public void testPendingBytes() {
+    TestTtyConnection conn = new TestTtyConnection();
+    TtyOutputQueue queue = new TtyOutputQueue(conn, OverflowPolicy.block(100));
+    AtomicInteger drains = new AtomicInteger();
+    queue.setDrainHandler(v -> drains.incrementAndGet());
+    queue.queued(60);
+    assertTrue(queue.isWritable());
+    queue.queued(40);
+    assertFalse(queue.isWritable());
+    assertTrue(queue.offer(10));
+    queue.written(40);
+    assertFalse(queue.isWritable());
+    queue.written(10);
+    assertTrue(queue.isWritable());
+    assertEquals(0, drains.get());
+    conn.runTasks();
+    assertEquals(1, drains.get());
+    assertEquals(50, queue.pending());
+  }
+
+  @Test
+  public void testTransportWritability() {
+    TestTtyConnection conn = new TestTtyConnection();
+    TtyOutputQueue queue = new TtyOutputQueue(conn, OverflowPolicy.block(100));
+    AtomicInteger drains = new AtomicInteger();
+    queue.setDrainHandler(v -> drains.incrementAndGet());
+    queue.setTransportWritable(false);
+    assertFalse(queue.isWritable());
+    queue.setTransportWritable(true);
+    assertTrue(queue.isWritable());
+    conn.runTasks();
+    assertEquals(1, drains.get());
+  }
+
+  @Test
+  public void testBlockPausesInput() {
+    List<String> flow = new ArrayList<>();
+    TestTtyConnection conn = new TestTtyConnection() {
+      @Override
+      public void pause() {
+        flow.add("pause");
+      }
+      @Override
+      public void resume() {
+        flow.add("resume");
+      }
+    };
+    TtyOutputQueue queue = new TtyOutputQueue(conn, OverflowPolicy.block(100));
+    queue.setDrainHandler(v -> flow.add("drain"));
+    queue.queued(100);
+    conn.runTasks();
+    assertEquals(Collections.singletonList("pause"), flow);
+    queue.written(60);
+    conn.runTasks();
+    assertEquals(Arrays.asList("pause", "resume", "drain"), flow);
+  }
+
+  @Test
+  public void testDropDoesNotPauseInput() {
+    AtomicInteger paused = new AtomicInteger();
+    TestTtyConnection conn = new TestTtyConnection() {
+      @Override
+      public void pause() {
+        paused.incrementAndGet();
+      }
+    };
+    TtyOutputQueue queue = new TtyOutputQueue(conn, OverflowPolicy.drop(100));
+    queue.queued(100);
+    conn.runTasks();
+    assertFalse(queue.isWritable());
+    assertEquals(0, paused.get());
+  }
+
+  @Test
+  public void testDrop() {
+    TestTtyConnection conn = new TestTtyConnection();
+    TtyOutputQueue queue = new TtyOutputQueue(conn, OverflowPolicy.drop(100));
+    assertTrue(queue.offer(10));
+    queue.setTransportWritable(false);
+    assertFalse(queue.offer(10));
+    assertFalse(queue.offer(5));
+    assertEquals(15, queue.dropped());
+  }
+
+  @Test
+  public void testDisconnect() {
+    TestTtyConnection conn = new TestTtyConnection();
+    AtomicInteger closed = new AtomicInteger();
+    conn.setCloseHandler(v -> closed.incrementAndGet());
+    TtyOutputQueue queue = new TtyOutputQueue(conn, OverflowPolicy.disconnect(100));
+    queue.queued(100);
+    assertFalse(queue.offer(10));
+    assertEquals(1, closed.get());
+    assertTrue(queue.offer(10));
+    assertTrue(queue.isWritable());
+    assertEquals(1, closed.get());
+  }
+
+  @Test
+  public void testCloseReleasesProducers() {
+    TestTtyConnection conn = new TestTtyConnection();
+    TtyOutputQueue queue = new TtyOutputQueue(conn, OverflowPolicy.block(100));
+    AtomicInteger drains = new AtomicInteger();
+    queue.setDrainHandler(v -> drains.incrementAndGet());
+    queue.setTransportWritable(false);
+    queue.close();
+    assertTrue(queue.isWritable());
+    conn.runTasks();
+    assertEquals(1, drains.get());
+  }
+}
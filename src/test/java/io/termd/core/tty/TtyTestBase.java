@@ -17,6 +17,7 @@
 package io.termd.core.tty;
 
 import io.termd.core.TestBase;
+import io.termd.core.util.CoarseClock;
 import io.termd.core.util.Helper;
 import org.junit.Test;
 
@@ -333,10 +334,12 @@ public abstract class TtyTestBase extends TestBase {
   public void testLastAccessedTime() throws Exception {
     CountDownLatch latch = new CountDownLatch(1);
     AtomicInteger count = new AtomicInteger();
-    long connTime = System.currentTimeMillis();
+    // The connections read the coarse clock that lags the system time by up to CoarseClock.RESOLUTION_MS, so the
+    // expectations are based on the coarse clock and the sleeps leave room for the lag
+    long connTime = CoarseClock.currentTimeMillis();
     server(conn -> {
       assertTrue(conn.lastAccessedTime() >= connTime);
-      long openTime = System.currentTimeMillis();
+      long openTime = CoarseClock.currentTimeMillis();
       conn.setStdinHandler(cp -> {
         long delta = conn.lastAccessedTime() - openTime;
         switch (count.getAndIncrement()) {
@@ -352,10 +355,10 @@ public abstract class TtyTestBase extends TestBase {
       });
     });
     assertConnect();
-    Thread.sleep(15);
+    Thread.sleep(10 + 2 * CoarseClock.RESOLUTION_MS);
     assertWrite("hello");
     awaitLatch(latch);
-    Thread.sleep(15);
+    Thread.sleep(10 + 2 * CoarseClock.RESOLUTION_MS);
     assertWrite("byebye");
     await();
   }
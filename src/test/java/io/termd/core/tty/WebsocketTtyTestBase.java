@@ -18,6 +18,7 @@ package io.termd.core.tty;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.After;
+import org.junit.Test;
 
 import javax.websocket.ClientEndpointConfig;
 import javax.websocket.CloseReason;
@@ -33,7 +34,9 @@ import java.io.PipedWriter;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
@@ -150,6 +153,16 @@ import java.util.concurrent.CountDownLatch;
     session.getBasicRemote().sendText(json);
   }
 
+  @Test
+  public void testFragmentedMessage() throws Exception {
+    ArrayBlockingQueue<String> queue = new ArrayBlockingQueue<>(1);
+    server(conn -> conn.setStdinHandler(data -> queue.add(new String(data, 0, data.length))));
+    assertConnect();
+    session.getBasicRemote().sendText("{\"action\":\"read\",", false);
+    session.getBasicRemote().sendText("\"data\":\"hello\"}", true);
+    assertEquals("hello", queue.poll(10, TimeUnit.SECONDS));
+  }
+
   @Override
   public void testDifferentCharset() throws Exception {
     // Don't test, charset in this case is always UTF-8 for text frames
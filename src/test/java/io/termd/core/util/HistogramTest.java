@@ -0,0 +1,74 @@
+package io.termd.core.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class HistogramTest {
+
+  @Test
+  public void testIndex() {
+    for (long value = 0;value < 100000;value++) {
+      int index = Histogram.index(value);
+      assertTrue(value <= Histogram.highestValue(index));
+      if (index > 0) {
+        assertTrue(value > Histogram.highestValue(index - 1));
+      }
+    }
+    assertEquals(Long.MAX_VALUE, Histogram.highestValue(Histogram.index(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void testEmpty() {
+    Histogram.Snapshot snapshot = new Histogram().snapshot();
+    assertEquals(0, snapshot.count());
+    assertEquals(0, snapshot.max());
+    assertEquals(0, snapshot.valueAtPercentile(99));
+    assertEquals(0D, snapshot.mean(), 0D);
+  }
+
+  @Test
+  public void testPercentiles() {
+    Histogram histogram = new Histogram();
+    for (int i = 1;i <= 1000;i++) {
+      histogram.record(i);
+    }
+    histogram.record(-5);
+    Histogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(1001, snapshot.count());
+    assertEquals(500500, snapshot.sum());
+    assertEquals(1000, snapshot.max());
+    assertEquals(0, snapshot.valueAtPercentile(0));
+    long median = snapshot.valueAtPercentile(50);
+    assertTrue("median " + median, median >= 500 && median <= 500 * 1.0625);
+    long p99 = snapshot.valueAtPercentile(99);
+    assertTrue("p99 " + p99, p99 >= 990 && p99 <= 1000);
+    assertEquals(1000, snapshot.valueAtPercentile(100));
+  }
+
+  @Test
+  public void testConcurrentRecord() throws Exception {
+    Histogram histogram = new Histogram();
+    Thread[] threads = new Thread[8];
+    for (int i = 0;i < threads.length;i++) {
+      long value = i;
+      threads[i] = new Thread(() -> {
+        for (int j = 0;j < 1000;j++) {
+          histogram.record(value);
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Histogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(8000, snapshot.count());
+    assertEquals(7, snapshot.max());
+    assertEquals(3, snapshot.valueAtPercentile(50));
+    assertEquals(7, snapshot.valueAtPercentile(100));
+  }
+}
@@ -0,0 +1,85 @@
+package io.termd.core.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:julien@julienviet.com">Julien Viet</a>
+ */
+public class SerialExecutorTest {
+
+  @Test
+  public void testOrder() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      SerialExecutor executor = new SerialExecutor(pool);
+      List<Integer> order = new ArrayList<>();
+      AtomicInteger running = new AtomicInteger();
+      CountDownLatch done = new CountDownLatch(1000);
+      for (int i = 0;i < 1000;i++) {
+        int val = i;
+        executor.execute(() -> {
+          assertEquals(1, running.incrementAndGet());
+          order.add(val);
+          running.decrementAndGet();
+          done.countDown();
+        });
+      }
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+      for (int i = 0;i < 1000;i++) {
+        assertEquals(i, (int) order.get(i));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testBlockingTaskDoesNotStallOtherExecutors() throws Exception {
+    ExecutorService pool = SerialExecutor.newThreadPerTaskExecutor();
+    try {
+      SerialExecutor blocked = new SerialExecutor(pool);
+      SerialExecutor other = new SerialExecutor(pool);
+      CountDownLatch release = new CountDownLatch(1);
+      CountDownLatch done = new CountDownLatch(1);
+      blocked.execute(() -> {
+        try {
+          release.await();
+        } catch (InterruptedException ignore) {
+        }
+      });
+      other.execute(done::countDown);
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+      release.countDown();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testFailingTask() {
+    List<Runnable> submitted = new ArrayList<>();
+    SerialExecutor executor = new SerialExecutor(submitted::add);
+    List<String> events = new ArrayList<>();
+    executor.execute(() -> {
+      throw new RuntimeException("expected");
+    });
+    executor.execute(() -> events.add("next"));
+    assertEquals(1, submitted.size());
+    submitted.remove(0).run();
+    assertEquals("[next]", events.toString());
+    executor.execute(() -> events.add("again"));
+    assertEquals(1, submitted.size());
+    submitted.remove(0).run();
+    assertEquals("[next, again]", events.toString());
+  }
+}